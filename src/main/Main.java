@@ -1,21 +1,57 @@
 package main;
 
 import java.io.*;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
+import view.ConsoleRenderer;
 import view.LibraryView;
 
 import model.*;
+import service.MusicService;
 
 public class Main {
-    private static UserManager userManager = new UserManager();
+    private static UserManager userManager;
     private static User currentUser;
+    private static LibraryPersister persister; // Saves libraries in the background
 
     public static void main(String[] args) {
-        Scanner scanner = new Scanner(System.in);
-
         // Music store setup
         String albumsFilePath = "resources/albums/albums.txt"; // Ensure this file exists
-        MusicStore musicStore = new MusicStore(albumsFilePath);
+        List<String> options = Arrays.asList(args);
+        // "--lazy" reads only the album index now; albums are parsed when first used.
+        // "--off-heap" keeps the catalog in direct memory instead of Java objects.
+        boolean lazy = options.contains("--lazy");
+        MusicStore.Mode mode = options.contains("--off-heap") ? MusicStore.Mode.OFF_HEAP
+                : lazy ? MusicStore.Mode.LAZY : MusicStore.Mode.EAGER;
+        MusicStore musicStore = new MusicStore(albumsFilePath, mode);
+        if (mode == MusicStore.Mode.LAZY) {
+            musicStore.startWarmUp();
+        }
+        userManager = new UserManager(musicStore);
+        persister = new LibraryPersister();
+
+        // "--shards N" moves the single users.txt layout into N hash-partitioned shards
+        int shardsAt = options.indexOf("--shards");
+        if (shardsAt >= 0 && shardsAt + 1 < args.length && args[shardsAt + 1].matches("\\d+")
+                && userManager.getShardCount() == 1 && userManager.migrateToShards(Integer.parseInt(args[shardsAt + 1]))) {
+            System.out.println("User data moved into " + userManager.getShardCount() + " shards.");
+        }
+
+        // "--watch" reloads albums when files under resources/albums/ change
+        if (options.contains("--watch")) {
+            watchCatalog(musicStore);
+        }
+
+        // Service mode: "--serve [port]" serves HTTP/JSON clients instead of the console
+        int serveAt = options.indexOf("--serve");
+        if (serveAt >= 0) {
+            boolean hasPort = serveAt + 1 < args.length && args[serveAt + 1].matches("\\d+");
+            serve(musicStore, hasPort ? Integer.parseInt(args[serveAt + 1]) : 8080);
+            return;
+        }
+
+        Scanner scanner = new Scanner(System.in);
         LibraryModel library = new LibraryModel();
         LibraryView view = new LibraryView(library, musicStore);
         System.out.println("Looking for albums at: " + new File(albumsFilePath).getAbsolutePath());
@@ -41,6 +77,7 @@ public class Main {
                 case 3:
                     System.out.println("Exiting... Goodbye!");
                     scanner.close();
+                    persister.close(); // Finish pending saves
                     System.exit(0);
                     break;
                 default:
@@ -49,13 +86,36 @@ public class Main {
         }
     }
 
+    private static void watchCatalog(MusicStore musicStore) {
+        try {
+            new CatalogWatcher(musicStore).start();
+            System.out.println("Watching the album folder for changes.");
+        } catch (IOException e) {
+            System.err.println("Could not watch albums: " + e.getMessage());
+        }
+    }
+
+    private static void serve(MusicStore musicStore, int port) {
+        MusicService service = new MusicService(musicStore, userManager, persister);
+        try {
+            service.start(port);
+        } catch (IOException e) {
+            System.err.println("Could not start service: " + e.getMessage());
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(service::stop));
+        System.out.println("Music service listening on port " + service.getPort());
+    }
+
     private static void register(Scanner scanner) {
         System.out.print("Enter a username: ");
         String username = scanner.nextLine();
         System.out.print("Enter a password: ");
         String password = scanner.nextLine();
 
-        if (userManager.registerUser(username, password)) {
+        if (!UserManager.isValidUsername(username)) {
+            System.out.println("Usernames must not be empty or contain / \\ .. , or control characters.");
+        } else if (userManager.registerUser(username, password)) {
             System.out.println("Registration successful! You can now log in.");
         } else {
             System.out.println("Username already exists. Try again.");
@@ -71,6 +131,7 @@ public class Main {
         if (userManager.authenticateUser(username, password)) {
             System.out.println("Login successful! Welcome, " + username);
             currentUser = new User(username, password);
+            persister.awaitSaved(username); // A save queued at the last logout must land first
             loadUserLibrary(username);
             userMenu(scanner);
         } else {
@@ -80,20 +141,18 @@ public class Main {
 
     private static void loadUserLibrary(String username) {
         // Load user-specific library data from a file if it exists
-        String filePath = "resources/users/" + username + "_library.txt"; // File path for the user's library
-        File userLibraryFile = new File(filePath);
+        File userLibraryFile = userManager.getTextLibraryFile(username); // The user's library file
 
         if (userLibraryFile.exists()) {
-            try (BufferedReader reader = new BufferedReader(new FileReader(userLibraryFile))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
+            try (RecordReader reader = new RecordReader()) {
+                reader.open(userLibraryFile.toPath());
+                while (reader.nextLine()) {
                     // Each line is "title, artist, album, genre"
-                    String[] parts = line.split(",");
-                    if (parts.length == 4) {
-                        String title = parts[0].trim();
-                        String artist = parts[1].trim();
-                        String album = parts[2].trim();
-                        String genre = parts[3].trim();
+                    if (reader.fieldCount() == 4) {
+                        String title = reader.field(0);
+                        String artist = reader.field(1);
+                        String album = reader.field(2);
+                        String genre = reader.field(3);
 
                         Song song = new Song(title, artist, album, genre);
                         currentUser.addSongToLibrary(song);
@@ -107,19 +166,12 @@ public class Main {
         }
     }
 
-    private static void saveUserLibrary(String username) {
-        // Save the current user's library to a file
-        String filePath = "resources/users/" + username + "_library.txt"; // File path for saving the user's library
-        File userLibraryFile = new File(filePath);
-
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(userLibraryFile))) {
-            for (Song song : currentUser.getLibrary()) {
-                writer.write(song.getTitle() + "," + song.getArtist() + "," + song.getAlbum() + "," + song.getGenre());
-                writer.newLine();
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    private static void saveUserLibrary(User user) {
+        // Queue a save of the user's library; the persister copies the songs when it writes
+        // them, so a save replaced by a newer one costs nothing. Only logout saves, and the
+        // logged-out User is never changed again.
+        String username = user.getUsername();
+        persister.save(username, () -> userManager.saveTextLibrary(username, user.getLibrary()));
     }
 
     private static void userMenu(Scanner scanner) {
@@ -135,17 +187,16 @@ public class Main {
 
             switch (choice) {
                 case 1:
-                    System.out.println("Your Library:");
-                    for (Song song : currentUser.getLibrary()) {
-                        System.out.println(song);
-                    }
+                    ConsoleRenderer out = ConsoleRenderer.console();
+                    out.line("Your Library:");
+                    out.renderAll(currentUser.getLibrary().iterator(), Song::appendTo);
                     break;
                 case 2:
                     addSongToLibrary(scanner);
                     break;
                 case 3:
                     System.out.println("Logging out...");
-                    saveUserLibrary(currentUser.getUsername()); // Save the user's library before logout
+                    saveUserLibrary(currentUser); // Save the user's library before logout
                     return;
                 default:
                     System.out.println("Invalid choice! Please try again.");
@@ -11,6 +11,7 @@ package model;
 
 import java.util.ArrayList;
 import java.util.List;
+import view.ConsoleRenderer;
 
 public class Album {
     private String title;           // Album title
@@ -62,14 +63,13 @@ public class Album {
 
     // Prints album details and the titles of all included songs
     public void displayAlbumDetails() {
-        System.out.println("Album: " + title);
-        System.out.println("Artist: " + artist);
-        System.out.println("Genre: " + genre);
-        System.out.println("Year: " + year);
-        System.out.println("Songs:");
-        for (Song song : songs) {
-            System.out.println(" - " + song.getTitle());
-        }
+        ConsoleRenderer out = ConsoleRenderer.console();
+        out.line("Album: " + getTitle());
+        out.line("Artist: " + getArtist());
+        out.line("Genre: " + getGenre());
+        out.line("Year: " + getYear());
+        out.line("Songs:");
+        out.renderAll(getSongs().iterator(), (song, row) -> row.append(" - ").append(song.getTitle()));
     }
 }
 
@@ -0,0 +1,498 @@
+/**
+ * CatalogSnapshot.java
+ *
+ * One immutable, versioned state of the MusicStore catalog. The store publishes the
+ * current snapshot through a single volatile reference: readers grab it once and get a
+ * consistent, lock-free view, while a writer builds the next version from the current one.
+ * Because the indexes are PersistentMaps, the next version shares every unchanged branch
+ * with the previous one instead of copying the catalog.
+ *
+ * Secondary indexes (normalized title, artist and genre keys, albums by year, and the
+ * fuzzy indexes) are built on first use. After that they are carried from version to
+ * version: withAlbum updates the lookup indexes in place of the keys the album touches,
+ * and the fuzzy indexes keep their postings and record the changed albums beside them
+ * until enough have piled up to make a rebuild worthwhile. Lazy loads and reloads
+ * therefore pay for the album that changed, not for the catalog.
+ *
+ * Author: Haobin Yan
+ */
+
+package model;
+
+import java.util.*;
+import java.util.function.Function;
+
+public final class CatalogSnapshot {
+    // Order of albums in every secondary index (and of their songs, album by album)
+    private static final Comparator<Album> ALBUM_ORDER = Comparator.comparingInt(Album::getYear)
+            .thenComparing(Album::getTitle).thenComparing(Album::getArtist);
+
+    private final long version;                                   // Increases with every published change
+    private final PersistentMap<String, Album> albumsByTitle;     // All albums indexed by title
+    private final PersistentMap<String, List<Song>> songsByArtist;// Songs grouped by artist (immutable lists)
+    private final PersistentMap<Integer, Album> albumsByOrdinal;  // Albums by index position, for ID lookups
+    private volatile FuzzyIndexes fuzzy;                          // Built on the first fuzzy search, then carried over
+    private volatile LookupIndexes lookups;                       // Built on the first normalized or year lookup, then carried over
+
+    // Typo-tolerant indexes: FuzzyIndexes over the catalog as it was when they were built,
+    // plus the albums and artists added or removed since. Removed entries are filtered
+    // out of the indexed results and added ones are checked one by one, so each version
+    // only copies the (bounded) list of changes.
+    static final class FuzzyIndexes {
+        private static final int MIN_CHANGES = 32;  // Changes always tolerated before a rebuild
+
+        private final FuzzyIndex<Song> songs;
+        private final FuzzyIndex<Album> albums;
+        private final FuzzyIndex<String> artists;
+        private final int changes;                  // Albums added or removed since the build
+        private final Set<Song> removedSongs;       // Indexed songs no longer in the catalog (by identity)
+        private final Set<Album> removedAlbums;     // Indexed albums no longer in the catalog (by identity)
+        private final Set<String> removedArtists;   // Indexed artists without songs now
+        private final List<Album> addedAlbums;      // Albums not in the indexes
+        private final List<String> addedArtists;    // Artists not in the indexes
+
+        // Constructor: indexes over every album of a version (the artists are its keys)
+        FuzzyIndexes(Collection<Album> catalog, Iterable<String> artistNames) {
+            songs = new FuzzyIndex<>();
+            albums = new FuzzyIndex<>();
+            artists = new FuzzyIndex<>();
+            for (Album album : catalog) {
+                albums.add(album.getTitle(), album);
+                for (Song song : album.getSongs()) {
+                    songs.add(song.getTitle(), song);
+                }
+            }
+            for (String artist : artistNames) {
+                artists.add(artist, artist);
+            }
+            changes = 0;
+            removedSongs = Collections.emptySet();
+            removedAlbums = Collections.emptySet();
+            removedArtists = Collections.emptySet();
+            addedAlbums = Collections.emptyList();
+            addedArtists = Collections.emptyList();
+        }
+
+        private FuzzyIndexes(FuzzyIndexes base, int changes, Set<Song> removedSongs, Set<Album> removedAlbums,
+                             Set<String> removedArtists, List<Album> addedAlbums, List<String> addedArtists) {
+            this.songs = base.songs;
+            this.albums = base.albums;
+            this.artists = base.artists;
+            this.changes = changes;
+            this.removedSongs = removedSongs;
+            this.removedAlbums = removedAlbums;
+            this.removedArtists = removedArtists;
+            this.addedAlbums = addedAlbums;
+            this.addedArtists = addedArtists;
+        }
+
+        // The indexes with one album replaced (either may be null) and, when its artist
+        // gained or lost its last song, that artist added or removed; null once the
+        // changes outweigh an eighth of the indexed albums, so the next use rebuilds
+        FuzzyIndexes with(Album old, Album album, String artistGone, String artistNew) {
+            int count = changes + (old != null ? 1 : 0) + (album != null ? 1 : 0);
+            if (count > Math.max(MIN_CHANGES, albums.size() / 8)) return null;
+            Set<Song> goneSongs = identitySet(removedSongs);
+            Set<Album> goneAlbums = identitySet(removedAlbums);
+            Set<String> goneArtists = new HashSet<>(removedArtists);
+            List<Album> newAlbums = new ArrayList<>(addedAlbums);
+            List<String> newArtists = new ArrayList<>(addedArtists);
+            if (old != null && !removeByIdentity(newAlbums, old)) {
+                goneAlbums.add(old);
+                goneSongs.addAll(old.getSongs());
+            }
+            if (album != null && !goneAlbums.remove(album)) {
+                newAlbums.add(album);
+            } else if (album != null) {
+                goneSongs.removeAll(album.getSongs());
+            }
+            if (artistGone != null && !newArtists.remove(artistGone)) {
+                goneArtists.add(artistGone);
+            }
+            if (artistNew != null && !goneArtists.remove(artistNew)) {
+                newArtists.add(artistNew);
+            }
+            return new FuzzyIndexes(this, count, goneSongs, goneAlbums, goneArtists, newAlbums, newArtists);
+        }
+
+        // Songs whose title is within maxDistance edits of the query, closest first
+        List<Song> searchSongs(String query, int maxDistance, int limit) {
+            List<Song> added = new ArrayList<>();
+            for (Album album : addedAlbums) {
+                added.addAll(album.getSongs());
+            }
+            return search(songs, removedSongs, added, Song::getTitle, query, maxDistance, limit);
+        }
+
+        // Albums whose title is within maxDistance edits of the query, closest first
+        List<Album> searchAlbums(String query, int maxDistance, int limit) {
+            return search(albums, removedAlbums, addedAlbums, Album::getTitle, query, maxDistance, limit);
+        }
+
+        // Artist names within maxDistance edits of the query, closest first
+        List<String> searchArtists(String query, int maxDistance, int limit) {
+            return search(artists, removedArtists, addedArtists, Function.identity(), query, maxDistance, limit);
+        }
+
+        // Indexed matches that are still in the catalog merged with the added items that
+        // match, ranked like FuzzyIndex.search (by distance, then by length difference)
+        private static <T> List<T> search(FuzzyIndex<T> index, Set<T> removed, List<T> added, Function<T, String> keyOf,
+                                          String query, int maxDistance, int limit) {
+            if (removed.isEmpty() && added.isEmpty()) return index.search(query, maxDistance, limit);
+            String normalized = FuzzyIndex.normalize(query);
+            if (normalized.isEmpty() || limit <= 0) return Collections.emptyList();
+
+            // Ask for enough extra results to make up for the removed ones
+            int wanted = limit > Integer.MAX_VALUE - removed.size() ? Integer.MAX_VALUE : limit + removed.size();
+            List<T> matches = new ArrayList<>();
+            for (T item : index.search(query, maxDistance, wanted)) {
+                if (!removed.contains(item)) matches.add(item);
+            }
+            boolean extra = false;
+            for (T item : added) {
+                if (FuzzyIndex.distance(normalized, FuzzyIndex.normalize(keyOf.apply(item)), maxDistance) <= maxDistance) {
+                    matches.add(item);
+                    extra = true;
+                }
+            }
+            if (extra) {
+                Map<T, long[]> ranks = new IdentityHashMap<>();
+                for (T item : matches) {
+                    String key = FuzzyIndex.normalize(keyOf.apply(item));
+                    ranks.put(item, new long[] { FuzzyIndex.distance(normalized, key, maxDistance),
+                            Math.abs(key.length() - normalized.length()) });
+                }
+                matches.sort(Comparator.<T>comparingLong(item -> ranks.get(item)[0]).thenComparingLong(item -> ranks.get(item)[1]));
+            }
+            return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+        }
+
+        private static <T> Set<T> identitySet(Set<T> contents) {
+            Set<T> set = Collections.newSetFromMap(new IdentityHashMap<>());
+            set.addAll(contents);
+            return set;
+        }
+
+        private static <T> boolean removeByIdentity(List<T> list, T item) {
+            for (int i = 0; i < list.size(); i++) {
+                if (list.get(i) == item) {
+                    list.remove(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Normalized-key and year indexes over one version (all lists immutable). Albums are
+    // kept in ALBUM_ORDER under each key, so replacing an album only copies the album lists
+    // under the keys it touches. A key's songs are its albums' songs in that order, put
+    // together when asked for rather than stored, so no song list is ever copied on update.
+    static final class LookupIndexes {
+        final PersistentMap<String, List<Album>> albumsByTitle;
+        final PersistentMap<String, List<Album>> albumsByArtist;
+        final PersistentMap<String, List<Album>> albumsByGenre;
+        final PersistentMap<Integer, List<Album>> albumsByYear;
+        final int[] years;      // Distinct album years, ascending
+
+        private LookupIndexes(PersistentMap<String, List<Album>> albumsByTitle,
+                              PersistentMap<String, List<Album>> albumsByArtist,
+                              PersistentMap<String, List<Album>> albumsByGenre,
+                              PersistentMap<Integer, List<Album>> albumsByYear, int[] years) {
+            this.albumsByTitle = albumsByTitle;
+            this.albumsByArtist = albumsByArtist;
+            this.albumsByGenre = albumsByGenre;
+            this.albumsByYear = albumsByYear;
+            this.years = years;
+        }
+
+        // Indexes over a whole catalog
+        static LookupIndexes build(Collection<Album> catalog) {
+            List<Album> albums = new ArrayList<>(catalog);
+            albums.sort(ALBUM_ORDER);
+            Map<String, List<Album>> titles = new HashMap<>();
+            Map<String, List<Album>> artists = new HashMap<>();
+            Map<String, List<Album>> genres = new HashMap<>();
+            Map<Integer, List<Album>> years = new TreeMap<>();
+            for (Album album : albums) {
+                titles.computeIfAbsent(normalize(album.getTitle()), k -> new ArrayList<>()).add(album);
+                artists.computeIfAbsent(normalize(album.getArtist()), k -> new ArrayList<>()).add(album);
+                genres.computeIfAbsent(normalize(album.getGenre()), k -> new ArrayList<>()).add(album);
+                years.computeIfAbsent(album.getYear(), k -> new ArrayList<>()).add(album);
+            }
+            int[] distinct = new int[years.size()];
+            int n = 0;
+            for (int year : years.keySet()) {
+                distinct[n++] = year;
+            }
+            return new LookupIndexes(freeze(titles), freeze(artists), freeze(genres), freeze(years), distinct);
+        }
+
+        // The indexes with one album replaced (either may be null)
+        LookupIndexes with(Album old, Album album) {
+            PersistentMap<String, List<Album>> titles = albumsByTitle;
+            PersistentMap<String, List<Album>> artists = albumsByArtist;
+            PersistentMap<String, List<Album>> genres = albumsByGenre;
+            PersistentMap<Integer, List<Album>> byYear = albumsByYear;
+            int[] distinct = years;
+            for (Album changed : new Album[] { old, album }) {
+                if (changed == null) continue;
+                boolean adding = changed == album;
+                titles = update(titles, normalize(changed.getTitle()), changed, adding);
+                artists = update(artists, normalize(changed.getArtist()), changed, adding);
+                genres = update(genres, normalize(changed.getGenre()), changed, adding);
+                byYear = update(byYear, changed.getYear(), changed, adding);
+                distinct = withYear(distinct, changed.getYear(), byYear.containsKey(changed.getYear()));
+            }
+            return new LookupIndexes(titles, artists, genres, byYear, distinct);
+        }
+
+        // Songs of the albums under a normalized artist or genre key, in album order
+        List<Song> songsByArtist(String artist) {
+            return songsOf(albumsByArtist.get(artist));
+        }
+
+        List<Song> songsByGenre(String genre) {
+            return songsOf(albumsByGenre.get(genre));
+        }
+
+        // Albums whose year is in [from, to], oldest first: O(log n) plus the years and albums in range
+        List<Album> yearRange(int from, int to) {
+            if (from > to) return Collections.emptyList();
+            int first = lowerBound(years, from);
+            int last = to == Integer.MAX_VALUE ? years.length : lowerBound(years, to + 1);
+            if (first == last) return Collections.emptyList();
+            if (last - first == 1) return albumsByYear.get(years[first]);
+            List<Album> result = new ArrayList<>();
+            for (int i = first; i < last; i++) {
+                result.addAll(albumsByYear.get(years[i]));
+            }
+            return Collections.unmodifiableList(result);
+        }
+
+        // Index of the first year >= key
+        private static int lowerBound(int[] sorted, int key) {
+            int index = Arrays.binarySearch(sorted, key);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        // The list under a key with the album taken out (by identity) or put in its place
+        private static <K> PersistentMap<K, List<Album>> update(PersistentMap<K, List<Album>> index, K key,
+                                                                Album changed, boolean adding) {
+            List<Album> albums = new ArrayList<>(index.getOrDefault(key, Collections.emptyList()));
+            if (adding) {
+                int at = Collections.binarySearch(albums, changed, ALBUM_ORDER);
+                if (at < 0) at = -at - 1;
+                while (at < albums.size() && ALBUM_ORDER.compare(albums.get(at), changed) == 0) at++;
+                albums.add(at, changed);
+            } else {
+                albums.removeIf(album -> album == changed);
+            }
+            return putOrRemove(index, key, Collections.unmodifiableList(albums));
+        }
+
+        // The distinct years with one added or removed
+        private static int[] withYear(int[] years, int year, boolean present) {
+            int at = Arrays.binarySearch(years, year);
+            if (present == at >= 0) return years;
+            int[] result = new int[years.length + (present ? 1 : -1)];
+            if (present) {
+                at = -at - 1;
+                System.arraycopy(years, 0, result, 0, at);
+                result[at] = year;
+                System.arraycopy(years, at, result, at + 1, years.length - at);
+            } else {
+                System.arraycopy(years, 0, result, 0, at);
+                System.arraycopy(years, at + 1, result, at, years.length - at - 1);
+            }
+            return result;
+        }
+
+        private static <K, V> PersistentMap<K, List<V>> putOrRemove(PersistentMap<K, List<V>> index, K key, List<V> list) {
+            return list.isEmpty() ? index.minus(key) : index.plus(key, list);
+        }
+
+        private static List<Song> songsOf(List<Album> albums) {
+            if (albums == null) return Collections.emptyList();
+            List<Song> songs = new ArrayList<>();
+            for (Album album : albums) {
+                songs.addAll(album.getSongs());
+            }
+            return Collections.unmodifiableList(songs);
+        }
+
+        private static <K> PersistentMap<K, List<Album>> freeze(Map<K, List<Album>> index) {
+            PersistentMap<K, List<Album>> frozen = PersistentMap.empty();
+            for (Map.Entry<K, List<Album>> entry : index.entrySet()) {
+                frozen = frozen.plus(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+            }
+            return frozen;
+        }
+    }
+
+    // The empty catalog
+    static final CatalogSnapshot EMPTY = new CatalogSnapshot(0, PersistentMap.empty(),
+            PersistentMap.empty(), PersistentMap.empty(), null, null);
+
+    private CatalogSnapshot(long version, PersistentMap<String, Album> albumsByTitle,
+                            PersistentMap<String, List<Song>> songsByArtist,
+                            PersistentMap<Integer, Album> albumsByOrdinal,
+                            FuzzyIndexes fuzzy, LookupIndexes lookups) {
+        this.version = version;
+        this.albumsByTitle = albumsByTitle;
+        this.songsByArtist = songsByArtist;
+        this.albumsByOrdinal = albumsByOrdinal;
+        this.fuzzy = fuzzy;
+        this.lookups = lookups;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // Get a specific album by its title, or null
+    public Album getAlbum(String title) {
+        return albumsByTitle.get(title);
+    }
+
+    // Get all songs by a specific artist (an immutable, possibly empty list)
+    public List<Song> getSongsByArtist(String artist) {
+        return songsByArtist.getOrDefault(artist, Collections.emptyList());
+    }
+
+    // Get the album at an index position, or null
+    public Album getAlbumByOrdinal(int ordinal) {
+        return albumsByOrdinal.get(ordinal);
+    }
+
+    // All albums in this version (read-only; never changes)
+    public Collection<Album> getAllAlbums() {
+        return albumsByTitle.values();
+    }
+
+    public int getAlbumCount() {
+        return albumsByTitle.size();
+    }
+
+    // Fuzzy indexes for this version, built on first use unless carried over
+    FuzzyIndexes fuzzyIndexes() {
+        FuzzyIndexes indexes = fuzzy;
+        if (indexes == null) {
+            synchronized (this) {
+                indexes = fuzzy;
+                if (indexes == null) {
+                    List<String> artists = new ArrayList<>(songsByArtist.size());
+                    for (Map.Entry<String, List<Song>> entry : songsByArtist) {
+                        artists.add(entry.getKey());
+                    }
+                    indexes = new FuzzyIndexes(getAllAlbums(), artists);
+                    fuzzy = indexes;
+                }
+            }
+        }
+        return indexes;
+    }
+
+    // Lookup indexes for this version, built on first use unless carried over
+    LookupIndexes lookupIndexes() {
+        LookupIndexes indexes = lookups;
+        if (indexes == null) {
+            synchronized (this) {
+                indexes = lookups;
+                if (indexes == null) {
+                    indexes = LookupIndexes.build(getAllAlbums());
+                    lookups = indexes;
+                }
+            }
+        }
+        return indexes;
+    }
+
+    // Lookup key for a name: case, surrounding and repeated whitespace don't matter
+    public static String normalize(String name) {
+        if (name == null) return "";
+        StringBuilder key = new StringBuilder(name.length());
+        boolean space = false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = key.length() > 0;
+            } else {
+                if (space) key.append(' ');
+                key.append(c);
+                space = false;
+            }
+        }
+        return key.toString().toLowerCase(Locale.ROOT);
+    }
+
+    // Albums whose title matches ignoring case and whitespace (immutable, possibly empty)
+    public List<Album> findAlbumsByTitle(String title) {
+        return lookupIndexes().albumsByTitle.getOrDefault(normalize(title), Collections.emptyList());
+    }
+
+    // Songs whose artist matches ignoring case and whitespace (immutable, possibly empty)
+    public List<Song> findSongsByArtist(String artist) {
+        return lookupIndexes().songsByArtist(normalize(artist));
+    }
+
+    // Albums of a genre, ignoring case and whitespace (immutable, possibly empty)
+    public List<Album> getAlbumsByGenre(String genre) {
+        return lookupIndexes().albumsByGenre.getOrDefault(normalize(genre), Collections.emptyList());
+    }
+
+    // Songs of a genre, ignoring case and whitespace (immutable, possibly empty)
+    public List<Song> getSongsByGenre(String genre) {
+        return lookupIndexes().songsByGenre(normalize(genre));
+    }
+
+    // Albums released from `from` to `to` (inclusive), oldest first: O(log n) plus the years and albums in range
+    public List<Album> getAlbumsByYearRange(int from, int to) {
+        return lookupIndexes().yearRange(from, to);
+    }
+
+    // Same contents under the next version number (the off-heap catalog changed)
+    CatalogSnapshot nextVersion() {
+        return new CatalogSnapshot(version + 1, albumsByTitle, songsByArtist, albumsByOrdinal, fuzzy, lookups);
+    }
+
+    // Next version with the album at an ordinal replaced (null removes it). Only the
+    // affected trie paths and the artist's song list are rebuilt, and secondary indexes
+    // already built for this version are updated for the album rather than dropped.
+    CatalogSnapshot withAlbum(int ordinal, String title, String artist, Album album) {
+        Album old = albumsByOrdinal.get(ordinal);
+        if (old == null && album == null) return this;
+
+        PersistentMap<String, Album> titles = albumsByTitle;
+        PersistentMap<Integer, Album> ordinals = albumsByOrdinal;
+        if (old != null) {
+            if (titles.get(title) == old) {
+                titles = titles.minus(title);
+            }
+            ordinals = ordinals.minus(ordinal);
+        }
+        if (album != null) {
+            titles = titles.plus(title, album);
+            ordinals = ordinals.plus(ordinal, album);
+        }
+
+        List<Song> artistSongs = new ArrayList<>(getSongsByArtist(artist));
+        if (old != null) {
+            artistSongs.removeAll(new HashSet<>(old.getSongs()));
+        }
+        if (album != null) {
+            artistSongs.addAll(album.getSongs());
+        }
+        PersistentMap<String, List<Song>> artists = artistSongs.isEmpty()
+                ? songsByArtist.minus(artist)
+                : songsByArtist.plus(artist, Collections.unmodifiableList(artistSongs));
+
+        LookupIndexes lookupsNow = lookups;
+        FuzzyIndexes fuzzyNow = fuzzy;
+        String artistGone = songsByArtist.containsKey(artist) && !artists.containsKey(artist) ? artist : null;
+        String artistNew = !songsByArtist.containsKey(artist) && artists.containsKey(artist) ? artist : null;
+        return new CatalogSnapshot(version + 1, titles, artists, ordinals,
+                fuzzyNow == null ? null : fuzzyNow.with(old, album, artistGone, artistNew),
+                lookupsNow == null ? null : lookupsNow.with(old, album));
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * CatalogWatcher.java
+ *
+ * Opt-in hot reload for the MusicStore. Watches the album folder (and the folder of the
+ * album index, if different) with a WatchService on a background daemon thread. A change
+ * to the index re-reads only the index; a change to one album file re-parses only that
+ * album. Events that arrive close together are coalesced into one reload per file.
+ *
+ * Author: Haobin Yan
+ */
+
+package model;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+public class CatalogWatcher implements Closeable {
+    private static final long SETTLE_MILLIS = 200;  // Wait for editors to finish writing a file
+
+    private final MusicStore store;                 // Store that receives the reloads
+    private final Path albumsDirectory;             // Folder holding the album files
+    private final Path indexFile;                   // The album index (albums.txt)
+    private WatchService watchService;
+    private Thread thread;
+
+    // Constructor: watches the folders the given store was loaded from
+    public CatalogWatcher(MusicStore store) {
+        this.store = store;
+        this.albumsDirectory = store.getAlbumsDirectory().toAbsolutePath().normalize();
+        this.indexFile = store.getIndexPath().toAbsolutePath().normalize();
+    }
+
+    // Start watching; changes are applied until close() is called
+    public void start() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        albumsDirectory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        Path indexDirectory = indexFile.getParent();
+        if (!indexDirectory.equals(albumsDirectory)) {
+            indexDirectory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        }
+        thread = new Thread(this::watchLoop, "catalog-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Stop watching
+    @Override
+    public void close() throws IOException {
+        if (thread != null) {
+            thread.interrupt();
+        }
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    // Wait for events, gather everything that changed in a short window, then reload it
+    private void watchLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                Set<Path> changed = new LinkedHashSet<>();
+                boolean overflow = false;
+                while (key != null) {
+                    overflow |= collect(key, changed);
+                    key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                apply(changed, overflow);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Watcher closed
+        }
+    }
+
+    // Add the changed paths of one key to the set; returns true if events were lost
+    private boolean collect(WatchKey key, Set<Path> changed) {
+        boolean overflow = false;
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                overflow = true;
+            } else {
+                changed.add(directory.resolve((Path) event.context()));
+            }
+        }
+        key.reset();
+        return overflow;
+    }
+
+    // Reload the index first (it may add or drop albums), then each changed album file
+    private void apply(Set<Path> changed, boolean overflow) {
+        if (overflow) {
+            store.reloadAll(); // events were lost, so nothing can be assumed unchanged
+            return;
+        }
+        if (changed.remove(indexFile)) {
+            store.reloadIndex();
+        }
+        for (Path path : changed) {
+            if (path.getParent().equals(albumsDirectory) && path.getFileName().toString().endsWith(".txt")) {
+                store.reloadAlbumFile(path.getFileName().toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * CoPlayRecommender.java
+ *
+ * "More like this song" recommendations learned from play histories across all users.
+ * Two catalog songs are related when the same user plays them close together (within
+ * the last few distinct songs that user played). Every song keeps a bounded neighbor
+ * table of its most co-played songs, maintained with the Space-Saving rule: once the
+ * table is full, a new neighbor replaces the weakest one and inherits its count. Memory
+ * is therefore O(songs × neighbors) no matter how many plays arrive, each play updates
+ * only a handful of tables, and a query just reads the front of one sorted table.
+ *
+ * Only catalog songs are learned, since local songs have no meaning across users.
+ *
+ * Author: Haobin Yan
+ */
+
+package model;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class CoPlayRecommender implements PlayListener {
+    public static final int DEFAULT_NEIGHBORS = 20;   // Neighbors reported per song
+    public static final int DEFAULT_WINDOW = 5;       // Recent plays that count as "together"
+
+    private final int neighbors;                             // Neighbors reported per song
+    private final int window;                                // Size of each user's play window
+    private final IntObjectMap<NeighborTable> tables;        // Song ID → its neighbor table (guarded by itself)
+    private final Map<String, RecentPlays> recentByUser;     // Username → that user's last plays
+
+    // Constructor: default table and window sizes
+    public CoPlayRecommender() {
+        this(DEFAULT_NEIGHBORS, DEFAULT_WINDOW);
+    }
+
+    // Constructor: keep the given number of neighbors per song and pair plays within a window
+    public CoPlayRecommender(int neighbors, int window) {
+        if (neighbors < 1 || window < 1) {
+            throw new IllegalArgumentException("neighbors and window must be positive");
+        }
+        this.neighbors = neighbors;
+        this.window = window;
+        this.tables = new IntObjectMap<>();
+        this.recentByUser = new ConcurrentHashMap<>();
+    }
+
+    // PlayListener: learn from a play
+    @Override
+    public void songPlayed(String username, Song song, long timeMillis) {
+        if (username != null && song != null) {
+            recordPlay(username, song.getId());
+        }
+    }
+
+    // Pair the song with the user's recent plays, then add it to the user's window
+    public void recordPlay(String username, int songId) {
+        if (songId < 0) return; // local songs are not shared between users
+        RecentPlays recent = recentByUser.computeIfAbsent(username, u -> new RecentPlays(window));
+        int[] partners;
+        synchronized (recent) {
+            partners = recent.othersThan(songId);
+            recent.push(songId);
+        }
+        if (partners.length == 0) return;
+        NeighborTable own = table(songId);
+        for (int partner : partners) {
+            own.increment(partner);
+            table(partner).increment(songId);
+        }
+    }
+
+    // IDs of the songs most often played together with the given song, best first
+    public int[] similarSongs(int songId, int limit) {
+        NeighborTable table;
+        synchronized (tables) {
+            table = tables.get(songId);
+        }
+        return table == null ? new int[0] : table.top(Math.min(limit, neighbors));
+    }
+
+    // Songs most often played together with the given song, resolved through the store
+    public List<Song> moreLikeThis(Song song, int limit, MusicStore store) {
+        List<Song> result = new ArrayList<>();
+        for (int id : similarSongs(song.getId(), limit)) {
+            Song similar = store.getSong(id);
+            if (similar != null) {
+                result.add(similar);
+            }
+        }
+        return result;
+    }
+
+    // Number of songs that have at least one neighbor
+    public int getSongCount() {
+        synchronized (tables) {
+            return tables.size();
+        }
+    }
+
+    private NeighborTable table(int songId) {
+        synchronized (tables) {
+            NeighborTable table = tables.get(songId);
+            if (table == null) {
+                table = new NeighborTable(neighbors * 2); // slack keeps the reported top-N accurate
+                tables.put(songId, table);
+            }
+            return table;
+        }
+    }
+
+    // Bounded co-play counts for one song, kept sorted by count (highest first)
+    private static final class NeighborTable {
+        private final int[] ids;
+        private final int[] counts;
+        private int size;
+
+        NeighborTable(int capacity) {
+            ids = new int[capacity];
+            counts = new int[capacity];
+        }
+
+        synchronized void increment(int id) {
+            int i = 0;
+            while (i < size && ids[i] != id) i++;
+            if (i == size) {
+                if (size < ids.length) {
+                    size++;
+                    counts[i] = 0;
+                } else {
+                    i = size - 1; // evict the weakest neighbor; the newcomer inherits its count
+                }
+                ids[i] = id;
+            }
+            counts[i]++;
+            // Move up past neighbors with a lower count
+            int count = counts[i];
+            while (i > 0 && counts[i - 1] < count) {
+                ids[i] = ids[i - 1];
+                counts[i] = counts[i - 1];
+                i--;
+            }
+            ids[i] = id;
+            counts[i] = count;
+        }
+
+        synchronized int[] top(int limit) {
+            return Arrays.copyOf(ids, Math.min(limit, size));
+        }
+    }
+
+    // The last few distinct songs one user played, newest first
+    private static final class RecentPlays {
+        private final int[] ids;
+        private int size;
+
+        RecentPlays(int window) {
+            ids = new int[window];
+        }
+
+        int[] othersThan(int songId) {
+            int[] result = new int[size];
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                if (ids[i] != songId) result[n++] = ids[i];
+            }
+            return n == size ? result : Arrays.copyOf(result, n);
+        }
+
+        void push(int songId) {
+            int i = 0;
+            while (i < size && ids[i] != songId) i++;
+            if (i == size) {
+                if (size < ids.length) size++;
+                i = size - 1;
+            }
+            System.arraycopy(ids, 0, ids, 1, i);
+            ids[0] = songId;
+        }
+    }
+}
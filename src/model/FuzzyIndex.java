@@ -0,0 +1,242 @@
+/**
+ * FuzzyIndex.java
+ *
+ * Typo-tolerant lookup of items by a text key (song title, album title, artist name).
+ * Keys are normalized (lower case, single spaces) and split into padded trigrams, each
+ * trigram keeping a sorted posting list of the entries that contain it. A key within edit
+ * distance k of the query shares at least (query trigrams - 3k) trigrams with it, so only
+ * the postings of the rarest (3k + 1) query trigrams have to be read to find every
+ * candidate. Candidates that are too long or short, or provably share too few trigrams,
+ * are dropped before the banded Levenshtein check, which gives up as soon as k is
+ * exceeded. Results are ranked by distance, then by length difference.
+ *
+ * The index is filled with add() and becomes read-only (and safe to share between
+ * threads) on the first search, which publishes the compact postings through a volatile
+ * field; later searches read it without locking. Shared-trigram counts are kept in a
+ * small IntIntMap per search, sized by the postings read rather than by the index.
+ * Very short queries (where 3k + 1 covers every trigram) only find keys that share at
+ * least one trigram with them.
+ *
+ * Author: Haobin Yan
+ */
+
+package model;
+
+import java.util.*;
+
+public class FuzzyIndex<T> {
+    private static final int GRAM = 3;            // Characters per gram
+    private static final char PAD = '\u0002';     // Marks the start and end of a key
+
+    private final List<String> keys;              // Normalized key of each entry
+    private final List<T> items;                  // Item of each entry
+    private Map<Long, IntList> building;          // Trigram → entry numbers (while adding)
+    private volatile Frozen frozen;               // Compact postings (set by the first search)
+
+    // The read-only form of the index
+    private static final class Frozen {
+        final Map<Long, int[]> postings;          // Trigram → sorted entry numbers
+        final int[] lengths;                      // Key length of each entry
+
+        Frozen(Map<Long, int[]> postings, int[] lengths) {
+            this.postings = postings;
+            this.lengths = lengths;
+        }
+    }
+
+    // Growable int array used while the index is built
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+    }
+
+    public FuzzyIndex() {
+        keys = new ArrayList<>();
+        items = new ArrayList<>();
+        building = new HashMap<>();
+    }
+
+    // Index an item under a key; must not be called after the first search
+    public void add(String key, T item) {
+        if (building == null) {
+            throw new IllegalStateException("FuzzyIndex is read-only once searched");
+        }
+        String normalized = normalize(key);
+        int entry = keys.size();
+        keys.add(normalized);
+        items.add(item);
+        long previous = Long.MIN_VALUE;
+        for (long gram : grams(normalized)) {
+            if (gram != previous) { // grams() is sorted, so duplicates are adjacent
+                building.computeIfAbsent(gram, g -> new IntList()).add(entry);
+                previous = gram;
+            }
+        }
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    // Items whose key is within maxDistance edits of the query, best first
+    public List<T> search(String query, int maxDistance, int limit) {
+        Frozen index = frozen;
+        if (index == null) index = freeze();
+        String normalized = normalize(query);
+        if (normalized.isEmpty() || limit <= 0) return Collections.emptyList();
+
+        IntList candidates = candidates(index, normalized, maxDistance);
+        List<int[]> matches = new ArrayList<>(); // {entry, distance}
+        for (int c = 0; c < candidates.size; c++) {
+            int entry = candidates.values[c];
+            int distance = distance(normalized, keys.get(entry), maxDistance);
+            if (distance <= maxDistance) {
+                matches.add(new int[] { entry, distance });
+            }
+        }
+        int length = normalized.length();
+        matches.sort((a, b) -> a[1] != b[1] ? Integer.compare(a[1], b[1])
+                : Integer.compare(Math.abs(keys.get(a[0]).length() - length), Math.abs(keys.get(b[0]).length() - length)));
+
+        List<T> result = new ArrayList<>(Math.min(limit, matches.size()));
+        for (int i = 0; i < matches.size() && result.size() < limit; i++) {
+            result.add(items.get(matches.get(i)[0]));
+        }
+        return result;
+    }
+
+    // Entries that pass the length and shared-trigram filters for the query, in entry order
+    private static IntList candidates(Frozen index, String query, int maxDistance) {
+        List<int[]> lists = new ArrayList<>();
+        long previous = Long.MIN_VALUE;
+        for (long gram : grams(query)) {
+            if (gram != previous) {
+                lists.add(index.postings.getOrDefault(gram, new int[0]));
+                previous = gram;
+            }
+        }
+        // A match lacks at most GRAM * k of the query's distinct trigrams, so it shares at
+        // least `required` of them and appears in one of the `generating` rarest lists
+        lists.sort(Comparator.comparingInt(list -> list.length));
+        int required = lists.size() - GRAM * maxDistance;
+        int generating = Math.min(lists.size(), GRAM * maxDistance + 1);
+
+        int postingsRead = 0;
+        for (int i = 0; i < generating; i++) {
+            postingsRead += lists.get(i).length;
+        }
+        IntIntMap counts = new IntIntMap(postingsRead);
+        for (int i = 0; i < generating; i++) {
+            for (int entry : lists.get(i)) {
+                counts.increment(entry, 1);
+            }
+        }
+        IntList result = new IntList();
+        for (int slot = counts.firstSlot(); slot >= 0; slot = counts.nextSlot(slot)) {
+            int entry = counts.keyAt(slot);
+            int shared = counts.valueAt(slot);
+            if (Math.abs(index.lengths[entry] - query.length()) > maxDistance) continue;
+            // Count the remaining trigrams only until the outcome is certain
+            for (int i = generating; i < lists.size() && shared < required
+                    && shared + lists.size() - i >= required; i++) {
+                if (Arrays.binarySearch(lists.get(i), entry) >= 0) shared++;
+            }
+            if (shared >= required) result.add(entry);
+        }
+        Arrays.sort(result.values, 0, result.size); // Table order is arbitrary; ties rank by entry
+        return result;
+    }
+
+    // Turn the growable postings into compact arrays, once, and publish them
+    private synchronized Frozen freeze() {
+        if (frozen != null) return frozen;
+        Map<Long, int[]> postings = new HashMap<>(building.size() * 2);
+        for (Map.Entry<Long, IntList> entry : building.entrySet()) {
+            IntList list = entry.getValue();
+            postings.put(entry.getKey(), Arrays.copyOf(list.values, list.size));
+        }
+        int[] lengths = new int[keys.size()];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = keys.get(i).length();
+        }
+        building = null;
+        frozen = new Frozen(postings, lengths);
+        return frozen;
+    }
+
+    // Lower case, trimmed, with runs of whitespace collapsed to one space
+    static String normalize(String text) {
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = normalized.length() > 0;
+            } else {
+                if (space) normalized.append(' ');
+                normalized.append(Character.toLowerCase(c));
+                space = false;
+            }
+        }
+        return normalized.toString();
+    }
+
+    // Sorted trigram codes of a key padded with two marks on each side
+    private static long[] grams(String key) {
+        int length = key.length() + 2 * (GRAM - 1);
+        long[] grams = new long[Math.max(0, length - GRAM + 1)];
+        for (int i = 0; i < grams.length; i++) {
+            long code = 0;
+            for (int j = i; j < i + GRAM; j++) {
+                int at = j - (GRAM - 1);
+                char c = at < 0 || at >= key.length() ? PAD : key.charAt(at);
+                code = (code << 16) | c;
+            }
+            grams[i] = code;
+        }
+        Arrays.sort(grams);
+        return grams;
+    }
+
+    // Levenshtein distance, or max + 1 as soon as it must exceed max
+    static int distance(String a, String b, int max) {
+        if (a.length() > b.length()) {
+            String swap = a;
+            a = b;
+            b = swap;
+        }
+        int n = a.length();
+        int m = b.length();
+        if (m - n > max) return max + 1;
+        int[] previous = new int[n + 1];
+        int[] current = new int[n + 1];
+        for (int i = 0; i <= n; i++) previous[i] = i;
+        int big = max + 1;
+        for (int j = 1; j <= m; j++) {
+            // Only cells within `max` of the diagonal can stay under the limit
+            int from = Math.max(1, j - max);
+            int to = Math.min(n, j + max);
+            current[0] = j;
+            if (from > 1) current[from - 1] = big;
+            int rowMin = from == 1 ? j : big;
+            char bc = b.charAt(j - 1);
+            for (int i = from; i <= to; i++) {
+                int cost = a.charAt(i - 1) == bc ? 0 : 1;
+                int value = Math.min(previous[i - 1] + cost, Math.min(previous[i] + 1, current[i - 1] + 1));
+                current[i] = Math.min(value, big);
+                rowMin = Math.min(rowMin, current[i]);
+            }
+            if (to < n) current[to + 1] = big;
+            if (rowMin > max) return big;
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[n], big);
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * GlobalCharts.java
+ *
+ * "Most played across all users" charts fed by every play. Counts are kept in fixed-size
+ * HeavyHitters (Space-Saving) summaries rather than per-user maps, so a top-K query never
+ * merges anyone's library. Sliding windows are built from time buckets: the last hour is
+ * 60 one-minute summaries, the last day 24 one-hour summaries and the last week 7 one-day
+ * summaries. A bucket is reset when its slot is reused, and a window query merges the
+ * buckets it covers, so no individual play is ever stored. Windows are accurate to one
+ * bucket: the hour chart covers the current minute plus the 59 before it.
+ *
+ * Author: Haobin Yan
+ */
+
+package model;
+
+import java.util.*;
+
+public class GlobalCharts implements PlayListener {
+    public static final int DEFAULT_CAPACITY = 200;   // Counters per summary
+
+    private static final long MINUTE = 60_000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    // Time range a chart covers
+    public enum Window {
+        HOUR, DAY, WEEK, ALL_TIME
+    }
+
+    private final HeavyHitters allTime;         // Every play since start
+    private final BucketRing lastHour;          // 60 x 1 minute
+    private final BucketRing lastDay;           // 24 x 1 hour
+    private final BucketRing lastWeek;          // 7 x 1 day
+
+    // Constructor: default summary size
+    public GlobalCharts() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    // Constructor: each summary monitors up to `capacity` songs; counts are exact for
+    // any song whose share of the window's plays exceeds 1 / capacity
+    public GlobalCharts(int capacity) {
+        this.allTime = new HeavyHitters(capacity);
+        this.lastHour = new BucketRing(MINUTE, 60, capacity);
+        this.lastDay = new BucketRing(HOUR, 24, capacity);
+        this.lastWeek = new BucketRing(DAY, 7, capacity);
+    }
+
+    // PlayListener: count the play
+    @Override
+    public void songPlayed(String username, Song song, long timeMillis) {
+        if (song != null) {
+            record(song.getId(), timeMillis);
+        }
+    }
+
+    // Count one play of a catalog song at the given time
+    public synchronized void record(int songId, long timeMillis) {
+        if (songId < 0) return; // local songs are private to one library
+        allTime.add(songId);
+        lastHour.add(songId, timeMillis);
+        lastDay.add(songId, timeMillis);
+        lastWeek.add(songId, timeMillis);
+    }
+
+    // The k most played songs in the window ending now
+    public List<HeavyHitters.Entry> top(Window window, int k) {
+        return top(window, k, System.currentTimeMillis());
+    }
+
+    // The k most played songs in the window ending at the given time, highest first
+    public synchronized List<HeavyHitters.Entry> top(Window window, int k, long nowMillis) {
+        return summary(window, nowMillis).top(k);
+    }
+
+    // Plays counted in the window and the worst-case overestimate of any count in it
+    public synchronized long[] totalAndMaxError(Window window, long nowMillis) {
+        HeavyHitters summary = summary(window, nowMillis);
+        return new long[] { summary.getTotal(), summary.getMaxError() };
+    }
+
+    private HeavyHitters summary(Window window, long nowMillis) {
+        switch (window) {
+            case HOUR:
+                return lastHour.merged(nowMillis);
+            case DAY:
+                return lastDay.merged(nowMillis);
+            case WEEK:
+                return lastWeek.merged(nowMillis);
+            default:
+                return allTime;
+        }
+    }
+
+    // Fixed ring of per-bucket summaries; a slot is cleared when a new bucket claims it
+    private static final class BucketRing {
+        private final long bucketMillis;
+        private final HeavyHitters[] buckets;   // Created on first use
+        private final long[] bucketNumbers;     // Which time bucket each slot holds
+        private final int capacity;
+
+        BucketRing(long bucketMillis, int count, int capacity) {
+            this.bucketMillis = bucketMillis;
+            this.buckets = new HeavyHitters[count];
+            this.bucketNumbers = new long[count];
+            this.capacity = capacity;
+            Arrays.fill(bucketNumbers, -1);
+        }
+
+        void add(int songId, long timeMillis) {
+            long number = timeMillis / bucketMillis;
+            int slot = (int) (number % buckets.length);
+            if (bucketNumbers[slot] != number) {
+                if (bucketNumbers[slot] > number) return; // older than the window
+                if (buckets[slot] == null) {
+                    buckets[slot] = new HeavyHitters(capacity);
+                } else {
+                    buckets[slot].clear();
+                }
+                bucketNumbers[slot] = number;
+            }
+            buckets[slot].add(songId);
+        }
+
+        // One summary of every bucket still inside the window
+        HeavyHitters merged(long nowMillis) {
+            long newest = nowMillis / bucketMillis;
+            HeavyHitters result = new HeavyHitters(capacity);
+            for (int i = 0; i < buckets.length; i++) {
+                long number = bucketNumbers[i];
+                if (buckets[i] != null && number <= newest && number > newest - buckets.length) {
+                    result.addAll(buckets[i]);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/**
+ * HeavyHitters.java
+ *
+ * Space-Saving summary of the most frequent song IDs in a stream, in fixed memory. It
+ * keeps at most `capacity` counters; when a new ID arrives and all are taken, the
+ * smallest counter is handed over to it and its old count becomes the new ID's error.
+ * For every reported ID, count - error <= true count <= count, and every ID played more
+ * than total / capacity times is guaranteed to be reported. Not thread-safe.
+ *
+ * Author: Haobin Yan
+ */
+
+package model;
+
+import java.util.*;
+
+public class HeavyHitters {
+    private final int capacity;                  // Maximum number of counters
+    private final Counter[] heap;                // Min-heap of counters by count
+    private final IntObjectMap<Counter> byId;    // Song ID → its counter
+    private int size;                            // Counters in use
+    private long total;                          // Sum of all weights recorded
+
+    // One monitored ID
+    private static final class Counter {
+        int id;
+        long count;
+        long error;
+        int position;    // Index in the heap
+    }
+
+    // One reported ID with its estimated count and maximum overestimate
+    public static final class Entry {
+        private final int songId;
+        private final long count;
+        private final long error;
+
+        Entry(int songId, long count, long error) {
+            this.songId = songId;
+            this.count = count;
+            this.error = error;
+        }
+
+        public int getSongId() {
+            return songId;
+        }
+
+        // Upper bound on the true count
+        public long getCount() {
+            return count;
+        }
+
+        // How much the count may overestimate the true count
+        public long getError() {
+            return error;
+        }
+
+        // Guaranteed lower bound on the true count
+        public long getLowerBound() {
+            return count - error;
+        }
+    }
+
+    // Constructor: monitor at most `capacity` IDs
+    public HeavyHitters(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+        this.heap = new Counter[capacity];
+        this.byId = new IntObjectMap<>(capacity);
+    }
+
+    // Count one occurrence of the ID
+    public void add(int songId) {
+        add(songId, 1);
+    }
+
+    // Count `weight` more occurrences of the ID
+    public void add(int songId, long weight) {
+        total += weight;
+        Counter counter = byId.get(songId);
+        if (counter == null) {
+            if (size < capacity) {
+                counter = new Counter();
+                counter.id = songId;
+                counter.count = weight;
+                byId.put(songId, counter);
+                heap[size] = counter;
+                siftUp(size++);
+                return;
+            } else {
+                counter = heap[0]; // take over the smallest counter
+                byId.remove(counter.id);
+                counter.error = counter.count;
+            }
+            counter.id = songId;
+            byId.put(songId, counter);
+        }
+        counter.count += weight;
+        siftDown(counter.position);
+    }
+
+    // Add everything another summary has seen. An ID one side does not monitor may still
+    // have occurred up to that side's smallest count, so that much is added to both its
+    // count and its error; the largest `capacity` merged counters are kept.
+    public void addAll(HeavyHitters other) {
+        long ownMin = minCount();
+        long otherMin = other.minCount();
+        List<Counter> merged = new ArrayList<>(size + other.size);
+        for (int i = 0; i < size; i++) {
+            Counter counter = heap[i];
+            Counter match = other.byId.get(counter.id);
+            counter.count += match != null ? match.count : otherMin;
+            counter.error += match != null ? match.error : otherMin;
+            merged.add(counter);
+        }
+        for (int i = 0; i < other.size; i++) {
+            Counter theirs = other.heap[i];
+            if (!byId.containsKey(theirs.id)) {
+                Counter counter = new Counter();
+                counter.id = theirs.id;
+                counter.count = theirs.count + ownMin;
+                counter.error = theirs.error + ownMin;
+                merged.add(counter);
+            }
+        }
+        merged.sort((a, b) -> Long.compare(b.count, a.count));
+
+        byId.clear();
+        size = Math.min(capacity, merged.size());
+        for (int i = 0; i < size; i++) {
+            Counter counter = merged.get(i);
+            heap[i] = counter;
+            counter.position = i;
+            byId.put(counter.id, counter);
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+        total += other.total;
+    }
+
+    // The k IDs with the highest counts, highest first
+    public List<Entry> top(int k) {
+        Counter[] sorted = Arrays.copyOf(heap, size);
+        Arrays.sort(sorted, (a, b) -> Long.compare(b.count, a.count));
+        List<Entry> result = new ArrayList<>(Math.min(k, size));
+        for (int i = 0; i < Math.min(k, size); i++) {
+            result.add(new Entry(sorted[i].id, sorted[i].count, sorted[i].error));
+        }
+        return result;
+    }
+
+    // Estimated count of one ID (an upper bound; 0 if it is not monitored)
+    public long estimate(int songId) {
+        Counter counter = byId.get(songId);
+        return counter == null ? 0 : counter.count;
+    }
+
+    // Total weight recorded, including merged summaries
+    public long getTotal() {
+        return total;
+    }
+
+    // Worst-case overestimate of any reported count
+    public long getMaxError() {
+        return total / capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void clear() {
+        byId.clear();
+        Arrays.fill(heap, 0, size, null);
+        size = 0;
+        total = 0;
+    }
+
+    // Smallest monitored count once every counter is in use (0 before that)
+    private long minCount() {
+        return size == capacity ? heap[0].count : 0;
+    }
+
+    // Restore the heap after a counter was appended at `i`
+    private void siftUp(int i) {
+        Counter counter = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (heap[parent].count <= counter.count) break;
+            heap[i] = heap[parent];
+            heap[i].position = i;
+            i = parent;
+        }
+        heap[i] = counter;
+        counter.position = i;
+    }
+
+    // Restore the heap after the counter at `i` grew
+    private void siftDown(int i) {
+        Counter counter = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) child++;
+            if (heap[child].count >= counter.count) break;
+            heap[i] = heap[child];
+            heap[i].position = i;
+            i = child;
+        }
+        heap[i] = counter;
+        counter.position = i;
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * HyperLogLog.java
+ *
+ * Fixed-size estimate of how many distinct values (e.g. usernames) have been added.
+ * Each value is hashed to 64 bits; the top `precision` bits pick a register, which keeps
+ * the longest run of leading zeros seen in the rest. With precision 10 a sketch is 1 KB
+ * and the typical error is about 1.04 / sqrt(1024) ≈ 3%. Sketches with the same precision
+ * merge by taking the register-wise maximum, so per-shard sketches can be combined.
+ * Not thread-safe.
+ *
+ * Author: Haobin Yan
+ */
+
+package model;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+public class HyperLogLog {
+    public static final int DEFAULT_PRECISION = 10;   // 2^10 registers = 1 KB
+
+    private final int precision;     // Bits of the hash that choose a register
+    private final byte[] registers;  // Longest zero run + 1 per register
+
+    // Constructor: a sketch with the default precision
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    // Constructor: a sketch with 2^precision registers (4 to 16)
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("precision must be between 4 and 16");
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    // Add a value; adding the same value again changes nothing
+    public void add(String value) {
+        addHash(hash(value));
+    }
+
+    // Add a value that has already been hashed to 64 well-mixed bits
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        long rest = hash << precision;
+        int rank = rest == 0 ? 64 - precision + 1 : Long.numberOfLeadingZeros(rest) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    // Estimated number of distinct values added
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) zeros++;
+        }
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros); // linear counting for small sets
+        }
+        return Math.round(estimate);
+    }
+
+    // Fold another sketch into this one; afterwards this estimates the union
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge sketches with different precision");
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    // An independent sketch with the same registers
+    public HyperLogLog copy() {
+        HyperLogLog copy = new HyperLogLog(precision);
+        System.arraycopy(registers, 0, copy.registers, 0, registers.length);
+        return copy;
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    // Write the precision and registers
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(precision);
+        out.write(registers);
+    }
+
+    // Read a sketch written by writeTo
+    public static HyperLogLog readFrom(DataInput in) throws IOException {
+        HyperLogLog sketch = new HyperLogLog(in.readUnsignedByte());
+        in.readFully(sketch.registers);
+        return sketch;
+    }
+
+    // 64-bit hash of a string: FNV-1a over the UTF-8 bytes, then a MurmurHash3 finalizer
+    static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
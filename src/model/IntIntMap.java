@@ -0,0 +1,201 @@
+/**
+ * IntIntMap.java
+ *
+ * Open-addressing hash map from primitive int keys to primitive int values, for counters
+ * and small codes such as play counts and ratings. Neither keys nor values are boxed:
+ * increment() updates a count in place, and iteration walks the table by slot index, so
+ * reading, bumping and listing counts never allocate once the table is big enough.
+ * Missing keys read as 0. Not thread-safe.
+ *
+ * Author: Haobin Yan
+ */
+
+package model;
+
+import java.util.Arrays;
+
+public class IntIntMap {
+    private static final int MIN_CAPACITY = 8;       // Smallest table size (a power of two)
+    private static final float LOAD_FACTOR = 0.6f;   // Grow when this full
+
+    private int[] keys;          // Key of each slot
+    private int[] values;        // Value of each slot
+    private boolean[] used;      // Whether each slot holds a key
+    private int size;            // Number of keys
+    private int mask;            // Table size - 1
+
+    // Receives every entry of forEach()
+    public interface EntryConsumer {
+        void accept(int key, int value);
+    }
+
+    // Constructor: an empty map
+    public IntIntMap() {
+        this(MIN_CAPACITY);
+    }
+
+    // Constructor: an empty map sized for the expected number of keys
+    public IntIntMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * LOAD_FACTOR < expectedSize) capacity <<= 1;
+        allocate(capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(int key) {
+        return used[slotOf(key)];
+    }
+
+    // Value of the key, or 0 if absent
+    public int get(int key) {
+        return getOrDefault(key, 0);
+    }
+
+    public int getOrDefault(int key, int defaultValue) {
+        int slot = slotOf(key);
+        return used[slot] ? values[slot] : defaultValue;
+    }
+
+    // Bind the key to a value; returns the previous value or 0
+    public int put(int key, int value) {
+        int slot = slotOf(key);
+        if (used[slot]) {
+            int previous = values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        insert(slot, key, value);
+        return 0;
+    }
+
+    // Add delta to the key's value (absent counts as 0); returns the new value
+    public int increment(int key, int delta) {
+        int slot = slotOf(key);
+        if (used[slot]) {
+            return values[slot] += delta;
+        }
+        insert(slot, key, delta);
+        return delta;
+    }
+
+    // Remove the key; returns whether it was present
+    public boolean remove(int key) {
+        int slot = slotOf(key);
+        if (!used[slot]) return false;
+        used[slot] = false;
+        size--;
+        // Shift later entries of the probe run back so lookups never stop early
+        int free = slot;
+        for (int i = (slot + 1) & mask; used[i]; i = (i + 1) & mask) {
+            int home = IntObjectMap.mix(keys[i]) & mask;
+            boolean movable = free <= i ? (home <= free || home > i) : (home <= free && home > i);
+            if (movable) {
+                keys[free] = keys[i];
+                values[free] = values[i];
+                used[free] = true;
+                used[i] = false;
+                free = i;
+            }
+        }
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    // ----- Allocation-free iteration -----
+    //
+    //     for (int slot = map.firstSlot(); slot >= 0; slot = map.nextSlot(slot)) {
+    //         map.keyAt(slot); map.valueAt(slot);
+    //     }
+    //
+    // Slots are only valid until the next put, increment or remove.
+
+    // First occupied slot, or -1 if the map is empty
+    public int firstSlot() {
+        return nextSlot(-1);
+    }
+
+    // Occupied slot after the given one, or -1 at the end
+    public int nextSlot(int slot) {
+        for (int i = slot + 1; i < used.length; i++) {
+            if (used[i]) return i;
+        }
+        return -1;
+    }
+
+    public int keyAt(int slot) {
+        return keys[slot];
+    }
+
+    public int valueAt(int slot) {
+        return values[slot];
+    }
+
+    // Call the consumer with every entry, in table order
+    public void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < used.length; i++) {
+            if (used[i]) consumer.accept(keys[i], values[i]);
+        }
+    }
+
+    // All keys, in table order
+    public int[] keys() {
+        int[] result = new int[size];
+        int n = 0;
+        for (int i = 0; i < used.length; i++) {
+            if (used[i]) result[n++] = keys[i];
+        }
+        return result;
+    }
+
+    // Store a new key in a free slot found by slotOf()
+    private void insert(int slot, int key, int value) {
+        keys[slot] = key;
+        values[slot] = value;
+        used[slot] = true;
+        if (++size > mask * LOAD_FACTOR) {
+            resize(keys.length << 1);
+        }
+    }
+
+    // Slot holding the key, or the free slot where it would go
+    private int slotOf(int key) {
+        int slot = IntObjectMap.mix(key) & mask;
+        while (used[slot] && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = slotOf(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                used[slot] = true;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+}
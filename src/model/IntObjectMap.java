@@ -0,0 +1,136 @@
+/**
+ * IntObjectMap.java
+ *
+ * Open-addressing hash map from primitive int keys to objects. Keys are stored in a
+ * plain int[] with linear probing, so lookups never box the key and the map costs two
+ * arrays instead of one entry object per key. Not thread-safe.
+ *
+ * Author: Haobin Yan
+ */
+
+package model;
+
+import java.util.Arrays;
+
+public class IntObjectMap<V> {
+    private static final int MIN_CAPACITY = 8;       // Smallest table size (a power of two)
+    private static final float LOAD_FACTOR = 0.6f;   // Grow when this full
+
+    private int[] keys;          // Key of each slot
+    private Object[] values;     // Value of each slot; null means the slot is free
+    private int size;            // Number of keys
+    private int mask;            // Table size - 1
+
+    // Constructor: an empty map
+    public IntObjectMap() {
+        this(MIN_CAPACITY);
+    }
+
+    // Constructor: an empty map sized for the expected number of keys
+    public IntObjectMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * LOAD_FACTOR < expectedSize) capacity <<= 1;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(int key) {
+        return values[slotOf(key)] != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        return (V) values[slotOf(key)];
+    }
+
+    // Bind the key to a non-null value; returns the previous value or null
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) throw new NullPointerException("IntObjectMap does not store null values");
+        int slot = slotOf(key);
+        Object previous = values[slot];
+        keys[slot] = key;
+        values[slot] = value;
+        if (previous == null && ++size > mask * LOAD_FACTOR) {
+            resize(keys.length << 1);
+        }
+        return (V) previous;
+    }
+
+    // Remove the key; returns its value or null
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int slot = slotOf(key);
+        Object previous = values[slot];
+        if (previous == null) return null;
+        values[slot] = null;
+        size--;
+        // Shift later entries of the probe run back so lookups never stop early
+        int free = slot;
+        for (int i = (slot + 1) & mask; values[i] != null; i = (i + 1) & mask) {
+            int home = mix(keys[i]) & mask;
+            boolean movable = free <= i ? (home <= free || home > i) : (home <= free && home > i);
+            if (movable) {
+                keys[free] = keys[i];
+                values[free] = values[i];
+                values[i] = null;
+                free = i;
+            }
+        }
+        return (V) previous;
+    }
+
+    // All keys, in table order
+    public int[] keys() {
+        int[] result = new int[size];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) result[n++] = keys[i];
+        }
+        return result;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    // Slot holding the key, or the free slot where it would go
+    private int slotOf(int key) {
+        int slot = mix(key) & mask;
+        while (values[slot] != null && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = slotOf(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // Spread sequential IDs across the table
+    static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,350 @@
+/**
+ * LibraryCheckpoint.java
+ *
+ * Snapshot of the complete LibraryModel state (songs, albums, ratings, favorites, play
+ * counts, recent/top played, trending scores and playlists) in a fixed-layout file that
+ * is restored by memory-mapping it. restore() only maps the file and checks its header,
+ * so it takes the same time for any library size. The restore is deferred, not partial:
+ * the first call of any LibraryModel method builds every song, album and playlist from
+ * the mapping, so that call costs as much as reading the whole library. The mapping is
+ * dropped as soon as it has been read.
+ *
+ * restore() checks that the sections fit the file; every string and song list offset is
+ * checked while reading. A checkpoint found to be corrupt then is replaced by the fallback
+ * given to restore() (such as the saved library file); without one, the library stays
+ * unloaded and every use throws, rather than showing a partly read library.
+ *
+ * Layout (big-endian, all offsets from the start of the file):
+ *
+ *   header    56 bytes: magic "MLCK", version, trending half-life, section counts and offsets
+ *   songs     40 bytes each: id, title/artist/album/genre string offsets, play count,
+ *             trending log score, rating (0 = none), flags (1 = favorite, 2 = has score)
+ *   albums    20 bytes each: title/artist/genre string offsets, year, song list offset
+ *   playlists  8 bytes each: name string offset, song list offset
+ *   recent    song numbers (int each)
+ *   data      strings (int byte length + UTF-8) and song lists (int count + song numbers)
+ *
+ * Songs are referred to by their number in the song section. A checkpoint is replaced
+ * atomically, so a library that has not been loaded yet keeps reading the old file.
+ *
+ * Author: Haobin Yan
+ */
+
+package model;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+public final class LibraryCheckpoint {
+    private static final int MAGIC = 0x4D4C434B; // "MLCK"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 56;
+    private static final int SONG_RECORD = 40;
+    private static final int ALBUM_RECORD = 20;
+    private static final int PLAYLIST_RECORD = 8;
+    private static final int FAVORITE = 1;
+    private static final int HAS_SCORE = 2;
+
+    private ByteBuffer buffer;                          // The mapped file (null once loaded)
+    private final Path path;                            // Where it was mapped from (for messages)
+    private final MusicStore store;                     // Resolves catalog songs (may be null)
+    private final Consumer<LibraryModel> fallback;      // Loads the library another way if corrupt (may be null)
+
+    private LibraryCheckpoint(ByteBuffer buffer, Path path, MusicStore store, Consumer<LibraryModel> fallback) {
+        this.buffer = buffer;
+        this.path = path;
+        this.store = store;
+        this.fallback = fallback;
+    }
+
+    // Write the library's complete state to the file, replacing it atomically
+    public static void save(LibraryModel library, Path path) throws IOException {
+        List<Song> songs = new ArrayList<>();
+        Map<Integer, Integer> numbers = new HashMap<>();  // Song ID → song number
+        for (Song song : library) {
+            numbers.put(song.getId(), songs.size());
+            songs.add(song);
+        }
+        Collection<Album> albums = library.getUserAlbums().values();
+        Collection<PlayList> playlists = library.getPlaylists().values();
+        List<Integer> recent = library.recentSongIds();
+
+        int songsOffset = HEADER_SIZE;
+        int albumsOffset = songsOffset + songs.size() * SONG_RECORD;
+        int playlistsOffset = albumsOffset + albums.size() * ALBUM_RECORD;
+        int recentOffset = playlistsOffset + playlists.size() * PLAYLIST_RECORD;
+        int dataOffset = recentOffset + recent.size() * 4;
+        DataSection data = new DataSection(dataOffset);
+
+        ByteArrayOutputStream tableBytes = new ByteArrayOutputStream(dataOffset);
+        DataOutputStream tables = new DataOutputStream(tableBytes);
+        TrendingScores trending = library.trendingScores();
+        for (Song song : songs) {
+            int id = song.getId();
+            Integer rating = library.getRating(id);
+            Double score = trending.getLogScore(id);
+            tables.writeInt(id);
+            tables.writeInt(data.string(song.getTitle()));
+            tables.writeInt(data.string(song.getArtist()));
+            tables.writeInt(data.string(song.getAlbum()));
+            tables.writeInt(data.string(song.getGenre()));
+            tables.writeInt(library.getPlayCount(id));
+            tables.writeDouble(score == null ? 0 : score);
+            tables.writeByte(rating == null ? 0 : rating);
+            tables.writeByte((library.getFavoriteSongIds().contains(id) ? FAVORITE : 0) | (score != null ? HAS_SCORE : 0));
+            tables.writeShort(0);
+            tables.writeInt(0);
+        }
+        for (Album album : albums) {
+            tables.writeInt(data.string(album.getTitle()));
+            tables.writeInt(data.string(album.getArtist()));
+            tables.writeInt(data.string(album.getGenre()));
+            tables.writeInt(album.getYear());
+            tables.writeInt(data.songList(album.getSongs(), numbers));
+        }
+        for (PlayList playlist : playlists) {
+            tables.writeInt(data.string(playlist.getName()));
+            tables.writeInt(data.songList(playlist.getSongs(), numbers));
+        }
+        for (int id : recent) {
+            tables.writeInt(numbers.get(id));
+        }
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(trending.getHalfLifeMillis());
+            out.writeInt(songs.size());
+            out.writeInt(albums.size());
+            out.writeInt(playlists.size());
+            out.writeInt(recent.size());
+            out.writeInt(songsOffset);
+            out.writeInt(albumsOffset);
+            out.writeInt(playlistsOffset);
+            out.writeInt(recentOffset);
+            out.writeInt(dataOffset);
+            out.writeInt(dataOffset + data.size());
+            tableBytes.writeTo(out);
+            data.writeTo(out);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Map a checkpoint; the returned library loads its contents on first use
+    public static LibraryModel restore(Path path, String owner, MusicStore store) throws IOException {
+        return restore(path, owner, store, null);
+    }
+
+    // Map a checkpoint; if it turns out to be corrupt when the library is first used, the
+    // fallback fills the library instead
+    public static LibraryModel restore(Path path, String owner, MusicStore store,
+                                       Consumer<LibraryModel> fallback) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a library checkpoint: " + path);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported checkpoint version " + buffer.getInt(4));
+        }
+        if (buffer.getInt(52) != buffer.capacity()) {
+            throw new IOException("Truncated checkpoint: " + path);
+        }
+        if (buffer.getInt(32) != HEADER_SIZE
+                || !sectionEndsAt(buffer.getInt(32), buffer.getInt(16), SONG_RECORD, buffer.getInt(36))
+                || !sectionEndsAt(buffer.getInt(36), buffer.getInt(20), ALBUM_RECORD, buffer.getInt(40))
+                || !sectionEndsAt(buffer.getInt(40), buffer.getInt(24), PLAYLIST_RECORD, buffer.getInt(44))
+                || !sectionEndsAt(buffer.getInt(44), buffer.getInt(28), 4, buffer.getInt(48))
+                || buffer.getInt(48) > buffer.capacity()) {
+            throw new IOException("Corrupt checkpoint header: " + path);
+        }
+        LibraryModel library = new LibraryModel(owner);
+        library.setPendingCheckpoint(new LibraryCheckpoint(buffer, path, store, fallback));
+        return library;
+    }
+
+    // Whether count records of the given size starting at offset end exactly at next
+    private static boolean sectionEndsAt(int offset, int count, int recordSize, int next) {
+        return count >= 0 && (long) offset + (long) count * recordSize == next;
+    }
+
+    // Build all of the library's objects from the mapping (called once, on first use) into
+    // a new library, or run the fallback if the mapping is corrupt; the mapping is let go
+    // of only once one of them has succeeded
+    LibraryModel load(String owner) {
+        LibraryModel library = new LibraryModel(owner);
+        try {
+            read(library);
+        } catch (IOException | RuntimeException e) {
+            if (fallback == null) {
+                throw new IllegalStateException("Corrupt checkpoint " + path + ": " + e.getMessage(), e);
+            }
+            System.err.println("Corrupt checkpoint " + path + ", loading the saved library instead: " + e.getMessage());
+            library = new LibraryModel(owner);
+            fallback.accept(library);
+        }
+        buffer = null;
+        return library;
+    }
+
+    private void read(LibraryModel library) throws IOException {
+        int songCount = buffer.getInt(16);
+        int albumCount = buffer.getInt(20);
+        int playlistCount = buffer.getInt(24);
+        int recentCount = buffer.getInt(28);
+        int songsOffset = buffer.getInt(32);
+        int albumsOffset = buffer.getInt(36);
+        int playlistsOffset = buffer.getInt(40);
+        int recentOffset = buffer.getInt(44);
+
+        library.setTrendingHalfLife(buffer.getLong(8));
+        TrendingScores trending = library.trendingScores();
+        Song[] songs = new Song[songCount];
+        for (int i = 0; i < songCount; i++) {
+            int at = songsOffset + i * SONG_RECORD;
+            int savedId = buffer.getInt(at);
+            String title = string(buffer.getInt(at + 4));
+            String album = string(buffer.getInt(at + 12));
+            Song song = resolve(savedId, title, album);
+            if (song == null) {
+                song = new Song(title, string(buffer.getInt(at + 8)), album, string(buffer.getInt(at + 16)));
+            }
+            songs[i] = song;
+            library.addSong(song);
+            int flags = buffer.get(at + 33);
+            library.restoreSongState(song.getId(), buffer.get(at + 32), buffer.getInt(at + 20), (flags & FAVORITE) != 0);
+            if ((flags & HAS_SCORE) != 0) {
+                trending.restoreLogScore(song.getId(), buffer.getDouble(at + 24));
+            }
+        }
+        for (int i = 0; i < albumCount; i++) {
+            int at = albumsOffset + i * ALBUM_RECORD;
+            String title = string(buffer.getInt(at));
+            String artist = string(buffer.getInt(at + 4));
+            Album catalogAlbum = store == null ? null : store.getAlbum(title);
+            if (catalogAlbum != null && catalogAlbum.getArtist().equals(artist)) {
+                library.restoreAlbum(catalogAlbum);
+            } else {
+                library.restoreAlbum(new Album(title, artist, string(buffer.getInt(at + 8)),
+                        buffer.getInt(at + 12), songList(buffer.getInt(at + 16), songs)));
+            }
+        }
+        for (int i = 0; i < playlistCount; i++) {
+            int at = playlistsOffset + i * PLAYLIST_RECORD;
+            String name = string(buffer.getInt(at));
+            library.createPlaylist(name);
+            for (Song song : songList(buffer.getInt(at + 4), songs)) {
+                library.addSongToPlaylist(name, song);
+            }
+        }
+        List<Integer> recent = library.recentSongIds();
+        recent.clear();
+        for (int i = 0; i < recentCount; i++) {
+            recent.add(song(songs, buffer.getInt(recentOffset + i * 4)).getId());
+        }
+    }
+
+    // The shared catalog song for a saved ID, if it is still the same song
+    private Song resolve(int id, String title, String album) {
+        if (id < 0 || store == null) return null;
+        Song song = store.getSong(id);
+        if (song != null && song.getTitle().equals(title) && song.getAlbum().equals(album)) {
+            return song;
+        }
+        return store.findSong(title, album);
+    }
+
+    private String string(int offset) throws IOException {
+        checkData(offset, 0);
+        int length = buffer.getInt(offset);
+        checkData(offset, length);
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset + 4);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private List<Song> songList(int offset, Song[] songs) throws IOException {
+        checkData(offset, 0);
+        int count = buffer.getInt(offset);
+        checkData(offset, 4L * count);
+        List<Song> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(song(songs, buffer.getInt(offset + 4 + i * 4)));
+        }
+        return list;
+    }
+
+    private Song song(Song[] songs, int number) throws IOException {
+        if (number < 0 || number >= songs.length) {
+            throw new IOException("song number " + number + " out of range");
+        }
+        return songs[number];
+    }
+
+    // Check that an int at offset, followed by the given number of bytes, lies in the data section
+    private void checkData(int offset, long bytes) throws IOException {
+        if (offset < buffer.getInt(48) || bytes < 0 || 4 + bytes > buffer.capacity() - (long) offset) {
+            throw new IOException("offset " + offset + " out of range");
+        }
+    }
+
+    // Strings (stored once each) and song lists, addressed by file offset
+    private static final class DataSection {
+        private final int base;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        DataSection(int base) {
+            this.base = base;
+        }
+
+        int string(String value) throws IOException {
+            String key = value == null ? "" : value;
+            Integer offset = strings.get(key);
+            if (offset == null) {
+                offset = base + out.size();
+                byte[] encoded = key.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(encoded.length);
+                out.write(encoded);
+                strings.put(key, offset);
+            }
+            return offset;
+        }
+
+        // Songs of the list that are in the library
+        int songList(List<Song> list, Map<Integer, Integer> numbers) throws IOException {
+            int offset = base + out.size();
+            int count = 0;
+            for (Song song : list) {
+                if (numbers.containsKey(song.getId())) count++;
+            }
+            out.writeInt(count);
+            for (Song song : list) {
+                Integer number = numbers.get(song.getId());
+                if (number != null) out.writeInt(number);
+            }
+            return offset;
+        }
+
+        int size() {
+            return out.size();
+        }
+
+        void writeTo(OutputStream target) throws IOException {
+            out.flush();
+            bytes.writeTo(target);
+        }
+    }
+}
@@ -0,0 +1,653 @@
+/**
+ * LibraryExport.java
+ *
+ * Streaming export and import of a library (LibraryModel or User) as CSV or JSON Lines,
+ * for backups and moving libraries between installations. Records are written straight
+ * to the Writer while walking the library, and read back one at a time into a bounded
+ * batch of reused records, so neither side ever holds the document in memory.
+ *
+ * A library that other threads keep changing can be exported with snapshot() under its
+ * lock and export(Snapshot, ...) after the lock is released. The snapshot copies only
+ * song references and numbers (no text), so the lock is held for a short walk and a slow
+ * reader of the output never holds up the library.
+ *
+ * Records, in this order:
+ *   song      id, title, artist, album, genre, rating (0 = none), plays, favorite
+ *   playlist  name (listed even when empty)
+ *   entry     playlist name and the id of one of its songs, in playlist order
+ *
+ * CSV has one header line and then one row per record with the columns
+ * record,id,title,artist,album,genre,rating,plays,favorite,playlist (RFC 4180 quoting).
+ * JSON Lines has one object per line with a "record" member and the record's fields.
+ * The ids are the exporting library's song IDs; on import, catalog songs resolve to the
+ * shared Song of the store (by ID, then title and album), everything else becomes a local
+ * song. A User has no ratings or named playlists, so those are not exported for it and
+ * are skipped when importing into it.
+ *
+ * Author: Haobin Yan
+ */
+
+package model;
+
+import java.io.*;
+import java.util.*;
+import view.JsonWriter;
+
+public final class LibraryExport {
+    public enum Format { CSV, JSONL }
+
+    static final int BATCH_SIZE = 1024;    // Records written between flushes / applied per batch
+    private static final String[] CSV_COLUMNS = {
+            "record", "id", "title", "artist", "album", "genre", "rating", "plays", "favorite", "playlist" };
+
+    private LibraryExport() {
+    }
+
+    // ----- Export -----
+
+    // Write every song with its rating, play count and favorite flag, then the playlists;
+    // returns the number of records written
+    public static long export(LibraryModel library, Writer out, Format format) throws IOException {
+        RecordSink records = writer(out, format);
+        Set<Integer> favorites = library.getFavoriteSongIds();
+        for (Song song : library) {
+            int id = song.getId();
+            Integer rating = library.getRating(id);
+            records.song(song, rating == null ? 0 : rating, library.getPlayCount(id), favorites.contains(id));
+        }
+        for (PlayList playlist : library.getPlaylists().values()) {
+            records.playlist(playlist.getName());
+            for (Song song : playlist) {
+                records.entry(playlist.getName(), song.getId());
+            }
+        }
+        return records.finish();
+    }
+
+    // The library's songs with their rating, play count and favorite flag, and its
+    // playlists, as references; call it while holding whatever guards the library
+    public static Snapshot snapshot(LibraryModel library) {
+        Set<Integer> favorites = library.getFavoriteSongIds();
+        List<Song> songs = new ArrayList<>();
+        for (Song song : library) {
+            songs.add(song);
+        }
+        Snapshot snapshot = new Snapshot(songs.toArray(new Song[0]));
+        for (int i = 0; i < snapshot.songs.length; i++) {
+            int id = snapshot.songs[i].getId();
+            Integer rating = library.getRating(id);
+            snapshot.ratings[i] = rating == null ? 0 : rating;
+            snapshot.plays[i] = library.getPlayCount(id);
+            if (favorites.contains(id)) snapshot.favorites.set(i);
+        }
+        for (PlayList playlist : library.getPlaylists().values()) {
+            snapshot.playlistNames.add(playlist.getName());
+            int[] ids = new int[playlist.size()];
+            int n = 0;
+            for (Song song : playlist) {
+                ids[n++] = song.getId();
+            }
+            snapshot.playlistSongs.add(ids);
+        }
+        return snapshot;
+    }
+
+    // Write a snapshot taken with snapshot(); returns the number of records written
+    public static long export(Snapshot snapshot, Writer out, Format format) throws IOException {
+        RecordSink records = writer(out, format);
+        for (int i = 0; i < snapshot.songs.length; i++) {
+            records.song(snapshot.songs[i], snapshot.ratings[i], snapshot.plays[i], snapshot.favorites.get(i));
+        }
+        for (int p = 0; p < snapshot.playlistNames.size(); p++) {
+            String name = snapshot.playlistNames.get(p);
+            records.playlist(name);
+            for (int id : snapshot.playlistSongs.get(p)) {
+                records.entry(name, id);
+            }
+        }
+        return records.finish();
+    }
+
+    // Exportable state of a LibraryModel at one moment (see snapshot())
+    public static final class Snapshot {
+        private final Song[] songs;
+        private final int[] ratings;          // Explicit rating of each song (0 = none)
+        private final int[] plays;            // Play count of each song
+        private final BitSet favorites;       // Which songs are favorites
+        private final List<String> playlistNames = new ArrayList<>();
+        private final List<int[]> playlistSongs = new ArrayList<>(); // Song IDs of each playlist, in order
+
+        private Snapshot(Song[] songs) {
+            this.songs = songs;
+            this.ratings = new int[songs.length];
+            this.plays = new int[songs.length];
+            this.favorites = new BitSet(songs.length);
+        }
+    }
+
+    // Write every song of a console user's library with its play count and favorite flag
+    public static long export(User user, Writer out, Format format) throws IOException {
+        RecordSink records = writer(out, format);
+        for (Song song : user.songs()) {
+            records.song(song, 0, user.playCount(song), user.isFavorite(song));
+        }
+        return records.finish();
+    }
+
+    // ----- Import -----
+
+    // Add the records to the library (store may be null); returns the number of records read
+    public static long importInto(Reader in, Format format, LibraryModel library, MusicStore store) throws IOException {
+        return importRecords(in, format, new Target(store) {
+            @Override
+            void addSong(Song song, Record record) {
+                library.addSong(song);
+                library.restoreSongState(song.getId(), record.rating, record.plays, record.favorite);
+            }
+
+            @Override
+            void addPlaylist(String name) {
+                library.createPlaylist(name);
+            }
+
+            @Override
+            void addEntry(String playlist, Song song) {
+                library.addSongToPlaylist(playlist, song);
+            }
+
+            @Override
+            void finish() {
+                library.refreshTopPlayed();
+            }
+        });
+    }
+
+    // Add the records to a console user's library (store may be null); returns the number read
+    public static long importInto(Reader in, Format format, User user, MusicStore store) throws IOException {
+        return importRecords(in, format, new Target(store) {
+            @Override
+            void addSong(Song song, Record record) {
+                user.addSongToLibrary(song);
+                user.restorePlayCount(song, record.plays);
+                if (record.favorite) {
+                    user.markSongAsFavorite(song);
+                }
+            }
+        });
+    }
+
+    // Read records in batches of BATCH_SIZE and hand each full batch to the target
+    private static long importRecords(Reader in, Format format, Target target) throws IOException {
+        RecordSource records = format == Format.CSV ? new CsvReader(in) : new JsonLinesReader(in);
+        Record[] batch = new Record[BATCH_SIZE];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = new Record();
+        }
+        long total = 0;
+        int filled;
+        do {
+            filled = 0;
+            while (filled < batch.length && records.next(batch[filled])) {
+                filled++;
+            }
+            for (int i = 0; i < filled; i++) {
+                target.apply(batch[i]);
+            }
+            total += filled;
+        } while (filled == batch.length);
+        target.finish();
+        return total;
+    }
+
+    // One record; reused for every record read
+    static final class Record {
+        String type;
+        int id;
+        String title;
+        String artist;
+        String album;
+        String genre;
+        int rating;
+        int plays;
+        boolean favorite;
+        String playlist;
+
+        void clear() {
+            type = title = artist = album = genre = playlist = null;
+            id = rating = plays = 0;
+            favorite = false;
+        }
+    }
+
+    // Where imported records go; keeps the exported ID → imported song mapping
+    private abstract static class Target {
+        private final MusicStore store;
+        private final IntObjectMap<Song> songs = new IntObjectMap<>();
+
+        Target(MusicStore store) {
+            this.store = store;
+        }
+
+        abstract void addSong(Song song, Record record);
+
+        void addPlaylist(String name) {
+        }
+
+        void addEntry(String playlist, Song song) {
+        }
+
+        void finish() {
+        }
+
+        void apply(Record record) throws IOException {
+            if ("song".equals(record.type)) {
+                Song song = resolve(record);
+                songs.put(record.id, song);
+                addSong(song, record);
+            } else if ("playlist".equals(record.type)) {
+                addPlaylist(record.playlist);
+            } else if ("entry".equals(record.type)) {
+                Song song = songs.get(record.id);
+                if (song == null) {
+                    throw new IOException("Playlist entry for unknown song " + record.id);
+                }
+                addEntry(record.playlist, song);
+            } else {
+                throw new IOException("Unknown record type " + record.type);
+            }
+        }
+
+        // The shared catalog song for an exported catalog song, or a new local song
+        private Song resolve(Record record) {
+            if (record.id >= 0 && store != null) {
+                Song song = store.getSong(record.id);
+                if (song == null || !song.getTitle().equals(record.title) || !song.getAlbum().equals(record.album)) {
+                    song = store.findSong(record.title, record.album);
+                }
+                if (song != null) return song;
+            }
+            return new Song(record.title, record.artist, record.album, record.genre);
+        }
+    }
+
+    // ----- Writers -----
+
+    private static RecordSink writer(Writer out, Format format) throws IOException {
+        return format == Format.CSV ? new CsvWriter(out) : new JsonLinesWriter(out);
+    }
+
+    private abstract static class RecordSink {
+        final Writer out;
+        long count;
+
+        RecordSink(Writer out) {
+            this.out = out;
+        }
+
+        abstract void song(Song song, int rating, int plays, boolean favorite) throws IOException;
+
+        abstract void playlist(String name) throws IOException;
+
+        abstract void entry(String playlist, int songId) throws IOException;
+
+        // Count a finished record, flushing after every batch
+        void written() throws IOException {
+            if (++count % BATCH_SIZE == 0) {
+                out.flush();
+            }
+        }
+
+        long finish() throws IOException {
+            out.flush();
+            return count;
+        }
+    }
+
+    private static final class CsvWriter extends RecordSink {
+        CsvWriter(Writer out) throws IOException {
+            super(out);
+            row(CSV_COLUMNS);
+        }
+
+        @Override
+        void song(Song song, int rating, int plays, boolean favorite) throws IOException {
+            row("song", Integer.toString(song.getId()), song.getTitle(), song.getArtist(), song.getAlbum(),
+                    song.getGenre(), Integer.toString(rating), Integer.toString(plays), Boolean.toString(favorite), "");
+            written();
+        }
+
+        @Override
+        void playlist(String name) throws IOException {
+            row("playlist", "", "", "", "", "", "", "", "", name);
+            written();
+        }
+
+        @Override
+        void entry(String playlist, int songId) throws IOException {
+            row("entry", Integer.toString(songId), "", "", "", "", "", "", "", playlist);
+            written();
+        }
+
+        private void row(String... fields) throws IOException {
+            for (int i = 0; i < fields.length; i++) {
+                if (i > 0) out.write(',');
+                writeField(fields[i] == null ? "" : fields[i]);
+            }
+            out.write("\r\n");
+        }
+
+        // Quote the field if it holds a comma, quote or line break (doubling inner quotes)
+        private void writeField(String field) throws IOException {
+            boolean quote = false;
+            for (int i = 0; i < field.length() && !quote; i++) {
+                char c = field.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                out.write(field);
+                return;
+            }
+            out.write('"');
+            int start = 0;
+            for (int i = 0; i < field.length(); i++) {
+                if (field.charAt(i) == '"') {
+                    out.write(field, start, i + 1 - start);
+                    out.write('"');
+                    start = i + 1;
+                }
+            }
+            out.write(field, start, field.length() - start);
+            out.write('"');
+        }
+    }
+
+    private static final class JsonLinesWriter extends RecordSink {
+        private final JsonWriter json;
+
+        JsonLinesWriter(Writer out) {
+            super(out);
+            this.json = new JsonWriter(out);
+        }
+
+        @Override
+        void song(Song song, int rating, int plays, boolean favorite) throws IOException {
+            json.beginObject().field("record", "song").field("id", song.getId())
+                    .field("title", song.getTitle()).field("artist", song.getArtist())
+                    .field("album", song.getAlbum()).field("genre", song.getGenre())
+                    .field("rating", rating).field("plays", plays)
+                    .name("favorite").value(favorite).endObject().lineBreak();
+            written();
+        }
+
+        @Override
+        void playlist(String name) throws IOException {
+            json.beginObject().field("record", "playlist").field("name", name).endObject().lineBreak();
+            written();
+        }
+
+        @Override
+        void entry(String playlist, int songId) throws IOException {
+            json.beginObject().field("record", "entry").field("playlist", playlist).field("song", songId)
+                    .endObject().lineBreak();
+            written();
+        }
+    }
+
+    // ----- Readers -----
+
+    private interface RecordSource {
+        // Read the next record into the given one; false at the end of the input
+        boolean next(Record record) throws IOException;
+    }
+
+    // RFC 4180 CSV, read a character at a time (quoted fields may span lines)
+    private static final class CsvReader implements RecordSource {
+        private final Reader in;
+        private final String[] fields = new String[CSV_COLUMNS.length];
+        private final StringBuilder field = new StringBuilder();
+        private boolean headerSkipped;
+        private long line = 1;
+
+        CsvReader(Reader in) {
+            this.in = in instanceof BufferedReader ? in : new BufferedReader(in);
+        }
+
+        @Override
+        public boolean next(Record record) throws IOException {
+            if (!headerSkipped) {
+                headerSkipped = true;
+                if (readRow() < 0) return false;
+            }
+            int count;
+            do {
+                count = readRow();
+                if (count < 0) return false;
+            } while (count == 1 && fields[0].isEmpty()); // blank line
+            if (count != CSV_COLUMNS.length) {
+                throw new IOException("Line " + line + ": expected " + CSV_COLUMNS.length + " columns, found " + count);
+            }
+            record.clear();
+            record.type = fields[0];
+            try {
+                record.id = fields[1].isEmpty() ? 0 : Integer.parseInt(fields[1]);
+                record.rating = fields[6].isEmpty() ? 0 : Integer.parseInt(fields[6]);
+                record.plays = fields[7].isEmpty() ? 0 : Integer.parseInt(fields[7]);
+            } catch (NumberFormatException e) {
+                throw new IOException("Line " + line + ": " + e.getMessage());
+            }
+            record.title = fields[2];
+            record.artist = fields[3];
+            record.album = fields[4];
+            record.genre = fields[5];
+            record.favorite = Boolean.parseBoolean(fields[8]);
+            record.playlist = fields[9];
+            return true;
+        }
+
+        // Read one row into fields; returns its number of fields, or -1 at the end of input
+        private int readRow() throws IOException {
+            int count = 0;
+            field.setLength(0);
+            boolean quoted = false;
+            boolean any = false;
+            while (true) {
+                int c = in.read();
+                if (c < 0) {
+                    if (!any) return -1;
+                    if (quoted) throw new IOException("Line " + line + ": unterminated quoted field");
+                    return store(count);
+                }
+                any = true;
+                if (quoted) {
+                    if (c == '"') {
+                        in.mark(1);
+                        if (in.read() == '"') {
+                            field.append('"');
+                        } else {
+                            in.reset();
+                            quoted = false;
+                        }
+                    } else {
+                        if (c == '\n') line++;
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    count = store(count);
+                    field.setLength(0);
+                } else if (c == '\n') {
+                    line++;
+                    return store(count);
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+            }
+        }
+
+        private int store(int count) {
+            if (count < fields.length) {
+                fields[count] = field.toString();
+            }
+            return count + 1;
+        }
+    }
+
+    // One flat JSON object per line
+    private static final class JsonLinesReader implements RecordSource {
+        private final BufferedReader in;
+        private long lineNumber;
+        private String line;
+        private int pos;
+
+        JsonLinesReader(Reader in) {
+            this.in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        }
+
+        @Override
+        public boolean next(Record record) throws IOException {
+            do {
+                line = in.readLine();
+                lineNumber++;
+                if (line == null) return false;
+            } while (line.trim().isEmpty());
+            record.clear();
+            pos = 0;
+            expect('{');
+            if (peek() != '}') {
+                do {
+                    String name = readString();
+                    expect(':');
+                    member(record, name);
+                } while (skip(','));
+            }
+            expect('}');
+            return true;
+        }
+
+        private void member(Record record, String name) throws IOException {
+            switch (name) {
+                case "record": record.type = readString(); break;
+                case "id": case "song": record.id = (int) readNumber(); break;
+                case "title": record.title = readString(); break;
+                case "artist": record.artist = readString(); break;
+                case "album": record.album = readString(); break;
+                case "genre": record.genre = readString(); break;
+                case "rating": record.rating = (int) readNumber(); break;
+                case "plays": record.plays = (int) readNumber(); break;
+                case "favorite": record.favorite = readBoolean(); break;
+                case "name": case "playlist": record.playlist = readString(); break;
+                default: skipValue();
+            }
+        }
+
+        private char peek() throws IOException {
+            while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) pos++;
+            if (pos >= line.length()) throw error("unexpected end of line");
+            return line.charAt(pos);
+        }
+
+        private boolean skip(char c) throws IOException {
+            if (peek() != c) return false;
+            pos++;
+            return true;
+        }
+
+        private void expect(char c) throws IOException {
+            if (!skip(c)) throw error("expected '" + c + "'");
+        }
+
+        private String readString() throws IOException {
+            if (peek() == 'n' && line.startsWith("null", pos)) {
+                pos += 4;
+                return null;
+            }
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (pos < line.length()) {
+                char c = line.charAt(pos++);
+                if (c == '"') return value.toString();
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (pos >= line.length()) break;
+                char e = line.charAt(pos++);
+                switch (e) {
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 't': value.append('\t'); break;
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'u':
+                        if (pos + 4 > line.length()) throw error("bad escape");
+                        try {
+                            value.append((char) Integer.parseInt(line.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException ex) {
+                            throw error("bad escape");
+                        }
+                        pos += 4;
+                        break;
+                    default: value.append(e); // \" \\ \/
+                }
+            }
+            throw error("unterminated string");
+        }
+
+        private long readNumber() throws IOException {
+            peek();
+            int start = pos;
+            while (pos < line.length() && "+-0123456789.eE".indexOf(line.charAt(pos)) >= 0) pos++;
+            try {
+                return (long) Double.parseDouble(line.substring(start, pos));
+            } catch (NumberFormatException e) {
+                throw error("expected a number");
+            }
+        }
+
+        private boolean readBoolean() throws IOException {
+            peek();
+            if (line.startsWith("true", pos)) {
+                pos += 4;
+                return true;
+            }
+            if (line.startsWith("false", pos)) {
+                pos += 5;
+                return false;
+            }
+            throw error("expected true or false");
+        }
+
+        // Skip a string, number, literal, or nested object/array of an unknown member
+        private void skipValue() throws IOException {
+            char c = peek();
+            if (c == '"') {
+                readString();
+            } else if (c == '{' || c == '[') {
+                int depth = 0;
+                boolean inString = false;
+                for (; pos < line.length(); pos++) {
+                    char d = line.charAt(pos);
+                    if (inString) {
+                        if (d == '\\') pos++;
+                        else if (d == '"') inString = false;
+                    } else if (d == '"') {
+                        inString = true;
+                    } else if (d == '{' || d == '[') {
+                        depth++;
+                    } else if ((d == '}' || d == ']') && --depth == 0) {
+                        pos++;
+                        return;
+                    }
+                }
+                throw error("unterminated value");
+            } else {
+                while (pos < line.length() && ",}] \t".indexOf(line.charAt(pos)) < 0) pos++;
+            }
+        }
+
+        private IOException error(String message) {
+            return new IOException("Line " + lineNumber + ": " + message);
+        }
+    }
+}
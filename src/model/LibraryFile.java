@@ -0,0 +1,268 @@
+/**
+ * LibraryFile.java
+ *
+ * Versioned binary format for a saved user library (resources/users/<name>_library.bin).
+ *
+ *   header:  "MLIB", format version (1 byte), flags (1 byte; bit 0 = body is deflated)
+ *   body:    string table  - every distinct artist, album and genre name, once
+ *            songs         - title plus artist, album and genre references; catalog
+ *                            songs also carry their ID and resolve to the shared Song
+ *            albums        - title, artist, genre, year and the songs they hold
+ *            song state    - rating, play count and favorite flag of each song
+ *            playlists     - name and songs, in order
+ *
+ * All counts, IDs and string references are unsigned varints, strings are length-prefixed
+ * UTF-8, and songs are referred to by their position in the song section (local song IDs
+ * are not stable between runs). Titles and names may contain any character.
+ *
+ * Author: Haobin Yan
+ */
+
+package model;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.*;
+
+public final class LibraryFile {
+    private static final byte[] MAGIC = { 'M', 'L', 'I', 'B' };
+    private static final int VERSION = 1;                // Current format version
+    private static final int FLAG_DEFLATE = 1;           // Body is compressed
+    private static final int CATALOG_SONG = 0;           // Song tags
+    private static final int LOCAL_SONG = 1;
+
+    private LibraryFile() {
+    }
+
+    // Write the whole library, optionally compressing the body
+    public static void write(LibraryModel library, OutputStream out, boolean compress) throws IOException {
+        List<Song> songs = new ArrayList<>();
+        Map<Integer, Integer> positions = new HashMap<>();  // Song ID → position in the song section
+        for (Song song : library) {
+            positions.put(song.getId(), songs.size());
+            songs.add(song);
+        }
+
+        // Body first, so the string table only holds names that are really used
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+        Map<String, Integer> strings = new LinkedHashMap<>();
+
+        writeVarint(body, songs.size());
+        for (Song song : songs) {
+            if (song.isCatalogSong()) {
+                body.writeByte(CATALOG_SONG);
+                writeVarint(body, song.getId());
+            } else {
+                body.writeByte(LOCAL_SONG);
+            }
+            writeString(body, song.getTitle());
+            writeVarint(body, ref(strings, song.getArtist()));
+            writeVarint(body, ref(strings, song.getAlbum()));
+            writeVarint(body, ref(strings, song.getGenre()));
+        }
+
+        Collection<Album> albums = library.getUserAlbums().values();
+        writeVarint(body, albums.size());
+        for (Album album : albums) {
+            writeVarint(body, ref(strings, album.getTitle()));
+            writeVarint(body, ref(strings, album.getArtist()));
+            writeVarint(body, ref(strings, album.getGenre()));
+            writeVarint(body, Math.max(0, album.getYear()));
+            writeSongRefs(body, album.getSongs(), positions);
+        }
+
+        // Only songs with some state are listed
+        int withState = 0;
+        for (Song song : songs) {
+            if (hasState(library, song.getId())) withState++;
+        }
+        writeVarint(body, withState);
+        for (int i = 0; i < songs.size(); i++) {
+            int id = songs.get(i).getId();
+            if (!hasState(library, id)) continue;
+            Integer rating = library.getRating(id);
+            writeVarint(body, i);
+            body.writeByte((rating == null ? 0 : rating) | (library.getFavoriteSongIds().contains(id) ? 0x80 : 0));
+            writeVarint(body, library.getPlayCount(id));
+        }
+
+        Collection<PlayList> playlists = library.getPlaylists().values();
+        writeVarint(body, playlists.size());
+        for (PlayList playlist : playlists) {
+            writeString(body, playlist.getName());
+            writeSongRefs(body, playlist.getSongs(), positions);
+        }
+        body.flush();
+
+        DataOutputStream header = new DataOutputStream(out);
+        header.write(MAGIC);
+        header.writeByte(VERSION);
+        header.writeByte(compress ? FLAG_DEFLATE : 0);
+        header.flush();
+        DeflaterOutputStream deflater = compress ? new DeflaterOutputStream(out, new Deflater(Deflater.BEST_SPEED)) : null;
+        DataOutputStream data = new DataOutputStream(compress ? deflater : out);
+        writeVarint(data, strings.size());
+        for (String string : strings.keySet()) {
+            writeString(data, string);
+        }
+        bodyBytes.writeTo(data);
+        data.flush();
+        if (deflater != null) {
+            deflater.finish();
+        }
+    }
+
+    // Read a library written by write() into the given (empty) library. Catalog songs are
+    // resolved against the store by ID, falling back to title and album if the catalog
+    // changed; songs that can no longer be found are kept as local songs.
+    public static void read(InputStream in, LibraryModel library, MusicStore store) throws IOException {
+        DataInputStream header = new DataInputStream(in);
+        byte[] magic = new byte[MAGIC.length];
+        header.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a library file");
+        }
+        int version = header.readUnsignedByte();
+        if (version > VERSION) {
+            throw new IOException("Library file version " + version + " is newer than this program");
+        }
+        int flags = header.readUnsignedByte();
+        DataInputStream data = new DataInputStream((flags & FLAG_DEFLATE) != 0
+                ? new InflaterInputStream(in) : in);
+
+        String[] strings = new String[readVarint(data)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(data);
+        }
+
+        Song[] songs = new Song[readVarint(data)];
+        for (int i = 0; i < songs.length; i++) {
+            int tag = data.readUnsignedByte();
+            if (tag != CATALOG_SONG && tag != LOCAL_SONG) {
+                throw new IOException("Unknown song tag " + tag);
+            }
+            int id = tag == CATALOG_SONG ? readVarint(data) : -1;
+            String title = readString(data);
+            String artist = strings[readVarint(data)];
+            String album = strings[readVarint(data)];
+            String genre = strings[readVarint(data)];
+            Song song = tag == CATALOG_SONG ? resolve(store, id, title, album) : null;
+            songs[i] = song != null ? song : new Song(title, artist, album, genre);
+            library.addSong(songs[i]);
+        }
+
+        for (int n = readVarint(data); n > 0; n--) {
+            String title = strings[readVarint(data)];
+            String artist = strings[readVarint(data)];
+            String genre = strings[readVarint(data)];
+            int year = readVarint(data);
+            List<Song> albumSongs = readSongRefs(data, songs);
+            Album catalogAlbum = store == null ? null : store.getAlbum(title);
+            if (catalogAlbum != null && catalogAlbum.getArtist().equals(artist)) {
+                library.restoreAlbum(catalogAlbum);
+            } else {
+                library.restoreAlbum(new Album(title, artist, genre, year, albumSongs));
+            }
+        }
+
+        for (int n = readVarint(data); n > 0; n--) {
+            Song song = songs[readVarint(data)];
+            int packed = data.readUnsignedByte();
+            library.restoreSongState(song.getId(), packed & 0x7F, readVarint(data), (packed & 0x80) != 0);
+        }
+        library.refreshTopPlayed();
+
+        for (int n = readVarint(data); n > 0; n--) {
+            String name = readString(data);
+            library.createPlaylist(name);
+            for (Song song : readSongRefs(data, songs)) {
+                library.addSongToPlaylist(name, song);
+            }
+        }
+    }
+
+    // ----- Helpers -----
+
+    private static boolean hasState(LibraryModel library, int songId) {
+        return library.getRating(songId) != null || library.getPlayCount(songId) > 0
+                || library.getFavoriteSongIds().contains(songId);
+    }
+
+    // The shared catalog song for a saved ID, if it is still the same song (else null)
+    private static Song resolve(MusicStore store, int id, String title, String album) {
+        if (store != null) {
+            Song song = store.getSong(id);
+            if (song != null && song.getTitle().equals(title) && song.getAlbum().equals(album)) {
+                return song;
+            }
+            return store.findSong(title, album);
+        }
+        return null;
+    }
+
+    private static int ref(Map<String, Integer> strings, String value) {
+        String key = value == null ? "" : value;
+        Integer index = strings.get(key);
+        if (index == null) {
+            index = strings.size();
+            strings.put(key, index);
+        }
+        return index;
+    }
+
+    // Positions of the songs that are in the library (others are skipped)
+    private static void writeSongRefs(DataOutputStream out, List<Song> list, Map<Integer, Integer> positions)
+            throws IOException {
+        int count = 0;
+        for (Song song : list) {
+            if (positions.containsKey(song.getId())) count++;
+        }
+        writeVarint(out, count);
+        for (Song song : list) {
+            Integer position = positions.get(song.getId());
+            if (position != null) writeVarint(out, position);
+        }
+    }
+
+    private static List<Song> readSongRefs(DataInputStream in, Song[] songs) throws IOException {
+        int count = readVarint(in);
+        List<Song> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(songs[readVarint(in)]);
+        }
+        return list;
+    }
+
+    // Unsigned LEB128: 7 bits per byte, high bit set on all but the last byte
+    static void writeVarint(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarint(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[readVarint(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
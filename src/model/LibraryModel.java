@@ -4,6 +4,10 @@
  * Manages the user's personal music library, including songs, albums,
  * playlists, ratings, play counts, and recent activity.
  *
+ * Songs are keyed internally by their numeric ID (see Song.getId()), so songs that
+ * share a title on different albums no longer overwrite each other. The title-based
+ * methods remain as a convenience and act on the first song added under that title.
+ *
  * Author: Haobin Yan
  */
 
@@ -11,33 +15,60 @@ package model;
 
 import java.util.*;
 import java.util.stream.Collectors;
+import view.ConsoleRenderer;
 
 public class LibraryModel implements Iterable<Song> {
-    private Map<String, Song> userSongs;               // User's songs (title → song)
+    private Map<Integer, Song> userSongs;              // User's songs (song ID → song), in order added
+    private IntObjectMap<Song> songsById;              // Same songs, for lookups that must not box the ID
+    private Map<String, List<Song>> songsByTitle;      // Title index (title → songs with that title)
     private Map<String, Album> userAlbums;             // User's albums (title → album)
     private Map<String, PlayList> playlists;           // Named playlists
-    private Set<String> favoriteSongs;                 // Songs marked as favorites
-    private Map<String, Integer> songRatings;          // Song ratings (title → rating)
-    private Map<String, Integer> songPlayCounts;       // Song play counts
-    private List<String> recentSongs;                  // Recently played or top played
+    private Set<Integer> favoriteSongs;                // IDs of songs marked as favorites
+    private RatingIndex songRatings;                   // Ratings, bucketed by effective rating
+    private IntIntMap songPlayCounts;                  // Song play counts (song ID → count)
+    private List<Integer> recentSongs;                 // IDs of recently played or top played songs
+    private TrendingScores trending;                   // Time-decayed play scores
+    private Map<Integer, Set<PlayList>> songPlaylists; // Reverse index (song ID → playlists containing it)
+    private final String owner;                        // Username of the owner (null if anonymous)
+    private FuzzyIndex<Song> fuzzyTitles;              // Typo-tolerant title index (null when stale)
+    private LibraryCheckpoint pending;                 // Mapped checkpoint not loaded yet (null once loaded)
+    private final List<PlayListener> playListeners;    // Notified after every play
 
     public LibraryModel() {
-        userSongs = new HashMap<>();
+        this(null);
+    }
+
+    // Constructor: a library owned by the given user, so play events can be attributed
+    public LibraryModel(String owner) {
+        this.owner = owner;
+        playListeners = new ArrayList<>();
+        userSongs = new LinkedHashMap<>();
+        songsById = new IntObjectMap<>();
+        songsByTitle = new HashMap<>();
         userAlbums = new HashMap<>();
         playlists = new HashMap<>();
         favoriteSongs = new HashSet<>();
-        songRatings = new HashMap<>();
-        songPlayCounts = new HashMap<>();
+        songRatings = new RatingIndex();
+        songPlayCounts = new IntIntMap();
         recentSongs = new ArrayList<>();
+        trending = new TrendingScores();
+        songPlaylists = new HashMap<>();
     }
 
     // Add a song to the user's library
     public void addSong(Song song) {
-        userSongs.put(song.getTitle(), song);
+        ensureLoaded();
+        if (userSongs.putIfAbsent(song.getId(), song) == null) {
+            songsById.put(song.getId(), song);
+            fuzzyTitles = null;
+            songsByTitle.computeIfAbsent(song.getTitle(), k -> new ArrayList<>(1)).add(song);
+            songRatings.add(song);
+        }
     }
 
     // Add an album and include all its songs in the library
     public void addAlbum(Album album) {
+        ensureLoaded();
         userAlbums.put(album.getTitle(), album);
         for (Song song : album.getSongs()) {
             addSong(song);
@@ -46,6 +77,7 @@ public class LibraryModel implements Iterable<Song> {
 
     // Create a new empty playlist if it doesn't already exist
     public void createPlaylist(String name) {
+        ensureLoaded();
         if (!playlists.containsKey(name)) {
             playlists.put(name, new PlayList(name));
         }
@@ -53,70 +85,288 @@ public class LibraryModel implements Iterable<Song> {
 
     // Add a song to an existing playlist
     public void addSongToPlaylist(String playlistName, Song song) {
-        if (playlists.containsKey(playlistName)) {
-            playlists.get(playlistName).addSong(song);
+        ensureLoaded();
+        PlayList playlist = playlists.get(playlistName);
+        if (playlist != null) {
+            playlist.addSong(song);
+            songPlaylists.computeIfAbsent(song.getId(), k -> new HashSet<>()).add(playlist);
         }
     }
 
-    // Rate a song (only 1–5); mark as favorite if rating is 5
+    // Insert a song into an existing playlist at a position (0 to its size)
+    public void insertSongIntoPlaylist(String playlistName, int index, Song song) {
+        ensureLoaded();
+        PlayList playlist = playlists.get(playlistName);
+        if (playlist != null && playlist.insertSong(index, song)) {
+            songPlaylists.computeIfAbsent(song.getId(), k -> new HashSet<>()).add(playlist);
+        }
+    }
+
+    // Remove the song at a position of a playlist; returns it, or null if there is no such playlist
+    public Song removeSongFromPlaylist(String playlistName, int index) {
+        ensureLoaded();
+        PlayList playlist = playlists.get(playlistName);
+        if (playlist == null) return null;
+        Song song = playlist.removeSongAt(index);
+        Set<PlayList> containing = songPlaylists.get(song.getId());
+        if (containing != null) {
+            containing.remove(playlist);
+            if (containing.isEmpty()) {
+                songPlaylists.remove(song.getId());
+            }
+        }
+        return song;
+    }
+
+    // Move `count` songs of a playlist starting at `from` so the first ends up at `to`
+    public boolean moveSongsInPlaylist(String playlistName, int from, int count, int to) {
+        ensureLoaded();
+        PlayList playlist = playlists.get(playlistName);
+        if (playlist == null) return false;
+        playlist.moveSongs(from, count, to);
+        return true;
+    }
+
+    // Store a generated playlist, replacing (and unindexing) any playlist with the same name
+    private void putPlaylist(PlayList playlist) {
+        PlayList previous = playlists.put(playlist.getName(), playlist);
+        if (previous != null) {
+            for (Song song : previous) {
+                Set<PlayList> containing = songPlaylists.get(song.getId());
+                if (containing != null) {
+                    containing.remove(previous);
+                    if (containing.isEmpty()) {
+                        songPlaylists.remove(song.getId());
+                    }
+                }
+            }
+        }
+        for (Song song : playlist) {
+            songPlaylists.computeIfAbsent(song.getId(), k -> new HashSet<>()).add(playlist);
+        }
+    }
+
+    // Rate a song by title (only 1–5); mark as favorite if rating is 5
     public void rateSong(String songTitle, int rating) {
-        if (userSongs.containsKey(songTitle) && rating >= 1 && rating <= 5) {
-            songRatings.put(songTitle, rating);
+        ensureLoaded();
+        Song song = searchSongByTitle(songTitle);
+        if (song != null) {
+            rateSong(song.getId(), rating);
+        }
+    }
+
+    // Rate a song by ID (only 1–5); mark as favorite if rating is 5
+    public void rateSong(int songId, int rating) {
+        ensureLoaded();
+        Song song = songsById.get(songId);
+        if (song != null && rating >= 1 && rating <= 5) {
+            songRatings.rate(song, rating);
             if (rating == 5) {
-                favoriteSongs.add(songTitle);
+                favoriteSongs.add(songId);
             }
         }
     }
 
-    // Simulate playing a song; update play count and recent songs
+    // Simulate playing a song by title; update play count and recent songs
     public void playSong(String songTitle) {
-        if (userSongs.containsKey(songTitle)) {
-            songPlayCounts.put(songTitle, songPlayCounts.getOrDefault(songTitle, 0) + 1);
-            recentSongs.add(0, songTitle); // add to front
-            if (recentSongs.size() > 10) {
-                recentSongs.remove(10); // keep only 10
+        ensureLoaded();
+        Song song = searchSongByTitle(songTitle);
+        if (song != null) {
+            playSong(song.getId());
+        }
+    }
+
+    // Simulate playing a song by ID; update play count and recent songs
+    public void playSong(int songId) {
+        ensureLoaded();
+        playSong(songId, System.currentTimeMillis());
+    }
+
+    // Record a play that happened at the given time (e.g. when importing listening history)
+    public void playSong(int songId, long timeMillis) {
+        ensureLoaded();
+        if (songsById.containsKey(songId)) {
+            trending.recordPlay(songId, timeMillis);
+            int count = songPlayCounts.increment(songId, 1);
+            updateMostFrequentlyPlayedSongs(songId, count);
+            if (!playListeners.isEmpty()) {
+                Song song = songsById.get(songId);
+                for (int i = 0; i < playListeners.size(); i++) {
+                    playListeners.get(i).songPlayed(owner, song, timeMillis);
+                }
             }
-            updateMostFrequentlyPlayedSongs();
         }
     }
 
-    // Recalculate the 10 most frequently played songs
+    // Register a listener for this library's plays
+    public void addPlayListener(PlayListener listener) {
+        playListeners.add(listener);
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    // Attach a mapped checkpoint to be loaded on first access (used by LibraryCheckpoint)
+    void setPendingCheckpoint(LibraryCheckpoint checkpoint) {
+        pending = checkpoint;
+    }
+
+    // Build the whole library from a pending checkpoint, once, before it is first used;
+    // if loading throws, the checkpoint stays pending and the library stays empty
+    private void ensureLoaded() {
+        if (pending != null) {
+            takeStateOf(pending.load(owner));
+            pending = null;
+        }
+    }
+
+    // Use another library's contents as this one's (keeps the owner and play listeners)
+    private void takeStateOf(LibraryModel loaded) {
+        userSongs = loaded.userSongs;
+        songsById = loaded.songsById;
+        songsByTitle = loaded.songsByTitle;
+        userAlbums = loaded.userAlbums;
+        playlists = loaded.playlists;
+        favoriteSongs = loaded.favoriteSongs;
+        songRatings = loaded.songRatings;
+        songPlayCounts = loaded.songPlayCounts;
+        recentSongs = loaded.recentSongs;
+        trending = loaded.trending;
+        songPlaylists = loaded.songPlaylists;
+        fuzzyTitles = loaded.fuzzyTitles;
+    }
+
+    // IDs of the recent / top played songs, in order (used by LibraryCheckpoint)
+    List<Integer> recentSongIds() {
+        return recentSongs;
+    }
+
+    // Time-decayed play scores (used by LibraryCheckpoint)
+    TrendingScores trendingScores() {
+        return trending;
+    }
+
+    // Restore a saved album without adding its songs (used by LibraryFile)
+    void restoreAlbum(Album album) {
+        userAlbums.put(album.getTitle(), album);
+    }
+
+    // Restore a song's saved rating (0 = none), play count and favorite flag (used by LibraryFile)
+    void restoreSongState(int songId, int rating, int playCount, boolean favorite) {
+        Song song = songsById.get(songId);
+        if (song == null) return;
+        if (rating >= 1 && rating <= 5) {
+            songRatings.rate(song, rating);
+        }
+        if (playCount > 0) {
+            songPlayCounts.put(songId, playCount);
+        }
+        if (favorite) {
+            favoriteSongs.add(songId);
+        }
+    }
+
+    // Rebuild the top played list after play counts were restored
+    void refreshTopPlayed() {
+        updateMostFrequentlyPlayedSongs();
+    }
+
+    // Keep the 10 most played songs in order after one song's count went up by one.
+    // Only that song can move, so this touches at most 10 entries instead of sorting all.
+    // A song already in the list keeps its boxed ID, so repeat plays allocate nothing.
+    private void updateMostFrequentlyPlayedSongs(int songId, int count) {
+        int index = recentSongs.size() - 1;
+        while (index >= 0 && recentSongs.get(index) != songId) {
+            index--;
+        }
+        Integer id;
+        if (index >= 0) {
+            id = recentSongs.get(index);
+        } else if (recentSongs.size() < 10) {
+            id = songId;
+            recentSongs.add(id);
+            index = recentSongs.size() - 1;
+        } else if (count > songPlayCounts.get(recentSongs.get(9))) {
+            id = songId;
+            index = 9;
+        } else {
+            return;
+        }
+        while (index > 0 && songPlayCounts.get(recentSongs.get(index - 1)) < count) {
+            recentSongs.set(index, recentSongs.get(index - 1));
+            index--;
+        }
+        recentSongs.set(index, id);
+    }
+
+    // Recalculate the 10 most frequently played songs from scratch
     private void updateMostFrequentlyPlayedSongs() {
-        List<Map.Entry<String, Integer>> sortedList = new ArrayList<>(songPlayCounts.entrySet());
-        sortedList.sort((a, b) -> b.getValue().compareTo(a.getValue()));
-        recentSongs.clear();
-        for (int i = 0; i < Math.min(10, sortedList.size()); i++) {
-            recentSongs.add(sortedList.get(i).getKey());
+        List<Integer> sortedList = new ArrayList<>(songPlayCounts.size());
+        for (int songId : songPlayCounts.keys()) {
+            sortedList.add(songId);
         }
+        sortedList.sort((a, b) -> Integer.compare(songPlayCounts.get(b), songPlayCounts.get(a)));
+        recentSongs.clear();
+        recentSongs.addAll(sortedList.subList(0, Math.min(10, sortedList.size())));
     }
 
     // Shuffle the library and print songs in random order
     public void shuffleLibrary() {
+        ensureLoaded();
         List<Song> songList = new ArrayList<>(userSongs.values());
         Collections.shuffle(songList);
-        System.out.println("Shuffled Songs:");
-        for (Song song : songList) {
-            System.out.println(song);
-        }
+        ConsoleRenderer out = ConsoleRenderer.console();
+        out.line("Shuffled Songs:");
+        out.renderAll(songList.iterator(), Song::appendTo);
     }
 
-    // Remove a song and all related metadata
+    // Remove a song (the first one with this title) and all related metadata
     public void removeSong(String songTitle) {
-        if (userSongs.containsKey(songTitle)) {
-            userSongs.remove(songTitle);
-            songRatings.remove(songTitle);
-            favoriteSongs.remove(songTitle);
-            songPlayCounts.remove(songTitle);
-            System.out.println("Song '" + songTitle + "' removed from library.");
+        ensureLoaded();
+        Song song = searchSongByTitle(songTitle);
+        if (song != null) {
+            removeSong(song.getId());
+        }
+    }
+
+    // Remove a song by ID and all related metadata, including its playlist entries
+    public void removeSong(int songId) {
+        ensureLoaded();
+        Song song = userSongs.remove(songId);
+        fuzzyTitles = null;
+        if (song != null) {
+            songsById.remove(songId);
+            List<Song> sameTitle = songsByTitle.get(song.getTitle());
+            sameTitle.remove(song);
+            if (sameTitle.isEmpty()) {
+                songsByTitle.remove(song.getTitle());
+            }
+            songRatings.remove(song);
+            favoriteSongs.remove(songId);
+            songPlayCounts.remove(songId);
+            trending.remove(songId);
+            if (recentSongs.remove(Integer.valueOf(songId))) {
+                updateMostFrequentlyPlayedSongs(); // let the next most played song move up
+            }
+            // Only visit the playlists that actually contain the song
+            Set<PlayList> containing = songPlaylists.remove(songId);
+            if (containing != null) {
+                for (PlayList playlist : containing) {
+                    playlist.removeSong(song);
+                }
+            }
+            System.out.println("Song '" + song.getTitle() + "' removed from library.");
         }
     }
 
     // Remove an album and its songs from the library
     public void removeAlbum(String albumTitle) {
+        ensureLoaded();
         if (userAlbums.containsKey(albumTitle)) {
             Album album = userAlbums.get(albumTitle);
             for (Song song : album.getSongs()) {
-                removeSong(song.getTitle());
+                removeSong(song.getId());
             }
             userAlbums.remove(albumTitle);
             System.out.println("Album '" + albumTitle + "' removed from library.");
@@ -125,6 +375,7 @@ public class LibraryModel implements Iterable<Song> {
 
     // Automatically create playlists for genres with ≥10 songs
     public void generateGenreBasedPlaylists() {
+        ensureLoaded();
         Map<String, List<Song>> songsByGenre = new HashMap<>();
         for (Song song : userSongs.values()) {
             songsByGenre.computeIfAbsent(song.getGenre(), k -> new ArrayList<>()).add(song);
@@ -137,7 +388,7 @@ public class LibraryModel implements Iterable<Song> {
                 for (Song song : genreSongs) {
                     playlist.addSong(song);
                 }
-                playlists.put(playlist.getName(), playlist);
+                putPlaylist(playlist);
                 System.out.println("Created playlist for genre: " + genre);
             }
         }
@@ -145,20 +396,18 @@ public class LibraryModel implements Iterable<Song> {
 
     // Automatically create a playlist of songs rated 4 or 5
     public void generateTopRatedPlaylist() {
+        ensureLoaded();
         PlayList topRated = new PlayList("Top Rated Songs");
-        for (String songTitle : songRatings.keySet()) {
-            int rating = songRatings.get(songTitle);
-            if (rating >= 4) {
-                Song song = userSongs.get(songTitle);
-                topRated.addSong(song);
-            }
+        for (Song song : songRatings.atLeast(4)) {
+            topRated.addSong(song);
         }
-        playlists.put(topRated.getName(), topRated);
+        putPlaylist(topRated);
         System.out.println("Top Rated playlist created with " + topRated.getSongs().size() + " songs.");
     }
 
     // Return songs sorted alphabetically by title
     public List<Song> sortByTitle() {
+        ensureLoaded();
         return userSongs.values().stream()
                 .sorted(Comparator.comparing(Song::getTitle))
                 .collect(Collectors.toList());
@@ -166,77 +415,230 @@ public class LibraryModel implements Iterable<Song> {
 
     // Return songs sorted alphabetically by artist
     public List<Song> sortByArtist() {
+        ensureLoaded();
         return userSongs.values().stream()
                 .sorted(Comparator.comparing(Song::getArtist))
                 .collect(Collectors.toList());
     }
 
-    // Return songs sorted by rating (highest first)
+    // Return songs sorted by rating (highest first); uses the user's rating where given
     public List<Song> sortByRating() {
-        return userSongs.values().stream()
-                .sorted(Comparator.comparingInt(Song::getRating).reversed())
-                .collect(Collectors.toList());
+        ensureLoaded();
+        return songRatings.descending();
+    }
+
+    // Return songs rated at least `minimum` (highest first)
+    public List<Song> getSongsRatedAtLeast(int minimum) {
+        ensureLoaded();
+        return songRatings.atLeast(minimum);
     }
 
     // Find songs matching a specific genre
     public List<Song> searchSongsByGenre(String genre) {
+        ensureLoaded();
         return userSongs.values().stream()
                 .filter(song -> genre.equalsIgnoreCase(song.getGenre()))
                 .collect(Collectors.toList());
     }
 
-    // Find a song by its title
+    // Find a song by its title (the first one added if several share it)
     public Song searchSongByTitle(String title) {
-        return userSongs.getOrDefault(title, null);
+        ensureLoaded();
+        List<Song> songs = songsByTitle.get(title);
+        return songs == null ? null : songs.get(0);
+    }
+
+    // Find every song with the given title
+    public List<Song> searchSongsByTitle(String title) {
+        ensureLoaded();
+        return Collections.unmodifiableList(songsByTitle.getOrDefault(title, Collections.emptyList()));
+    }
+
+    // Find songs whose title is within maxDistance edits of the query, closest first
+    public List<Song> searchSongsFuzzy(String query, int maxDistance) {
+        ensureLoaded();
+        if (fuzzyTitles == null) {
+            fuzzyTitles = new FuzzyIndex<>();
+            for (Song song : userSongs.values()) {
+                fuzzyTitles.add(song.getTitle(), song);
+            }
+        }
+        return fuzzyTitles.search(query, maxDistance, userSongs.size());
+    }
+
+    // Find a song by its ID
+    public Song getSong(int songId) {
+        ensureLoaded();
+        return songsById.get(songId);
     }
 
     // Allow iteration over all songs in the library
     @Override
     public Iterator<Song> iterator() {
-        return userSongs.values().iterator();
+        ensureLoaded();
+        return Collections.unmodifiableCollection(userSongs.values()).iterator();
     }
 
-    // Return all songs (read-only)
+    // Return all songs keyed by title (read-only view; first song per title)
     public Map<String, Song> getUserSongs() {
+        ensureLoaded();
+        return new TitleView();
+    }
+
+    // Return all songs keyed by ID (read-only)
+    public Map<Integer, Song> getSongsById() {
+        ensureLoaded();
         return Collections.unmodifiableMap(userSongs);
     }
 
     // Return all albums (read-only)
     public Map<String, Album> getUserAlbums() {
+        ensureLoaded();
         return Collections.unmodifiableMap(userAlbums);
     }
 
     // Return all playlists (read-only)
     public Map<String, PlayList> getPlaylists() {
+        ensureLoaded();
         return Collections.unmodifiableMap(playlists);
     }
 
-    // Return song ratings (read-only)
+    // Return song ratings keyed by title
     public Map<String, Integer> getSongRatings() {
-        return Collections.unmodifiableMap(songRatings);
+        ensureLoaded();
+        Map<String, Integer> byTitle = new HashMap<>();
+        songRatings.forEachExplicitRating((songId, rating) ->
+                byTitle.putIfAbsent(songsById.get(songId).getTitle(), rating));
+        return Collections.unmodifiableMap(byTitle);
+    }
+
+    // Return the rating of a song, or null if it has not been rated
+    public Integer getRating(int songId) {
+        ensureLoaded();
+        return songRatings.getExplicitRating(songId);
     }
 
-    // Return favorite songs (read-only)
+    // Return the user's rating of a song, or the song's default rating if it has none
+    public int getEffectiveRating(int songId) {
+        ensureLoaded();
+        Song song = songsById.get(songId);
+        return song == null ? 0 : songRatings.getEffectiveRating(song);
+    }
+
+    // Return titles of favorite songs
     public Set<String> getFavoriteSongs() {
+        ensureLoaded();
+        Set<String> titles = new HashSet<>();
+        for (int songId : favoriteSongs) {
+            titles.add(songsById.get(songId).getTitle());
+        }
+        return Collections.unmodifiableSet(titles);
+    }
+
+    // Return IDs of favorite songs (read-only)
+    public Set<Integer> getFavoriteSongIds() {
+        ensureLoaded();
         return Collections.unmodifiableSet(favoriteSongs);
     }
 
-    // Return list of recently played songs or top played (read-only)
+    // Return how many times a song has been played, by title
+    public int getPlayCount(String songTitle) {
+        ensureLoaded();
+        Song song = searchSongByTitle(songTitle);
+        return song == null ? 0 : getPlayCount(song.getId());
+    }
+
+    // Return how many times a song has been played, by ID
+    public int getPlayCount(int songId) {
+        ensureLoaded();
+        return songPlayCounts.getOrDefault(songId, 0);
+    }
+
+    // Return titles of recently played songs or top played
     public List<String> getRecentSongs() {
-        return Collections.unmodifiableList(recentSongs);
+        ensureLoaded();
+        List<String> titles = new ArrayList<>(recentSongs.size());
+        for (int songId : recentSongs) {
+            titles.add(songsById.get(songId).getTitle());
+        }
+        return Collections.unmodifiableList(titles);
     }
 
     // Return same list as above (alias for top played)
     public List<String> getFrequentlyPlayedSongs() {
-        return Collections.unmodifiableList(recentSongs);
+        ensureLoaded();
+        return getRecentSongs();
+    }
+
+    // Return titles of the songs trending for this user: plays weighted by how recent they are
+    public List<String> getTrendingSongs() {
+        ensureLoaded();
+        List<Integer> ids = trending.top(10);
+        List<String> titles = new ArrayList<>(ids.size());
+        for (int songId : ids) {
+            titles.add(songsById.get(songId).getTitle());
+        }
+        return Collections.unmodifiableList(titles);
+    }
+
+    // Change how fast plays lose weight in getTrendingSongs(); existing scores are discarded
+    public void setTrendingHalfLife(long halfLifeMillis) {
+        ensureLoaded();
+        trending = new TrendingScores(halfLifeMillis);
     }
 
     // Print all playlists and their contents
     public void displayPlaylists() {
-        System.out.println("Playlists:");
+        ensureLoaded();
+        ConsoleRenderer out = ConsoleRenderer.console();
+        out.line("Playlists:");
         for (PlayList playlist : playlists.values()) {
-            playlist.displayPlayList();
+            playlist.render(out);
         }
+        out.flush();
     }
-}
 
+    // Read-only map view of the title index, exposing the first song under each title
+    private class TitleView extends AbstractMap<String, Song> {
+        @Override
+        public Song get(Object title) {
+            List<Song> songs = songsByTitle.get(title);
+            return songs == null ? null : songs.get(0);
+        }
+
+        @Override
+        public boolean containsKey(Object title) {
+            return songsByTitle.containsKey(title);
+        }
+
+        @Override
+        public int size() {
+            return songsByTitle.size();
+        }
+
+        @Override
+        public Set<Map.Entry<String, Song>> entrySet() {
+            return new AbstractSet<Map.Entry<String, Song>>() {
+                @Override
+                public Iterator<Map.Entry<String, Song>> iterator() {
+                    Iterator<Map.Entry<String, List<Song>>> it = songsByTitle.entrySet().iterator();
+                    return new Iterator<Map.Entry<String, Song>>() {
+                        public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        public Map.Entry<String, Song> next() {
+                            Map.Entry<String, List<Song>> entry = it.next();
+                            return new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().get(0));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return songsByTitle.size();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * LibraryPersister.java
+ *
+ * Write-behind saving of user libraries. save() only records the request and returns; a
+ * background daemon thread performs the writes one at a time, oldest first. A save for a
+ * user who already has one waiting replaces it in place, keeping its turn, so a burst of
+ * saves turns into a single write of the latest state and a user who saves often is never
+ * pushed behind everyone else. Everything still waiting is written when the persister is closed or
+ * the JVM shuts down. The save actions themselves are expected to write atomically
+ * (temp file plus rename, as UserManager does), so a crash never leaves half a file.
+ *
+ * Author: Haobin Yan
+ */
+
+package model;
+
+import java.io.Closeable;
+import java.util.*;
+
+public class LibraryPersister implements Closeable {
+    private final Map<String, Runnable> pending;  // Username → latest waiting save, oldest first
+    private final Thread thread;                  // Performs the writes
+    private final Thread shutdownHook;            // Flushes on JVM exit
+    private int writing;                          // Saves currently being written (0 or 1)
+    private String writingUser;                   // Whose save is being written, or null
+    private boolean closed;
+    private long writes;                          // Saves performed
+    private long coalesced;                       // Saves replaced by a newer one before being written
+
+    // Constructor: starts the writer thread and registers the shutdown flush
+    public LibraryPersister() {
+        pending = new LinkedHashMap<>();
+        thread = new Thread(this::writeLoop, "library-persister");
+        thread.setDaemon(true);
+        thread.start();
+        shutdownHook = new Thread(this::close, "library-persister-flush");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    // Queue a save of the user's library; replaces a save of the same user still waiting,
+    // which keeps its place in the queue
+    public void save(String username, Runnable write) {
+        synchronized (this) {
+            if (!closed) {
+                if (pending.put(username, write) != null) {
+                    coalesced++;
+                }
+                notifyAll();
+                return;
+            }
+        }
+        perform(write); // Closed: nobody is left to write it later
+    }
+
+    // Wait until every save queued so far has been written
+    public synchronized void flush() {
+        boolean interrupted = false;
+        while (!pending.isEmpty() || writing > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Wait until no save of this user is waiting or being written, so their library
+    // file can be read back; other users' saves are not waited for
+    public synchronized void awaitSaved(String username) {
+        boolean interrupted = false;
+        while (pending.containsKey(username) || username.equals(writingUser)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Write everything still waiting and stop the writer thread
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        flush();
+        if (Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // Already shutting down; the hook will find nothing left to do
+            }
+        }
+    }
+
+    public synchronized long getWrites() {
+        return writes;
+    }
+
+    public synchronized long getCoalesced() {
+        return coalesced;
+    }
+
+    // Take the oldest waiting save and write it, until closed and drained
+    private void writeLoop() {
+        while (true) {
+            Runnable write;
+            synchronized (this) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // Keep running; close() is the way to stop
+                    }
+                }
+                if (pending.isEmpty()) {
+                    return; // Closed and drained
+                }
+                Iterator<Map.Entry<String, Runnable>> oldest = pending.entrySet().iterator();
+                Map.Entry<String, Runnable> next = oldest.next();
+                writingUser = next.getKey();
+                write = next.getValue();
+                oldest.remove();
+                writing++;
+            }
+            perform(write);
+            synchronized (this) {
+                writing--;
+                writingUser = null;
+                writes++;
+                notifyAll();
+            }
+        }
+    }
+
+    private static void perform(Runnable write) {
+        try {
+            write.run();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * ListenerStats.java
+ *
+ * Approximate "how many different users played this" counts per catalog song and per
+ * artist, fed by play events. Each key holds one HyperLogLog sketch (1 KB by default)
+ * instead of a set of usernames. Stats from different shards or servers can be merged,
+ * and the sketches can be saved to and loaded from a binary file to survive restarts.
+ *
+ * Author: Haobin Yan
+ */
+
+package model;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class ListenerStats implements PlayListener {
+    private static final int MAGIC = 0x484C4C31; // "HLL1"
+
+    private final int precision;                            // Precision of every sketch
+    private final IntObjectMap<HyperLogLog> bySong;         // Song ID → listeners
+    private final Map<String, HyperLogLog> byArtist;        // Artist → listeners
+
+    // Constructor: sketches with the default precision
+    public ListenerStats() {
+        this(HyperLogLog.DEFAULT_PRECISION);
+    }
+
+    public ListenerStats(int precision) {
+        this.precision = precision;
+        this.bySong = new IntObjectMap<>();
+        this.byArtist = new HashMap<>();
+    }
+
+    // PlayListener: count the user as a listener of the song and its artist
+    @Override
+    public void songPlayed(String username, Song song, long timeMillis) {
+        if (username != null && song != null && song.isCatalogSong()) {
+            record(username, song.getId(), song.getArtist());
+        }
+    }
+
+    // Count a user as a listener of a song and an artist
+    public synchronized void record(String username, int songId, String artist) {
+        long hash = HyperLogLog.hash(username);
+        HyperLogLog song = bySong.get(songId);
+        if (song == null) {
+            song = new HyperLogLog(precision);
+            bySong.put(songId, song);
+        }
+        song.addHash(hash);
+        byArtist.computeIfAbsent(artist, a -> new HyperLogLog(precision)).addHash(hash);
+    }
+
+    // Estimated number of distinct users who played the song
+    public synchronized long getSongListeners(int songId) {
+        HyperLogLog sketch = bySong.get(songId);
+        return sketch == null ? 0 : sketch.estimate();
+    }
+
+    // Estimated number of distinct users who played any song by the artist
+    public synchronized long getArtistListeners(String artist) {
+        HyperLogLog sketch = byArtist.get(artist);
+        return sketch == null ? 0 : sketch.estimate();
+    }
+
+    // Fold another shard's stats into these
+    public void merge(ListenerStats other) {
+        if (other == this) return;
+        int[] ids;
+        List<HyperLogLog> songs = new ArrayList<>();
+        Map<String, HyperLogLog> artists = new HashMap<>();
+        synchronized (other) { // copy first, so two stats never lock each other
+            ids = other.bySong.keys();
+            for (int id : ids) {
+                songs.add(other.bySong.get(id).copy());
+            }
+            for (Map.Entry<String, HyperLogLog> entry : other.byArtist.entrySet()) {
+                artists.put(entry.getKey(), entry.getValue().copy());
+            }
+        }
+        synchronized (this) {
+            for (int i = 0; i < ids.length; i++) {
+                mergeSong(ids[i], songs.get(i));
+            }
+            for (Map.Entry<String, HyperLogLog> entry : artists.entrySet()) {
+                mergeArtist(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    // Save every sketch; returns false (after reporting) if the file cannot be written.
+    // The file is written next to the old one and renamed over it, so it is never half written.
+    public synchronized boolean save(Path path) {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                writeTo(out);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error saving listener stats: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Every sketch in the format load() reads
+    private void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        int[] ids = bySong.keys();
+        out.writeInt(ids.length);
+        for (int id : ids) {
+            out.writeInt(id);
+            bySong.get(id).writeTo(out);
+        }
+        out.writeInt(byArtist.size());
+        for (Map.Entry<String, HyperLogLog> entry : byArtist.entrySet()) {
+            out.writeUTF(entry.getKey());
+            entry.getValue().writeTo(out);
+        }
+    }
+
+    // Merge the sketches saved in a file into these; returns false if it cannot be read
+    public synchronized boolean load(Path path) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                System.err.println("Not a listener stats file: " + path);
+                return false;
+            }
+            for (int n = in.readInt(); n > 0; n--) {
+                int id = in.readInt();
+                mergeSong(id, HyperLogLog.readFrom(in));
+            }
+            for (int n = in.readInt(); n > 0; n--) {
+                String artist = in.readUTF();
+                mergeArtist(artist, HyperLogLog.readFrom(in));
+            }
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error loading listener stats: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void mergeSong(int songId, HyperLogLog sketch) {
+        HyperLogLog own = bySong.get(songId);
+        if (own == null) {
+            own = new HyperLogLog(precision);
+            bySong.put(songId, own);
+        }
+        own.merge(sketch);
+    }
+
+    private void mergeArtist(String artist, HyperLogLog sketch) {
+        byArtist.computeIfAbsent(artist, a -> new HyperLogLog(precision)).merge(sketch);
+    }
+}
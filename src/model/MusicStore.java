@@ -4,98 +4,552 @@
  * Loads and manages a shared music database of albums and songs.
  * This class is part of the static "store" (not user-specific) in the Music Library system.
  *
+ * Every catalog song gets a compact ID: its album's ordinal in the high bits and its
+ * track number in the low TRACK_BITS bits. Ordinals and track numbers are handed out
+ * once and remembered in a SongIdTable next to the index, so a song keeps its ID when the
+ * index is reordered, albums come and go, or tracks are inserted into its album file.
+ * getSong(id) goes straight to the album by ordinal.
+ *
+ * The catalog itself is an immutable CatalogSnapshot published through one volatile
+ * field. Reads never lock; reloads build the next snapshot and swap it in.
+ *
+ * In lazy mode the constructor reads only the album index. Each album file is parsed the
+ * first time something asks for it (by title, artist, song ID, or by looking at the whole
+ * catalog), exactly once, under the writer lock; startWarmUp() loads the rest in the
+ * background. Ordinals still come from the index, so song IDs are the same in both modes.
+ *
+ * In off-heap mode the albums are kept in an OffHeapCatalog (direct buffers) instead of
+ * the snapshot, and the lookup methods below hand out flyweight views from it. Song IDs
+ * are the same as in the other modes. A reload rebuilds the whole off-heap catalog.
+ *
+ * With a QueryCache attached, the list queries below (artist, title, genre, year and
+ * fuzzy searches) are answered from the cache while the catalog they were computed from
+ * is still current. Cached results are filed under a content version that only moves when
+ * a reload changes what the catalog holds: lazy loads and warm-up only parse albums that
+ * were already listed (a query loads every album it needs first), so they never make
+ * cached results stale.
+ *
  * Author: Haobin yan
  */
 
 package model;
 
 import java.io.*; 
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Supplier;
+import view.ConsoleRenderer;
 
 public class MusicStore {
-    private Map<String, Album> albumsByTitle;         // All albums indexed by title
-    private Map<String, List<Song>> songsByArtist;    // Songs grouped by artist
+    private volatile CatalogSnapshot snapshot;        // Current catalog version, replaced as a whole
+    private Map<Integer, IndexEntry> entriesByOrdinal; // Index entry behind each ordinal, in order (writers only)
+    private Map<String, Integer> ordinalsByFile;      // Album file name → ordinal (writers only)
+    private final String albumsFilePath;              // Index file the catalog was loaded from
+    private final boolean lazy;                       // Parse album files on first access
+    private final Mode mode;                          // How the catalog is kept
+    private final SongIdTable ids;                    // Ordinal and track number given to each album and song
+    private volatile OffHeapCatalog offHeap;          // The catalog in off-heap mode, else null
+    private final Unloaded unloaded;                  // Listed albums not parsed yet (lazy mode)
+    private Set<String> listedFiles = new HashSet<>(); // Album files in the index (off-heap mode, writers only)
+    private volatile QueryCache queryCache;           // Shared query results, or null for none
+    private volatile long contentVersion;             // Bumped after each reload that changes the catalog (under the lock)
     private static final String ALBUMS_DIRECTORY = "resources/albums/"; // Folder for album .txt files
+    public static final int TRACK_BITS = 10;          // Low ID bits holding the track number
+    public static final int DEFAULT_FUZZY_DISTANCE = 2; // Typos tolerated by the fuzzy searches
+    private static final int MAX_TRACKS = 1 << TRACK_BITS;
+
+    // One "title,artist" line of the album index
+    private static class IndexEntry {
+        final String title;
+        final String artist;
+        final String fileName;
+
+        IndexEntry(String title, String artist) {
+            this.title = title;
+            this.artist = artist;
+            this.fileName = title + "_" + artist + ".txt";
+        }
+    }
+
+    // How the catalog is kept: parsed up front, parsed on first access, or outside the heap
+    public enum Mode { EAGER, LAZY, OFF_HEAP }
+
+    // Albums listed in the index whose files have not been parsed yet. Changed only under
+    // the store's lock, read without it.
+    private static class Unloaded {
+        final Map<Integer, IndexEntry> byOrdinal = new ConcurrentHashMap<>();
+        final Map<String, Set<Integer>> byTitle = new ConcurrentHashMap<>();
+        final Map<String, Set<Integer>> byArtist = new ConcurrentHashMap<>();
+
+        void add(int ordinal, IndexEntry entry) {
+            byOrdinal.put(ordinal, entry);
+            byTitle.computeIfAbsent(entry.title, k -> new ConcurrentSkipListSet<>()).add(ordinal);
+            byArtist.computeIfAbsent(entry.artist, k -> new ConcurrentSkipListSet<>()).add(ordinal);
+        }
+
+        // The entry, if it was still waiting
+        IndexEntry remove(int ordinal) {
+            IndexEntry entry = byOrdinal.remove(ordinal);
+            if (entry != null) {
+                removeFrom(byTitle, entry.title, ordinal);
+                removeFrom(byArtist, entry.artist, ordinal);
+            }
+            return entry;
+        }
+
+        private static void removeFrom(Map<String, Set<Integer>> map, String key, int ordinal) {
+            Set<Integer> ordinals = map.get(key);
+            ordinals.remove(ordinal);
+            if (ordinals.isEmpty()) {
+                map.remove(key);
+            }
+        }
+    }
 
     // Constructor: loads albums from the given file path
     public MusicStore(String albumsFilePath) {
-        albumsByTitle = new HashMap<>();
-        songsByArtist = new HashMap<>();
+        this(albumsFilePath, false);
+    }
+
+    // Constructor: with lazy set, reads only the index now and each album on first access
+    public MusicStore(String albumsFilePath, boolean lazy) {
+        this(albumsFilePath, lazy ? Mode.LAZY : Mode.EAGER);
+    }
+
+    // Constructor: keeps the catalog the way the mode says
+    public MusicStore(String albumsFilePath, Mode mode) {
+        this.albumsFilePath = albumsFilePath;
+        this.mode = mode;
+        this.lazy = mode == Mode.LAZY;
+        this.unloaded = new Unloaded();
+        snapshot = CatalogSnapshot.EMPTY;
+        entriesByOrdinal = new TreeMap<>();
+        ids = new SongIdTable(SongIdTable.forIndex(albumsFilePath));
+        ordinalsByFile = new HashMap<>();
         loadAlbums(albumsFilePath);
     } 
 
     // Loads album metadata from a CSV-like file (e.g., albums.txt)
-    private void loadAlbums(String albumsFilePath) {
-        try (BufferedReader br = new BufferedReader(new FileReader(albumsFilePath))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length != 2) continue; // Skip invalid lines
-
-                String albumTitle = parts[0].trim();
-                String artist = parts[1].trim();
-                String albumFileName = albumTitle + "_" + artist + ".txt";
-
-                // Load full album info from its dedicated .txt file
-                Album album = readAlbumFromFile(ALBUMS_DIRECTORY + albumFileName);
-                if (album != null) {
-                    albumsByTitle.put(albumTitle, album);
-                    songsByArtist.putIfAbsent(artist, new ArrayList<>());
-                    songsByArtist.get(artist).addAll(album.getSongs());
+    private synchronized void loadAlbums(String albumsFilePath) {
+        if (mode == Mode.OFF_HEAP) {
+            reloadIndex();
+            return;
+        }
+        CatalogSnapshot next = snapshot;
+        try {
+            List<IndexEntry> entries = readIndex(albumsFilePath);
+            // One reader reused for every album file
+            try (RecordReader albumReader = new RecordReader()) {
+                for (IndexEntry entry : entries) {
+                    // Load full album info from its dedicated .txt file
+                    int ordinal = addEntry(entry);
+                    if (ordinal >= 0 && lazy) {
+                        unloaded.add(ordinal, entry);
+                    } else if (ordinal >= 0) {
+                        next = install(next, ordinal, readAlbumFromFile(albumReader, ALBUMS_DIRECTORY + entry.fileName, ordinal));
+                    }
                 }
             }
         } catch (IOException e) {
             System.err.println("Error loading albums: " + e.getMessage());
         }
+        snapshot = next;
+    }
+
+    // Reads the "title,artist" lines of the album index, skipping invalid lines
+    private static List<IndexEntry> readIndex(String albumsFilePath) throws IOException {
+        List<IndexEntry> entries = new ArrayList<>();
+        try (RecordReader index = new RecordReader()) {
+            index.open(Paths.get(albumsFilePath));
+            while (index.nextLine()) {
+                if (index.fieldCount() != 2) continue; // Skip invalid lines
+                entries.add(new IndexEntry(index.field(0), index.field(1)));
+            }
+        }
+        return entries;
+    }
+
+    // Give an index entry its album file's ordinal from the ID table; returns -1 if the
+    // file is already listed
+    private int addEntry(IndexEntry entry) {
+        if (ordinalsByFile.containsKey(entry.fileName)) return -1;
+        int ordinal = ids.ordinalOf(entry.fileName);
+        entriesByOrdinal.put(ordinal, entry);
+        ordinalsByFile.put(entry.fileName, ordinal);
+        return ordinal;
+    }
+
+    // Build the next catalog version with the album at an ordinal replaced (null removes it)
+    private CatalogSnapshot install(CatalogSnapshot base, int ordinal, Album album) {
+        IndexEntry entry = entriesByOrdinal.get(ordinal);
+        return base.withAlbum(ordinal, entry.title, entry.artist, album);
+    }
+
+    // Re-read the album index: load newly listed albums and drop albums no longer listed.
+    // Albums that stay listed are left untouched, so the cost follows the size of the change.
+    // All changes become visible together when the new snapshot is published.
+    public synchronized void reloadIndex() {
+        List<IndexEntry> entries;
+        try {
+            entries = readIndex(albumsFilePath);
+        } catch (IOException e) {
+            System.err.println("Error reloading album index: " + e.getMessage());
+            return;
+        }
+        if (mode == Mode.OFF_HEAP) {
+            listedFiles = new HashSet<>();
+            for (IndexEntry entry : entries) {
+                if (!ordinalsByFile.containsKey(entry.fileName)) {
+                    addEntry(entry);
+                }
+                listedFiles.add(entry.fileName);
+            }
+            rebuildOffHeap();
+            return;
+        }
+        CatalogSnapshot next = snapshot;
+        Set<String> listed = new HashSet<>();
+        boolean changed = false;
+        try (RecordReader albumReader = new RecordReader()) {
+            for (IndexEntry entry : entries) {
+                listed.add(entry.fileName);
+                Integer known = ordinalsByFile.get(entry.fileName);
+                if (known == null) {
+                    int ordinal = addEntry(entry);
+                    if (lazy) {
+                        unloaded.add(ordinal, entry);
+                    } else {
+                        next = install(next, ordinal, readAlbumFromFile(albumReader, ALBUMS_DIRECTORY + entry.fileName, ordinal));
+                    }
+                    changed = true;
+                    System.out.println("Catalog: added " + entry.title);
+                } else if (next.getAlbumByOrdinal(known) == null && !unloaded.byOrdinal.containsKey(known)) {
+                    // Listed again after being dropped (or after failing to load)
+                    changed = true;
+                    if (lazy) {
+                        unloaded.add(known, entriesByOrdinal.get(known));
+                    } else {
+                        next = install(next, known, readAlbumFromFile(albumReader, ALBUMS_DIRECTORY + entry.fileName, known));
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, Integer> known : ordinalsByFile.entrySet()) {
+            int ordinal = known.getValue();
+            if (listed.contains(known.getKey())) continue;
+            boolean wasWaiting = unloaded.remove(ordinal) != null;
+            if (wasWaiting || next.getAlbumByOrdinal(ordinal) != null) {
+                next = install(next, ordinal, null);
+                changed = true;
+                System.out.println("Catalog: removed " + entriesByOrdinal.get(ordinal).title);
+            }
+        }
+        snapshot = next;
+        if (changed) contentVersion++;
+    }
+
+    // Re-parse one album file (by file name) and swap the result in; unknown files are ignored
+    public synchronized void reloadAlbumFile(String fileName) {
+        if (mode == Mode.OFF_HEAP) {
+            if (listedFiles.contains(fileName)) rebuildOffHeap();
+            return;
+        }
+        Integer ordinal = ordinalsByFile.get(fileName);
+        if (ordinal == null || unloaded.byOrdinal.containsKey(ordinal)) return; // not parsed yet: read fresh on first access
+        try (RecordReader albumReader = new RecordReader()) {
+            snapshot = install(snapshot, ordinal, readAlbumFromFile(albumReader, ALBUMS_DIRECTORY + fileName, ordinal));
+        }
+        contentVersion++;
+        System.out.println("Catalog: reloaded " + entriesByOrdinal.get(ordinal).title);
+    }
+
+    // Parse every listed album file into a new off-heap catalog, keeping each album's ordinal
+    private void rebuildOffHeap() {
+        OffHeapCatalog.Builder builder = new OffHeapCatalog.Builder();
+        try (RecordReader albumReader = new RecordReader()) {
+            for (Map.Entry<Integer, IndexEntry> listed : entriesByOrdinal.entrySet()) {
+                int ordinal = listed.getKey();
+                IndexEntry entry = listed.getValue();
+                if (listedFiles.contains(entry.fileName)) {
+                    builder.add(ordinal, readAlbumFromFile(albumReader, ALBUMS_DIRECTORY + entry.fileName, ordinal));
+                }
+            }
+        }
+        offHeap = builder.build();
+        snapshot = snapshot.nextVersion(); // Lets version-keyed callers see the change
+        contentVersion++;
+    }
+
+    // Re-read the index and every listed album file (used when change events were lost)
+    public synchronized void reloadAll() {
+        reloadIndex();
+        if (mode == Mode.OFF_HEAP) return; // already re-read every file
+        for (String fileName : new ArrayList<>(ordinalsByFile.keySet())) {
+            reloadAlbumFile(fileName);
+        }
+    }
+
+    // The current catalog version; use it for several reads that must agree with each other.
+    // In off-heap mode it holds no albums and only its version number tracks reloads.
+    public CatalogSnapshot snapshot() {
+        loadAll();
+        return snapshot;
+    }
+
+    // ----- Lazy loading -----
+
+    // Parse the album at an ordinal if it is still waiting; the first caller does the work.
+    // The entry leaves `unloaded` only after the snapshot holding the album is published,
+    // so a reader that finds it gone without taking the lock always sees the album.
+    private void load(int ordinal) {
+        if (!unloaded.byOrdinal.containsKey(ordinal)) return;
+        synchronized (this) {
+            IndexEntry entry = unloaded.byOrdinal.get(ordinal);
+            if (entry == null) return; // loaded by another thread meanwhile
+            try (RecordReader albumReader = new RecordReader()) {
+                snapshot = install(snapshot, ordinal, readAlbumFromFile(albumReader, ALBUMS_DIRECTORY + entry.fileName, ordinal));
+            }
+            unloaded.remove(ordinal);
+        }
+    }
+
+    // Parse every waiting album listed in the set of ordinals (null for none)
+    private void loadAll(Set<Integer> ordinals) {
+        if (ordinals == null) return;
+        for (Integer ordinal : ordinals) {
+            load(ordinal);
+        }
+    }
+
+    // Parse every waiting album, in index order
+    private void loadAll() {
+        if (unloaded.byOrdinal.isEmpty()) return;
+        loadAll(new TreeSet<>(unloaded.byOrdinal.keySet()));
+    }
+
+    // Number of listed albums whose files have not been parsed yet (always 0 unless lazy)
+    public int getUnloadedAlbumCount() {
+        return unloaded.byOrdinal.size();
+    }
+
+    // Parse the remaining albums on a background daemon thread; returns that thread
+    public Thread startWarmUp() {
+        Thread thread = new Thread(this::loadAll, "catalog-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    // Path of the album index this store was loaded from
+    public Path getIndexPath() {
+        return Paths.get(albumsFilePath);
+    }
+
+    // Directory holding the album files
+    public Path getAlbumsDirectory() {
+        return Paths.get(ALBUMS_DIRECTORY);
     }
 
     // Reads a single album's full metadata and song list from its .txt file
-    private Album readAlbumFromFile(String albumFilePath) {
-        try (BufferedReader br = new BufferedReader(new FileReader(albumFilePath))) {
-            String header = br.readLine();
-            if (header == null) return null;
-
-            String[] metadata = header.split(",");
-            if (metadata.length < 4) return null;
-
-            String albumTitle = metadata[0].trim();
-            String artist = metadata[1].trim();
-            String genre = metadata[2].trim();
-            int year = Integer.parseInt(metadata[3].trim());
-
-            List<Song> songs = new ArrayList<>();
-            String songTitle;
-            while ((songTitle = br.readLine()) != null) {
-                songs.add(new Song(songTitle.trim(), artist, albumTitle, genre));
+    private Album readAlbumFromFile(RecordReader reader, String albumFilePath, int ordinal) {
+        try {
+            reader.open(Paths.get(albumFilePath));
+            if (!reader.nextLine()) return null;
+            if (reader.fieldCount() < 4) return null;
+
+            String albumTitle = reader.field(0);
+            String artist = reader.field(1);
+            String genre = reader.field(2);
+            int year = reader.intField(3);
+
+            List<String> titles = new ArrayList<>();
+            while (reader.nextLine()) {
+                titles.add(reader.line());
+            }
+            int[] tracks = ids.tracksOf(ordinal, titles, MAX_TRACKS);
+            List<Song> songs = new ArrayList<>(titles.size());
+            for (int i = 0; i < tracks.length; i++) {
+                if (tracks[i] < 0) {
+                    System.err.println("No track number left for \"" + titles.get(i) + "\" in: " + albumFilePath);
+                    continue;
+                }
+                songs.add(new Song(songId(ordinal, tracks[i]), titles.get(i), artist, albumTitle, genre));
             }
 
-            return new Album(albumTitle, artist, genre, year, songs);
+            return new Album(albumTitle, artist, genre, year, Collections.unmodifiableList(songs));
         } catch (IOException | NumberFormatException e) {
             System.err.println("Error reading album file: " + albumFilePath);
             return null;
+        } finally {
+            reader.close();
         }
     }
 
     // Get a specific album by its title
     public Album getAlbum(String title) {
-        return albumsByTitle.getOrDefault(title, null);
+        OffHeapCatalog catalog = offHeap;
+        if (catalog != null) return catalog.getAlbum(title);
+        loadAll(unloaded.byTitle.get(title));
+        return snapshot.getAlbum(title);
+    }
+
+    // Compose a song ID from the album's ordinal and the song's track number
+    public static int songId(int albumOrdinal, int track) {
+        return (albumOrdinal << TRACK_BITS) | track;
+    }
+
+    // Get a catalog song by its ID, or null if there is none
+    public Song getSong(int id) {
+        if (id < 0) return null;
+        OffHeapCatalog catalog = offHeap;
+        if (catalog != null) return catalog.getSong(id);
+        int ordinal = id >>> TRACK_BITS;
+        int track = id & (MAX_TRACKS - 1);
+        load(ordinal);
+        Album album = snapshot.getAlbumByOrdinal(ordinal);
+        if (album == null) return null;
+        List<Song> songs = album.getSongs();
+        if (track < songs.size() && songs.get(track).getId() == id) {
+            return songs.get(track); // track numbers follow file order until the file is edited
+        }
+        for (Song song : songs) {
+            if (song.getId() == id) return song;
+        }
+        return null;
+    }
+
+    // Find a catalog song by title within an album, or null if there is none
+    public Song findSong(String title, String albumTitle) {
+        Album album = getAlbum(albumTitle);
+        if (album == null) return null;
+        for (Song song : album.getSongs()) {
+            if (song.getTitle().equals(title)) {
+                return song;
+            }
+        }
+        return null;
     }
 
     // Get all songs by a specific artist
     public List<Song> getSongsByArtist(String artist) {
-        return songsByArtist.getOrDefault(artist, new ArrayList<>());
+        return cached(QueryCache.key("getSongsByArtist", artist), () -> {
+            OffHeapCatalog catalog = offHeap;
+            if (catalog != null) return catalog.getSongsByArtist(artist);
+            loadAll(unloaded.byArtist.get(artist));
+            return snapshot.getSongsByArtist(artist);
+        });
+    }
+
+    // Albums whose title matches ignoring case and extra whitespace (immutable)
+    public List<Album> findAlbumsByTitle(String title) {
+        return cached(QueryCache.key("findAlbumsByTitle", CatalogSnapshot.normalize(title)), () -> {
+            OffHeapCatalog catalog = offHeap;
+            if (catalog != null) return catalog.findAlbumsByTitle(title);
+            return snapshot().findAlbumsByTitle(title);
+        });
+    }
+
+    // Songs whose artist matches ignoring case and extra whitespace (immutable)
+    public List<Song> findSongsByArtist(String artist) {
+        return cached(QueryCache.key("findSongsByArtist", CatalogSnapshot.normalize(artist)), () -> {
+            OffHeapCatalog catalog = offHeap;
+            if (catalog != null) return catalog.findSongsByArtist(artist);
+            return snapshot().findSongsByArtist(artist);
+        });
+    }
+
+    // Albums of a genre, ignoring case and extra whitespace (immutable)
+    public List<Album> getAlbumsByGenre(String genre) {
+        return cached(QueryCache.key("getAlbumsByGenre", CatalogSnapshot.normalize(genre)), () -> {
+            OffHeapCatalog catalog = offHeap;
+            if (catalog != null) return catalog.getAlbumsByGenre(genre);
+            return snapshot().getAlbumsByGenre(genre);
+        });
+    }
+
+    // Songs of a genre, ignoring case and extra whitespace (immutable)
+    public List<Song> getSongsByGenre(String genre) {
+        return cached(QueryCache.key("getSongsByGenre", CatalogSnapshot.normalize(genre)), () -> {
+            OffHeapCatalog catalog = offHeap;
+            if (catalog != null) return catalog.getSongsByGenre(genre);
+            return snapshot().getSongsByGenre(genre);
+        });
+    }
+
+    // Albums released from `from` to `to`, inclusive, oldest first (immutable)
+    public List<Album> getAlbumsByYearRange(int from, int to) {
+        return cached(QueryCache.key("getAlbumsByYearRange", from, to), () -> {
+            OffHeapCatalog catalog = offHeap;
+            if (catalog != null) return catalog.getAlbumsByYearRange(from, to);
+            return snapshot().getAlbumsByYearRange(from, to);
+        });
+    }
+
+    // Albums released in the decade containing the year (e.g. 1994 → 1990-1999)
+    public List<Album> getAlbumsByDecade(int year) {
+        int start = Math.floorDiv(year, 10) * 10;
+        return getAlbumsByYearRange(start, start + 9);
+    }
+
+    // Songs whose title is within maxDistance edits of the query, closest first
+    public List<Song> searchSongsFuzzy(String query, int maxDistance, int limit) {
+        return cached(QueryCache.key("searchSongsFuzzy", FuzzyIndex.normalize(query), maxDistance, limit), () -> {
+            OffHeapCatalog catalog = offHeap;
+            if (catalog != null) return catalog.searchSongsFuzzy(query, maxDistance, limit);
+            return snapshot().fuzzyIndexes().searchSongs(query, maxDistance, limit);
+        });
+    }
+
+    // Albums whose title is within maxDistance edits of the query, closest first
+    public List<Album> searchAlbumsFuzzy(String query, int maxDistance, int limit) {
+        return cached(QueryCache.key("searchAlbumsFuzzy", FuzzyIndex.normalize(query), maxDistance, limit), () -> {
+            OffHeapCatalog catalog = offHeap;
+            if (catalog != null) return catalog.searchAlbumsFuzzy(query, maxDistance, limit);
+            return snapshot().fuzzyIndexes().searchAlbums(query, maxDistance, limit);
+        });
+    }
+
+    // Artist names within maxDistance edits of the query, closest first
+    public List<String> searchArtistsFuzzy(String query, int maxDistance, int limit) {
+        return cached(QueryCache.key("searchArtistsFuzzy", FuzzyIndex.normalize(query), maxDistance, limit), () -> {
+            OffHeapCatalog catalog = offHeap;
+            if (catalog != null) return catalog.searchArtistsFuzzy(query, maxDistance, limit);
+            return snapshot().fuzzyIndexes().searchArtists(query, maxDistance, limit);
+        });
+    }
+
+    // Attach a cache shared by every caller of the list queries (null detaches it)
+    public void setQueryCache(QueryCache cache) {
+        queryCache = cache;
+    }
+
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    // Answer a list query from the cache if one is attached. The content version is read
+    // before the query runs and writers bump it only after publishing their snapshot, so
+    // a result racing a reload is filed under the older version and is never served once
+    // the new one is current.
+    private <T> List<T> cached(Object key, Supplier<List<T>> query) {
+        QueryCache cache = queryCache;
+        if (cache == null) return query.get();
+        return cache.get(key, contentVersion, () -> Collections.unmodifiableList(query.get()));
     }
 
     // Print all album titles and artists
     public void displayAllAlbums() {
-        for (String title : albumsByTitle.keySet()) {
-            System.out.println(title + " by " + albumsByTitle.get(title).getArtist());
-        }
+        ConsoleRenderer.console().renderAll(getAllAlbums().iterator(),
+                (album, row) -> row.append(album.getTitle()).append(" by ").append(album.getArtist()));
     }
 
-    // Return all albums as a collection
+    // Return all albums as a read-only collection (one consistent version of the catalog)
     public Collection<Album> getAllAlbums() {
-        return albumsByTitle.values();
+        OffHeapCatalog catalog = offHeap;
+        if (catalog != null) return catalog.albums();
+        return snapshot().getAllAlbums();
     }
 }
 
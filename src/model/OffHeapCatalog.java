@@ -0,0 +1,487 @@
+/**
+ * OffHeapCatalog.java
+ *
+ * Catalog storage outside the Java heap, for catalogs too large to keep as millions of
+ * long-lived Album and Song objects. Everything lives in direct ByteBuffers:
+ *
+ *   strings   pool of distinct titles and names (int byte length + UTF-8), by offset
+ *   albums    28 bytes per ordinal: title, artist and genre offsets, year, first song,
+ *             song count (-1 = no album at this ordinal), next album of the same artist
+ *   songs     8 bytes per song: title offset, track number (songs of an album are
+ *             contiguous, in file order)
+ *   titles    open-addressing hash table: album title → ordinal + 1 (0 = empty slot)
+ *   artists   open-addressing hash table: artist → first album ordinal + 1; the artist's
+ *             other albums follow through the "next album" field, in index order
+ *
+ * The garbage collector only sees a handful of buffers, however large the catalog is.
+ * Callers get flyweight views: an Album or Song that holds an ordinal or song number and
+ * decodes its fields from the buffers when asked. Views are created per lookup and die
+ * young, and two views of the same song are equal (songs compare by ID).
+ *
+ * Exact title and artist lookups use the hash tables. Fuzzy, normalized, genre and year
+ * queries scan the album records instead of keeping on-heap indexes, which would bring
+ * the objects back onto the heap; they are O(catalog) in this mode.
+ *
+ * Author: Haobin Yan
+ */
+
+package model;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+final class OffHeapCatalog {
+    private static final int ALBUM_RECORD = 28;
+    private static final int SONG_RECORD = 8;
+    private static final int TRACK_MASK = (1 << MusicStore.TRACK_BITS) - 1;
+    private static final int TITLE = 0, ARTIST = 4, GENRE = 8, YEAR = 12, FIRST_SONG = 16, SONG_COUNT = 20, NEXT = 24;
+
+    private final ByteBuffer strings;
+    private final ByteBuffer albums;
+    private final ByteBuffer songs;
+    private final IntBuffer titles;
+    private final IntBuffer artists;
+    private final int ordinals;       // Album slots (highest ordinal + 1)
+    private final int albumCount;     // Slots that hold an album
+    private final int songCount;
+
+    private OffHeapCatalog(Builder builder) {
+        this.strings = builder.strings;
+        this.albums = builder.albums;
+        this.songs = builder.songs;
+        this.ordinals = builder.ordinals;
+        this.albumCount = builder.albumCount;
+        this.songCount = builder.songCount;
+        this.titles = newTable(albumCount);
+        this.artists = newTable(builder.firstByArtist.size());
+        for (int ordinal = 0; ordinal < ordinals; ordinal++) {
+            if (exists(ordinal)) {
+                // Later albums with the same title win, as in the on-heap catalog
+                put(titles, albumInt(ordinal, TITLE), ordinal, true);
+            }
+        }
+        for (int first : builder.firstByArtist.values()) {
+            put(artists, albumInt(first, ARTIST), first, false);
+        }
+    }
+
+    // Collects albums by ordinal; all on-heap bookkeeping is dropped by build()
+    static final class Builder {
+        private ByteBuffer strings = ByteBuffer.allocateDirect(1 << 16);
+        private ByteBuffer albums = ByteBuffer.allocateDirect(ALBUM_RECORD * 64);
+        private ByteBuffer songs = ByteBuffer.allocateDirect(SONG_RECORD * 1024);
+        private final Map<String, Integer> pooled = new HashMap<>();          // String → offset
+        private final Map<String, Integer> firstByArtist = new LinkedHashMap<>();
+        private final Map<String, Integer> lastByArtist = new HashMap<>();
+        private int ordinals;
+        private int albumCount;
+        private int songCount;
+
+        // Store the album at an ordinal (ordinals must be added in increasing order; null = none)
+        void add(int ordinal, Album album) {
+            while (ordinals < ordinal) {
+                addRecord(0, 0, 0, 0, 0, -1); // skipped slots
+            }
+            if (album == null) {
+                addRecord(0, 0, 0, 0, 0, -1);
+                return;
+            }
+            int first = songCount;
+            for (Song song : album.getSongs()) {
+                songs = ensure(songs, SONG_RECORD);
+                songs.putInt(string(song.getTitle())).putInt(song.getId() & TRACK_MASK);
+                songCount++;
+            }
+            int record = ordinals;
+            addRecord(string(album.getTitle()), string(album.getArtist()), string(album.getGenre()),
+                    album.getYear(), first, album.getSongs().size());
+            albumCount++;
+            String artist = album.getArtist();
+            Integer last = lastByArtist.put(artist, record);
+            if (last == null) {
+                firstByArtist.put(artist, record);
+            } else {
+                albums.putInt(last * ALBUM_RECORD + NEXT, record);
+            }
+        }
+
+        OffHeapCatalog build() {
+            return new OffHeapCatalog(this);
+        }
+
+        private void addRecord(int title, int artist, int genre, int year, int firstSong, int count) {
+            albums = ensure(albums, ALBUM_RECORD);
+            albums.putInt(title).putInt(artist).putInt(genre).putInt(year)
+                    .putInt(firstSong).putInt(count).putInt(-1);
+            ordinals++;
+        }
+
+        // Offset of the string in the pool, adding it the first time
+        private int string(String value) {
+            String key = value == null ? "" : value;
+            Integer offset = pooled.get(key);
+            if (offset == null) {
+                byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                strings = ensure(strings, 4 + bytes.length);
+                offset = strings.position();
+                strings.putInt(bytes.length).put(bytes);
+                pooled.put(key, offset);
+            }
+            return offset;
+        }
+
+        // The buffer, or a copy twice as large if `needed` more bytes don't fit
+        private static ByteBuffer ensure(ByteBuffer buffer, int needed) {
+            if (buffer.remaining() >= needed) return buffer;
+            long capacity = Math.max(2L * buffer.capacity(), (long) buffer.position() + needed);
+            ByteBuffer bigger = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE - 8, capacity));
+            buffer.flip();
+            bigger.put(buffer);
+            return bigger;
+        }
+    }
+
+    // ----- Lookups -----
+
+    // Album with the exact title, or null
+    Album getAlbum(String title) {
+        int ordinal = find(titles, title, TITLE);
+        return ordinal < 0 ? null : new AlbumView(ordinal);
+    }
+
+    // Catalog song by ID, or null
+    Song getSong(int id) {
+        if (id < 0) return null;
+        int ordinal = id >>> MusicStore.TRACK_BITS;
+        int track = id & TRACK_MASK;
+        if (!exists(ordinal)) return null;
+        int first = albumInt(ordinal, FIRST_SONG);
+        int count = albumInt(ordinal, SONG_COUNT);
+        if (track < count && trackAt(first + track) == track) {
+            return new SongView(ordinal, track); // track numbers follow file order until the file is edited
+        }
+        for (int index = 0; index < count; index++) {
+            if (trackAt(first + index) == track) return new SongView(ordinal, index);
+        }
+        return null;
+    }
+
+    // Songs of every album by the artist, in index order (a new list; empty and shared on a miss)
+    List<Song> getSongsByArtist(String artist) {
+        int ordinal = find(artists, artist, ARTIST);
+        if (ordinal < 0) return Collections.emptyList();
+        List<Song> result = new ArrayList<>();
+        for (; ordinal >= 0; ordinal = albumInt(ordinal, NEXT)) {
+            result.addAll(new AlbumView(ordinal).getSongs());
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    // Views of all albums, in index order
+    Collection<Album> albums() {
+        return new AbstractCollection<Album>() {
+            @Override
+            public Iterator<Album> iterator() {
+                return new Iterator<Album>() {
+                    private int next = advance(0);
+
+                    private int advance(int from) {
+                        while (from < ordinals && !exists(from)) from++;
+                        return from;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < ordinals;
+                    }
+
+                    @Override
+                    public Album next() {
+                        if (next >= ordinals) throw new NoSuchElementException();
+                        Album album = new AlbumView(next);
+                        next = advance(next + 1);
+                        return album;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return albumCount;
+            }
+        };
+    }
+
+    int getAlbumCount() {
+        return albumCount;
+    }
+
+    int getSongCount() {
+        return songCount;
+    }
+
+    // Bytes held outside the heap
+    long offHeapBytes() {
+        return (long) strings.capacity() + albums.capacity() + songs.capacity()
+                + 4L * titles.capacity() + 4L * artists.capacity();
+    }
+
+    // ----- Scanning queries -----
+
+    List<Album> findAlbumsByTitle(String title) {
+        String key = CatalogSnapshot.normalize(title);
+        List<Album> result = new ArrayList<>();
+        for (Album album : albums()) {
+            if (CatalogSnapshot.normalize(album.getTitle()).equals(key)) result.add(album);
+        }
+        return freeze(result);
+    }
+
+    List<Song> findSongsByArtist(String artist) {
+        String key = CatalogSnapshot.normalize(artist);
+        List<Song> result = new ArrayList<>();
+        for (Album album : albums()) {
+            if (CatalogSnapshot.normalize(album.getArtist()).equals(key)) result.addAll(album.getSongs());
+        }
+        return freeze(result);
+    }
+
+    List<Album> getAlbumsByGenre(String genre) {
+        String key = CatalogSnapshot.normalize(genre);
+        List<Album> result = new ArrayList<>();
+        for (Album album : albums()) {
+            if (CatalogSnapshot.normalize(album.getGenre()).equals(key)) result.add(album);
+        }
+        return freeze(result);
+    }
+
+    List<Song> getSongsByGenre(String genre) {
+        List<Song> result = new ArrayList<>();
+        for (Album album : getAlbumsByGenre(genre)) {
+            result.addAll(album.getSongs());
+        }
+        return freeze(result);
+    }
+
+    // Albums with from <= year <= to, oldest first
+    List<Album> getAlbumsByYearRange(int from, int to) {
+        List<Album> result = new ArrayList<>();
+        for (int ordinal = 0; ordinal < ordinals; ordinal++) {
+            int year = albumInt(ordinal, YEAR);
+            if (exists(ordinal) && year >= from && year <= to) result.add(new AlbumView(ordinal));
+        }
+        result.sort(Comparator.comparingInt(Album::getYear).thenComparing(Album::getTitle).thenComparing(Album::getArtist));
+        return freeze(result);
+    }
+
+    List<Song> searchSongsFuzzy(String query, int maxDistance, int limit) {
+        List<Song> candidates = new ArrayList<>();
+        for (Album album : albums()) {
+            candidates.addAll(album.getSongs());
+        }
+        return closest(candidates, Song::getTitle, query, maxDistance, limit);
+    }
+
+    List<Album> searchAlbumsFuzzy(String query, int maxDistance, int limit) {
+        return closest(albums(), Album::getTitle, query, maxDistance, limit);
+    }
+
+    List<String> searchArtistsFuzzy(String query, int maxDistance, int limit) {
+        Set<String> names = new LinkedHashSet<>();
+        for (Album album : albums()) {
+            names.add(album.getArtist());
+        }
+        return closest(names, name -> name, query, maxDistance, limit);
+    }
+
+    // Items whose key is within maxDistance edits of the query, closest first (as FuzzyIndex ranks them)
+    private static <T> List<T> closest(Collection<T> items, java.util.function.Function<T, String> key,
+                                       String query, int maxDistance, int limit) {
+        String normalized = FuzzyIndex.normalize(query);
+        if (normalized.isEmpty() || limit <= 0) return Collections.emptyList();
+        List<T> matches = new ArrayList<>();
+        List<int[]> ranks = new ArrayList<>(); // {match, distance, length difference}
+        for (T item : items) {
+            String candidate = FuzzyIndex.normalize(key.apply(item));
+            int distance = FuzzyIndex.distance(normalized, candidate, maxDistance);
+            if (distance <= maxDistance) {
+                ranks.add(new int[] { matches.size(), distance, Math.abs(candidate.length() - normalized.length()) });
+                matches.add(item);
+            }
+        }
+        ranks.sort((a, b) -> a[1] != b[1] ? Integer.compare(a[1], b[1]) : Integer.compare(a[2], b[2]));
+        List<T> result = new ArrayList<>(Math.min(limit, ranks.size()));
+        for (int i = 0; i < ranks.size() && result.size() < limit; i++) {
+            result.add(matches.get(ranks.get(i)[0]));
+        }
+        return result;
+    }
+
+    private static <T> List<T> freeze(List<T> list) {
+        return list.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(list);
+    }
+
+    // ----- Views -----
+
+    // An album decoded from its record on each call
+    private final class AlbumView extends Album {
+        private final int ordinal;
+
+        AlbumView(int ordinal) {
+            super(null, null, null, 0, Collections.emptyList());
+            this.ordinal = ordinal;
+        }
+
+        @Override
+        public String getTitle() {
+            return string(albumInt(ordinal, TITLE));
+        }
+
+        @Override
+        public String getArtist() {
+            return string(albumInt(ordinal, ARTIST));
+        }
+
+        @Override
+        public String getGenre() {
+            return string(albumInt(ordinal, GENRE));
+        }
+
+        @Override
+        public int getYear() {
+            return albumInt(ordinal, YEAR);
+        }
+
+        // Read-only list of song views
+        @Override
+        public List<Song> getSongs() {
+            int count = albumInt(ordinal, SONG_COUNT);
+            return new SongList(count);
+        }
+
+        @Override
+        public void addSong(Song song) {
+            throw new UnsupportedOperationException("Catalog albums are read-only");
+        }
+
+        private final class SongList extends AbstractList<Song> implements RandomAccess {
+            private final int size;
+
+            SongList(int size) {
+                this.size = size;
+            }
+
+            @Override
+            public Song get(int index) {
+                if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+                return new SongView(ordinal, index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        }
+    }
+
+    // A catalog song decoded from its album's record and its own record on each call
+    private final class SongView extends Song {
+        private final int ordinal;
+        private final int index;     // Position in the album
+
+        SongView(int ordinal, int index) {
+            super(MusicStore.songId(ordinal, trackAt(albumInt(ordinal, FIRST_SONG) + index)), null, null, null, null);
+            this.ordinal = ordinal;
+            this.index = index;
+        }
+
+        @Override
+        public String getTitle() {
+            return string(songs.getInt(SONG_RECORD * (albumInt(ordinal, FIRST_SONG) + index)));
+        }
+
+        @Override
+        public String getArtist() {
+            return string(albumInt(ordinal, ARTIST));
+        }
+
+        @Override
+        public String getAlbum() {
+            return string(albumInt(ordinal, TITLE));
+        }
+
+        @Override
+        public String getGenre() {
+            return string(albumInt(ordinal, GENRE));
+        }
+    }
+
+    // ----- Buffer access -----
+
+    private boolean exists(int ordinal) {
+        return ordinal >= 0 && ordinal < ordinals && albumInt(ordinal, SONG_COUNT) >= 0;
+    }
+
+    // Track number of the song record at a position in the song buffer
+    private int trackAt(int song) {
+        return songs.getInt(SONG_RECORD * song + 4);
+    }
+
+    private int albumInt(int ordinal, int field) {
+        return albums.getInt(ordinal * ALBUM_RECORD + field);
+    }
+
+    private String string(int offset) {
+        byte[] bytes = new byte[strings.getInt(offset)];
+        strings.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // True if the pooled string at the offset has exactly these UTF-8 bytes
+    private boolean stringEquals(int offset, byte[] bytes) {
+        if (strings.getInt(offset) != bytes.length) return false;
+        for (int i = 0; i < bytes.length; i++) {
+            if (strings.get(offset + 4 + i) != bytes[i]) return false;
+        }
+        return true;
+    }
+
+    // Table with at least twice as many slots as keys (a power of two)
+    private static IntBuffer newTable(int keys) {
+        int capacity = Integer.highestOneBit(Math.max(4, keys * 2 - 1)) << 1;
+        return ByteBuffer.allocateDirect(4 * capacity).asIntBuffer();
+    }
+
+    // Insert the ordinal under the string at keyOffset; replace decides who wins a duplicate key
+    private void put(IntBuffer table, int keyOffset, int ordinal, boolean replace) {
+        String key = string(keyOffset);
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int mask = table.capacity() - 1;
+        int field = table == titles ? TITLE : ARTIST;
+        for (int slot = IntObjectMap.mix(key.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+            int stored = table.get(slot);
+            if (stored == 0) {
+                table.put(slot, ordinal + 1);
+                return;
+            }
+            if (stringEquals(albumInt(stored - 1, field), bytes)) {
+                if (replace) table.put(slot, ordinal + 1);
+                return;
+            }
+        }
+    }
+
+    // Ordinal stored under the key, or -1
+    private int find(IntBuffer table, String key, int field) {
+        if (key == null) return -1;
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int mask = table.capacity() - 1;
+        for (int slot = IntObjectMap.mix(key.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+            int stored = table.get(slot);
+            if (stored == 0) return -1;
+            if (stringEquals(albumInt(stored - 1, field), bytes)) return stored - 1;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+/**
+ * PersistentMap.java
+ *
+ * Immutable hash map (a hash array mapped trie). plus() and minus() return a new map
+ * that shares every untouched branch with the old one, so an update copies only the
+ * O(log32 n) nodes on the path to the changed key. Old versions stay valid and can be
+ * read by any number of threads without locking.
+ *
+ * Author: Haobin Yan
+ */
+
+package model;
+
+import java.util.*;
+
+public final class PersistentMap<K, V> implements Iterable<Map.Entry<K, V>> {
+    private static final int BITS = 5;                     // Hash bits consumed per trie level
+    private static final int MASK = (1 << BITS) - 1;
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(new Node(0, new Object[0]), 0);
+
+    private final Node root;     // Root node (never null)
+    private final int size;      // Number of keys
+
+    // Inner trie node: a 32-bit occupancy bitmap plus one compact slot per set bit.
+    // A slot holds either a Leaf (one key), a Collision (keys with equal hashes) or a Node.
+    private static final class Node {
+        final int bitmap;
+        final Object[] slots;
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+    }
+
+    private static final class Leaf implements Map.Entry<Object, Object> {
+        final int hash;
+        final Object key;
+        final Object value;
+
+        Leaf(int hash, Object key, Object value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        public Object getKey() {
+            return key;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public Object setValue(Object value) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final class Collision {
+        final int hash;
+        final Leaf[] leaves;
+
+        Collision(int hash, Leaf[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+    }
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    // The empty map
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(K key) {
+        return find(key) != null;
+    }
+
+    public V get(K key) {
+        return getOrDefault(key, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(K key, V defaultValue) {
+        Leaf leaf = find(key);
+        return leaf == null ? defaultValue : (V) leaf.value;
+    }
+
+    // A map with the key bound to the value; returns this map if nothing changes
+    public PersistentMap<K, V> plus(K key, V value) {
+        int[] added = new int[1];
+        Node newRoot = put(root, hash(key), key, value, 0, added);
+        return newRoot == root ? this : new PersistentMap<>(newRoot, size + added[0]);
+    }
+
+    // A map without the key; returns this map if the key is absent
+    public PersistentMap<K, V> minus(K key) {
+        Object newRoot = remove(root, hash(key), key, 0);
+        if (newRoot == root) return this;
+        return new PersistentMap<>(asRoot(newRoot), size - 1);
+    }
+
+    // Iterate over all entries (order is unspecified)
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<Map.Entry<K, V>> iterator() {
+        Iterator<Leaf> leaves = new LeafIterator(root);
+        return new Iterator<Map.Entry<K, V>>() {
+            public boolean hasNext() {
+                return leaves.hasNext();
+            }
+
+            public Map.Entry<K, V> next() {
+                return (Map.Entry<K, V>) (Map.Entry<?, ?>) leaves.next();
+            }
+        };
+    }
+
+    // Read-only view of the values, backed by this (immutable) map
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Iterator<V> iterator() {
+                Iterator<Leaf> leaves = new LeafIterator(root);
+                return new Iterator<V>() {
+                    public boolean hasNext() {
+                        return leaves.hasNext();
+                    }
+
+                    public V next() {
+                        return (V) leaves.next().value;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    // ----- Trie operations -----
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16); // spread high bits into the low levels
+    }
+
+    private Leaf find(Object key) {
+        int hash = hash(key);
+        Node node = root;
+        for (int shift = 0; ; shift += BITS) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((node.bitmap & bit) == 0) return null;
+            Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (slot instanceof Node) {
+                node = (Node) slot;
+            } else if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                return leaf.hash == hash && leaf.key.equals(key) ? leaf : null;
+            } else {
+                Collision collision = (Collision) slot;
+                if (collision.hash != hash) return null;
+                for (Leaf leaf : collision.leaves) {
+                    if (leaf.key.equals(key)) return leaf;
+                }
+                return null;
+            }
+        }
+    }
+
+    // Insert into a node, copying only the path that changes; added[0] becomes 1 for a new key
+    private static Node put(Node node, int hash, Object key, Object value, int shift, int[] added) {
+        int bit = 1 << ((hash >>> shift) & MASK);
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        if ((node.bitmap & bit) == 0) {
+            Object[] slots = new Object[node.slots.length + 1];
+            System.arraycopy(node.slots, 0, slots, 0, index);
+            slots[index] = new Leaf(hash, key, value);
+            System.arraycopy(node.slots, index, slots, index + 1, node.slots.length - index);
+            added[0] = 1;
+            return new Node(node.bitmap | bit, slots);
+        }
+        Object slot = node.slots[index];
+        Object replacement;
+        if (slot instanceof Node) {
+            replacement = put((Node) slot, hash, key, value, shift + BITS, added);
+        } else if (slot instanceof Leaf) {
+            Leaf leaf = (Leaf) slot;
+            if (leaf.hash == hash && leaf.key.equals(key)) {
+                if (leaf.value == value) return node;
+                replacement = new Leaf(hash, key, value);
+            } else if (leaf.hash == hash) {
+                replacement = new Collision(hash, new Leaf[] { leaf, new Leaf(hash, key, value) });
+                added[0] = 1;
+            } else {
+                replacement = split(leaf, leaf.hash, new Leaf(hash, key, value), hash, shift + BITS);
+                added[0] = 1;
+            }
+        } else {
+            Collision collision = (Collision) slot;
+            if (collision.hash == hash) {
+                replacement = putInCollision(collision, key, value, added);
+                if (replacement == collision) return node;
+            } else {
+                replacement = split(collision, collision.hash, new Leaf(hash, key, value), hash, shift + BITS);
+                added[0] = 1;
+            }
+        }
+        if (replacement == slot) return node;
+        Object[] slots = node.slots.clone();
+        slots[index] = replacement;
+        return new Node(node.bitmap, slots);
+    }
+
+    private static Collision putInCollision(Collision collision, Object key, Object value, int[] added) {
+        Leaf[] leaves = collision.leaves;
+        for (int i = 0; i < leaves.length; i++) {
+            if (leaves[i].key.equals(key)) {
+                if (leaves[i].value == value) return collision;
+                Leaf[] copy = leaves.clone();
+                copy[i] = new Leaf(collision.hash, key, value);
+                return new Collision(collision.hash, copy);
+            }
+        }
+        Leaf[] copy = Arrays.copyOf(leaves, leaves.length + 1);
+        copy[leaves.length] = new Leaf(collision.hash, key, value);
+        added[0] = 1;
+        return new Collision(collision.hash, copy);
+    }
+
+    // Build the smallest subtree that tells two leaves (or collisions) with different hashes apart
+    private static Node split(Object a, int hashA, Object b, int hashB, int shift) {
+        int bitA = 1 << ((hashA >>> shift) & MASK);
+        int bitB = 1 << ((hashB >>> shift) & MASK);
+        if (bitA == bitB) {
+            return new Node(bitA, new Object[] { split(a, hashA, b, hashB, shift + BITS) });
+        }
+        Object[] slots = Integer.compareUnsigned(bitA, bitB) < 0 ? new Object[] { a, b } : new Object[] { b, a };
+        return new Node(bitA | bitB, slots);
+    }
+
+    // Remove from a node; returns the same node if absent, or a Leaf/Collision when a
+    // branch shrinks to a single entry so it can be pulled up into its parent
+    private static Object remove(Node node, int hash, Object key, int shift) {
+        int bit = 1 << ((hash >>> shift) & MASK);
+        if ((node.bitmap & bit) == 0) return node;
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        Object slot = node.slots[index];
+        Object replacement;
+        if (slot instanceof Node) {
+            replacement = remove((Node) slot, hash, key, shift + BITS);
+            if (replacement == slot) return node;
+        } else if (slot instanceof Leaf) {
+            Leaf leaf = (Leaf) slot;
+            if (leaf.hash != hash || !leaf.key.equals(key)) return node;
+            replacement = null;
+        } else {
+            Collision collision = (Collision) slot;
+            replacement = removeFromCollision(collision, hash, key);
+            if (replacement == collision) return node;
+        }
+        if (replacement == null) {
+            if (node.slots.length == 1) return null;
+            if (node.slots.length == 2 && shift > 0) {
+                Object other = node.slots[1 - index];
+                if (!(other instanceof Node)) return other; // pull the last entry up
+            }
+            Object[] slots = new Object[node.slots.length - 1];
+            System.arraycopy(node.slots, 0, slots, 0, index);
+            System.arraycopy(node.slots, index + 1, slots, index, slots.length - index);
+            return new Node(node.bitmap & ~bit, slots);
+        }
+        if (node.slots.length == 1 && shift > 0 && !(replacement instanceof Node)) {
+            return replacement; // this node only wrapped a single entry
+        }
+        Object[] slots = node.slots.clone();
+        slots[index] = replacement;
+        return new Node(node.bitmap, slots);
+    }
+
+    private static Object removeFromCollision(Collision collision, int hash, Object key) {
+        if (collision.hash != hash) return collision;
+        Leaf[] leaves = collision.leaves;
+        for (int i = 0; i < leaves.length; i++) {
+            if (leaves[i].key.equals(key)) {
+                if (leaves.length == 2) return leaves[1 - i];
+                Leaf[] copy = new Leaf[leaves.length - 1];
+                System.arraycopy(leaves, 0, copy, 0, i);
+                System.arraycopy(leaves, i + 1, copy, i, copy.length - i);
+                return new Collision(hash, copy);
+            }
+        }
+        return collision;
+    }
+
+    // The root must stay a Node, even when removal leaves nothing or a single entry
+    private static Node asRoot(Object result) {
+        if (result == null) return new Node(0, new Object[0]);
+        if (result instanceof Node) return (Node) result;
+        int hash = result instanceof Leaf ? ((Leaf) result).hash : ((Collision) result).hash;
+        return new Node(1 << (hash & MASK), new Object[] { result });
+    }
+
+    // Depth-first walk over every leaf of the trie
+    private static final class LeafIterator implements Iterator<Leaf> {
+        private final Deque<Object[]> slotStack = new ArrayDeque<>();
+        private final Deque<Integer> indexStack = new ArrayDeque<>();
+        private Leaf[] collision;
+        private int collisionIndex;
+        private Leaf next;
+
+        LeafIterator(Node root) {
+            slotStack.push(root.slots);
+            indexStack.push(0);
+            advance();
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Leaf next() {
+            if (next == null) throw new NoSuchElementException();
+            Leaf result = next;
+            advance();
+            return result;
+        }
+
+        private void advance() {
+            next = null;
+            if (collision != null) {
+                if (collisionIndex < collision.length) {
+                    next = collision[collisionIndex++];
+                    return;
+                }
+                collision = null;
+            }
+            while (!slotStack.isEmpty()) {
+                Object[] slots = slotStack.peek();
+                int index = indexStack.pop();
+                if (index == slots.length) {
+                    slotStack.pop();
+                    continue;
+                }
+                indexStack.push(index + 1);
+                Object slot = slots[index];
+                if (slot instanceof Node) {
+                    slotStack.push(((Node) slot).slots);
+                    indexStack.push(0);
+                } else if (slot instanceof Leaf) {
+                    next = (Leaf) slot;
+                    return;
+                } else {
+                    collision = ((Collision) slot).leaves;
+                    next = collision[0];
+                    collisionIndex = 1;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -5,21 +5,28 @@
  * A playlist has a name and a list of songs, and supports adding, removing,
  * shuffling, and iterating through songs.
  *
+ * Songs are kept in a SongSequence (a balanced tree ordered by position), so inserting,
+ * removing and moving songs anywhere in a long playlist takes O(log n), as do lookups by
+ * position; iteration stays O(1) per song.
+ *
  * Author:Haobin Yan
  */
 
 package model;
 
 import java.util.*;
+import view.ConsoleRenderer;
 
 public class PlayList implements Iterable<Song> {
     private String name;           // Name of the playlist
-    private List<Song> songs;      // List of songs in the playlist
+    private SongSequence songs;                       // Songs of the playlist, in order
+    private Map<Integer, SongSequence.Node> nodes;    // Song ID → its place in the sequence
 
     // Constructor: creates a playlist with the given name
     public PlayList(String name) {
         this.name = name;
-        this.songs = new ArrayList<>();
+        this.songs = new SongSequence();
+        this.nodes = new HashMap<>();
     }
 
     // Returns the name of the playlist
@@ -27,34 +34,95 @@ public class PlayList implements Iterable<Song> {
         return name;
     }
 
-    // Adds a song if it's not already in the playlist
+    // Adds a song at the end if it's not already in the playlist
     public void addSong(Song song) {
-        if (!songs.contains(song)) {
-            songs.add(song);
-        }
+        insertSong(songs.size(), song);
+    }
+
+    // Inserts a song at a position (0 to size) if it's not already in the playlist
+    public boolean insertSong(int index, Song song) {
+        if (nodes.containsKey(song.getId())) return false;
+        nodes.put(song.getId(), songs.insert(index, song));
+        return true;
     }
 
     // Removes the song from the playlist
     public void removeSong(Song song) {
-        songs.remove(song);
+        SongSequence.Node node = nodes.remove(song.getId());
+        if (node != null) {
+            songs.removeAt(songs.indexOf(node));
+        }
+    }
+
+    // Removes and returns the song at a position
+    public Song removeSongAt(int index) {
+        Song song = songs.removeAt(index).song;
+        nodes.remove(song.getId());
+        return song;
+    }
+
+    // Moves the song at `from` so that it ends up at position `to`
+    public void moveSong(int from, int to) {
+        songs.move(from, 1, to);
+    }
+
+    // Moves `count` songs starting at `from` so that the first of them ends up at `to`
+    // (a position in the playlist as it is after the move)
+    public void moveSongs(int from, int count, int to) {
+        songs.move(from, count, to);
+    }
+
+    // Song at a position
+    public Song getSong(int index) {
+        return songs.get(index);
+    }
+
+    // Position of the song, or -1 if it is not in the playlist
+    public int indexOf(Song song) {
+        SongSequence.Node node = nodes.get(song.getId());
+        return node == null ? -1 : songs.indexOf(node);
+    }
+
+    public int size() {
+        return songs.size();
+    }
+
+    // Checks whether the song with the given ID is in the playlist
+    public boolean containsSong(int songId) {
+        return nodes.containsKey(songId);
     }
 
     // Returns a copy of the song list
     public List<Song> getSongs() {
-        return new ArrayList<>(songs);
+        List<Song> copy = new ArrayList<>(songs.size());
+        for (Song song : songs) {
+            copy.add(song);
+        }
+        return copy;
     }
 
     // Shuffles the order of songs in the playlist
     public void shuffle() {
-        Collections.shuffle(songs);
+        List<Song> order = getSongs();
+        Collections.shuffle(order);
+        nodes.clear();
+        songs.setAll(order, nodes);
     }
 
     // Displays the playlist name and its songs to the console
     public void displayPlayList() {
-        System.out.println("Playlist: " + name);
-        for (Song song : songs) {
-            System.out.println(" - " + song);
-        }
+        ConsoleRenderer out = ConsoleRenderer.console();
+        render(out);
+        out.flush();
+    }
+
+    // Writes the playlist name and its songs through a shared renderer
+    public void render(ConsoleRenderer out) {
+        out.line("Playlist: " + name);
+        out.renderAll(songs.iterator(), (song, row) -> {
+            row.append(" - ");
+            song.appendTo(row);
+        });
     }
 
     // Allows iteration over the songs using for-each
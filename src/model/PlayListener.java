@@ -0,0 +1,16 @@
+/**
+ * PlayListener.java
+ *
+ * Receives play events from LibraryModel.playSong, so shared services (recommendations,
+ * charts, listener statistics) can learn from every user's plays as they happen.
+ * Listeners are called on the playing thread and must be thread-safe.
+ *
+ * Author: Haobin Yan
+ */
+
+package model;
+
+public interface PlayListener {
+    // Called once per play, after the library has recorded it
+    void songPlayed(String username, Song song, long timeMillis);
+}
@@ -0,0 +1,307 @@
+/**
+ * QueryCache.java
+ *
+ * Bounded cache of catalog query results shared by every session. Each result is stored
+ * with the catalog version it was computed from and only served while that is still the
+ * current version, so a reload invalidates everything at once without a sweep: stale
+ * entries are dropped the next time they are looked up, or evicted like any other.
+ *
+ * The cache is split into segments by key hash, each with its own lock, so concurrent
+ * readers of different queries rarely wait for each other. Every segment is an LRU list
+ * bounded by entry count and by weight (a list result weighs one plus its length) with
+ * TinyLFU admission: a small count-min sketch remembers roughly how often each key was
+ * asked for recently, and a new result only displaces least recently used entries whose
+ * keys are asked for no more often than its own; if any is asked for more, the result is
+ * turned away before anything is evicted. One-off queries therefore cannot flush hot ones.
+ *
+ * Results must be immutable, since every caller gets the same object. On a miss the query
+ * runs outside the lock; two threads missing the same key at once may both run it.
+ *
+ * Author: Haobin Yan
+ */
+
+package model;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+public class QueryCache {
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+    public static final long DEFAULT_MAX_WEIGHT = 1 << 20;  // About a million list elements
+    private static final int SEGMENTS = 16;                 // A power of two
+
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();     // Entries pushed out to make room
+    private final LongAdder rejections = new LongAdder();    // Results not admitted (too rare or too heavy)
+    private final LongAdder invalidations = new LongAdder(); // Entries dropped for an old catalog version
+
+    // One cached result
+    private static final class Entry {
+        final Object value;
+        final long version;     // Catalog version the value was computed from
+        final long weight;
+
+        Entry(Object value, long version, long weight) {
+            this.value = value;
+            this.version = version;
+            this.weight = weight;
+        }
+    }
+
+    // Constructor: a cache with the default bounds
+    public QueryCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_WEIGHT);
+    }
+
+    // Constructor: holds at most maxEntries results weighing at most maxWeight in total
+    public QueryCache(int maxEntries, long maxWeight) {
+        if (maxEntries < 1 || maxWeight < 1) throw new IllegalArgumentException("cache bounds must be positive");
+        segments = new Segment[SEGMENTS];
+        int entries = Math.max(1, maxEntries / SEGMENTS);
+        long weight = Math.max(1, maxWeight / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(entries, weight);
+        }
+    }
+
+    // A cache key from a query name and its arguments (equal when all parts are equal)
+    public static Object key(Object... parts) {
+        return Arrays.asList(parts);
+    }
+
+    // The result of the query at this catalog version: cached if present, otherwise
+    // computed now and cached if there is room and the key is asked for often enough
+    @SuppressWarnings("unchecked")
+    public <V> V get(Object key, long version, Supplier<V> query) {
+        int hash = IntObjectMap.mix(key.hashCode());
+        Segment segment = segments[hash & (SEGMENTS - 1)];
+        Object cached = segment.get(key, hash, version);
+        if (cached != null) {
+            hits.increment();
+            return (V) cached;
+        }
+        misses.increment();
+        V value = query.get();
+        if (value != null) {
+            segment.put(key, hash, new Entry(value, version, weigh(value)));
+        }
+        return value;
+    }
+
+    // Drop every cached result
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    // Share of lookups served from the cache (0 before the first lookup)
+    public double getHitRate() {
+        long h = getHits();
+        long total = h + getMisses();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    // Number of cached results
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    // Total weight of the cached results
+    public long weight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            weight += segment.weight();
+        }
+        return weight;
+    }
+
+    // A list or other collection weighs one per element, anything else one
+    private static long weigh(Object value) {
+        return value instanceof Collection ? 1 + ((Collection<?>) value).size() : 1;
+    }
+
+    // ----- Segments -----
+
+    // One LRU list with its bounds and frequency sketch, guarded by its own lock
+    private final class Segment {
+        private final LinkedHashMap<Object, Entry> entries;  // Least recently used first
+        private final FrequencySketch frequencies;
+        private final int maxEntries;
+        private final long maxWeight;
+        private long weight;
+
+        Segment(int maxEntries, long maxWeight) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true);
+            this.frequencies = new FrequencySketch(maxEntries);
+            this.maxEntries = maxEntries;
+            this.maxWeight = maxWeight;
+        }
+
+        // The value cached for the key at this version, or null
+        synchronized Object get(Object key, int hash, long version) {
+            frequencies.increment(hash);
+            Entry entry = entries.get(key);
+            if (entry == null) return null;
+            if (entry.version != version) {
+                if (entry.version < version) {
+                    remove(key, entry);
+                    invalidations.increment();
+                }
+                return null;
+            }
+            return entry.value;
+        }
+
+        // Store a computed result, evicting least recently used entries that are asked
+        // for less often than the new key. The victims are picked and checked first: if
+        // one of them is asked for more, the result is rejected and nothing is evicted.
+        synchronized void put(Object key, int hash, Entry entry) {
+            if (entry.weight > maxWeight) {
+                rejections.increment();
+                return;
+            }
+            Entry previous = entries.get(key);
+            if (previous != null) {
+                if (previous.version >= entry.version) return; // an equal or newer result is already in
+                remove(key, previous);
+            }
+            int frequency = frequencies.frequency(hash);
+            int victims = 0;
+            int count = entries.size();
+            long freed = 0;
+            Iterator<Map.Entry<Object, Entry>> eldest = entries.entrySet().iterator();
+            while (count - victims >= maxEntries || weight - freed + entry.weight > maxWeight) {
+                Map.Entry<Object, Entry> victim = eldest.next();
+                boolean stale = victim.getValue().version < entry.version;
+                if (!stale && frequencies.frequency(IntObjectMap.mix(victim.getKey().hashCode())) > frequency) {
+                    rejections.increment();
+                    return;
+                }
+                freed += victim.getValue().weight;
+                victims++;
+            }
+            eldest = entries.entrySet().iterator();
+            for (int i = 0; i < victims; i++) {
+                Entry victim = eldest.next().getValue();
+                weight -= victim.weight;
+                eldest.remove();
+                if (victim.version < entry.version) {
+                    invalidations.increment();
+                } else {
+                    evictions.increment();
+                }
+            }
+            entries.put(key, entry);
+            weight += entry.weight;
+        }
+
+        synchronized void clear() {
+            entries.clear();
+            weight = 0;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        synchronized long weight() {
+            return weight;
+        }
+
+        private void remove(Object key, Entry entry) {
+            entries.remove(key);
+            weight -= entry.weight;
+        }
+    }
+
+    // Count-min sketch of recent key frequencies: four 4-bit counters per key, each in a
+    // different row; the smallest of them is the estimate. It has 16 counters per entry
+    // the segment can hold, and all counters are halved after ten lookups per entry, so
+    // old popularity fades.
+    private static final class FrequencySketch {
+        private static final int[] SEEDS = { 0x97CB3127, 0x0BA4D2C5, 0x5BD1E995, 0x1B873593 };
+        private static final int MIN_KEYS = 64;    // Keys tracked even for a tiny segment
+        private final long[] table;       // 16 four-bit counters per long
+        private final int mask;           // Table length - 1
+        private final int sampleSize;     // Increments between halvings
+        private int increments;
+
+        FrequencySketch(int maxEntries) {
+            int keys = Math.max(MIN_KEYS, maxEntries);
+            int length = 1;
+            while (length < keys) length <<= 1;
+            table = new long[length];
+            mask = length - 1;
+            sampleSize = 10 * keys;
+        }
+
+        // Count one more occurrence of the hash (counters stop at 15)
+        void increment(int hash) {
+            for (int row = 0; row < SEEDS.length; row++) {
+                int index = indexOf(hash, row);
+                int shift = counterShift(hash, row);
+                if (((table[index] >>> shift) & 0xF) < 15) {
+                    table[index] += 1L << shift;
+                }
+            }
+            if (++increments >= sampleSize) {
+                halve();
+            }
+        }
+
+        // Estimated recent occurrences of the hash
+        int frequency(int hash) {
+            int frequency = 15;
+            for (int row = 0; row < SEEDS.length; row++) {
+                int count = (int) ((table[indexOf(hash, row)] >>> counterShift(hash, row)) & 0xF);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * SEEDS[row];
+            return (h ^ (h >>> 17)) & mask;
+        }
+
+        // Which of the 16 counters in the long this row uses, as a bit shift
+        private static int counterShift(int hash, int row) {
+            return ((hash >>> (row * 4 + 8)) & 0xF) << 2;
+        }
+
+        private void halve() {
+            increments /= 2;
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * RatingIndex.java
+ *
+ * The single source of ratings for a LibraryModel. A song's effective rating is the
+ * rating the user gave it, or else the song's own default (Song.getRating()). Songs are
+ * kept in one bucket per rating value (0 to 5) and moved between buckets on every rate
+ * call, so rating-ordered listings are a walk over six buckets (O(n), no comparison sort)
+ * and "rated at least N" only visits the matching buckets (O(result)).
+ * A song's bucket is recorded when it is added and changed only by rate(), so a song
+ * whose default rating is changed meanwhile is still found in the bucket it is in.
+ * Within a bucket, songs stay in the order they got that rating.
+ *
+ * Author: Haobin Yan
+ */
+
+package model;
+
+import java.util.*;
+
+public class RatingIndex {
+    public static final int MAX_RATING = 5;
+
+    private final IntIntMap explicit;                          // Song ID → rating given by the user
+    private final IntIntMap bucketById;                        // Song ID → bucket it is in (tracked songs)
+    private final List<LinkedHashSet<Song>> buckets;           // Effective rating → songs with it
+
+    public RatingIndex() {
+        explicit = new IntIntMap();
+        bucketById = new IntIntMap();
+        buckets = new ArrayList<>(MAX_RATING + 1);
+        for (int i = 0; i <= MAX_RATING; i++) {
+            buckets.add(new LinkedHashSet<>());
+        }
+    }
+
+    // Start tracking a song at its default rating
+    public void add(Song song) {
+        if (bucketById.getOrDefault(song.getId(), -1) >= 0) return; // already tracked
+        int bucket = bucketOf(song);
+        bucketById.put(song.getId(), bucket);
+        buckets.get(bucket).add(song);
+    }
+
+    // Stop tracking a song and forget its rating
+    public void remove(Song song) {
+        int bucket = bucketById.getOrDefault(song.getId(), -1);
+        if (bucket >= 0) {
+            buckets.get(bucket).remove(song);
+            bucketById.remove(song.getId());
+        }
+        explicit.remove(song.getId());
+    }
+
+    // Set the user's rating (1-5) for a tracked song
+    public void rate(Song song, int rating) {
+        int from = bucketById.getOrDefault(song.getId(), -1);
+        if (from < 0) return; // not tracked
+        buckets.get(from).remove(song);
+        explicit.put(song.getId(), rating);
+        bucketById.put(song.getId(), rating);
+        buckets.get(rating).add(song);
+    }
+
+    // The rating the user gave the song, or null if none
+    public Integer getExplicitRating(int songId) {
+        int rating = explicit.get(songId);
+        return rating == 0 ? null : rating;
+    }
+
+    // The user's rating if any, otherwise the song's default (as it was when added)
+    public int getEffectiveRating(Song song) {
+        int bucket = bucketById.getOrDefault(song.getId(), -1);
+        return bucket >= 0 ? bucket : bucketOf(song);
+    }
+
+    // Call the consumer with every (song ID, user rating) pair, without allocating
+    public void forEachExplicitRating(IntIntMap.EntryConsumer consumer) {
+        explicit.forEach(consumer);
+    }
+
+    // All songs, highest effective rating first
+    public List<Song> descending() {
+        return atLeast(0);
+    }
+
+    // Songs whose effective rating is at least `minimum`, highest first
+    public List<Song> atLeast(int minimum) {
+        int from = Math.max(0, minimum);
+        int size = 0;
+        for (int r = MAX_RATING; r >= from; r--) {
+            size += buckets.get(r).size();
+        }
+        List<Song> result = new ArrayList<>(size);
+        for (int r = MAX_RATING; r >= from; r--) {
+            result.addAll(buckets.get(r));
+        }
+        return result;
+    }
+
+    // Number of songs whose effective rating is exactly `rating`
+    public int countRated(int rating) {
+        return rating < 0 || rating > MAX_RATING ? 0 : buckets.get(rating).size();
+    }
+
+    private int bucketOf(Song song) {
+        int rating = explicit.get(song.getId());
+        int value = rating != 0 ? rating : song.getRating();
+        return Math.max(0, Math.min(MAX_RATING, value));
+    }
+}
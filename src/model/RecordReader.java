@@ -0,0 +1,248 @@
+/**
+ * RecordReader.java
+ *
+ * Byte-level reader for the comma-separated text files used by the store and the
+ * user libraries. File bytes are read through a FileChannel into one reusable buffer,
+ * lines and fields are found by scanning for newline and comma bytes, and Strings are
+ * only created for the fields a caller actually asks for. One reader can be reopened
+ * on many files, so loading the whole catalog reuses the same buffer.
+ *
+ * Results match BufferedReader.readLine() + String.split(",") + trim(): lines end at
+ * \n, \r or \r\n, trailing empty fields are not counted, and a line without commas
+ * counts as one field.
+ *
+ * Author: Haobin Yan
+ */
+
+package model;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+
+public class RecordReader implements Closeable {
+    private static final int INITIAL_CAPACITY = 8192;   // Starting buffer size in bytes
+    private static final int INITIAL_FIELDS = 8;        // Starting size of the field bound arrays
+
+    private final Charset charset;     // Charset used for the Strings that are kept
+    private ByteBuffer buffer;         // Reused heap buffer; unread bytes are [position, limit)
+    private FileChannel channel;       // Currently open file, or null
+    private boolean endOfFile;         // True once the channel has no more bytes
+    private boolean skipLineFeed;      // Last line ended with \r, so a leading \n belongs to it
+    private int lineStart;             // Current line bounds in the buffer's array
+    private int lineEnd;
+    private int[] fieldStarts;         // Raw field bounds within the current line
+    private int[] fieldEnds;
+    private int fieldCount;            // Number of fields, counted the way split(",") does
+
+    // Constructor: a reader with no file open yet
+    public RecordReader() {
+        this.charset = Charset.defaultCharset();
+        this.buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+        this.buffer.limit(0);
+        this.fieldStarts = new int[INITIAL_FIELDS];
+        this.fieldEnds = new int[INITIAL_FIELDS];
+    }
+
+    // Open a file for reading, closing whatever was open before
+    public void open(Path path) throws IOException {
+        close();
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        buffer.clear();
+        buffer.limit(0);
+        endOfFile = false;
+        skipLineFeed = false;
+        fieldCount = 0;
+    }
+
+    // Advance to the next line; returns false at the end of the file
+    public boolean nextLine() throws IOException {
+        if (channel == null) return false;
+        if (skipLineFeed) {
+            skipLineFeed = false;
+            if (!buffer.hasRemaining()) fill();
+            if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n') {
+                buffer.position(buffer.position() + 1);
+            }
+        }
+        byte[] bytes = buffer.array();
+        int scanFrom = buffer.position();
+        while (true) {
+            int end = buffer.limit();
+            for (int i = scanFrom; i < end; i++) {
+                byte b = bytes[i];
+                if (b == '\n' || b == '\r') {
+                    setLine(buffer.position(), i);
+                    buffer.position(i + 1);
+                    skipLineFeed = b == '\r';
+                    return true;
+                }
+            }
+            if (endOfFile) {
+                if (buffer.position() == end) return false;
+                setLine(buffer.position(), end); // last line without a terminator
+                buffer.position(end);
+                return true;
+            }
+            int scanned = end - buffer.position();
+            fill();
+            bytes = buffer.array();
+            scanFrom = buffer.position() + scanned;
+        }
+    }
+
+    // Number of fields on the current line
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    // A field with surrounding whitespace trimmed
+    public String field(int i) {
+        checkField(i);
+        int start = trimStart(fieldStarts[i], fieldEnds[i]);
+        int end = trimEnd(start, fieldEnds[i]);
+        return new String(buffer.array(), start, end - start, charset);
+    }
+
+    // A field exactly as it appears in the file
+    public String rawField(int i) {
+        checkField(i);
+        return new String(buffer.array(), fieldStarts[i], fieldEnds[i] - fieldStarts[i], charset);
+    }
+
+    // The whole current line (commas included) with surrounding whitespace trimmed
+    public String line() {
+        int start = trimStart(lineStart, lineEnd);
+        int end = trimEnd(start, lineEnd);
+        return new String(buffer.array(), start, end - start, charset);
+    }
+
+    // Whether the raw field starts with the given ASCII text, without creating a String
+    public boolean rawFieldStartsWith(int i, String prefix) {
+        checkField(i);
+        int start = fieldStarts[i];
+        if (fieldEnds[i] - start < prefix.length()) return false;
+        byte[] bytes = buffer.array();
+        for (int k = 0; k < prefix.length(); k++) {
+            if (bytes[start + k] != prefix.charAt(k)) return false;
+        }
+        return true;
+    }
+
+    // Whether the raw field equals the given ASCII text, without creating a String
+    public boolean rawFieldEquals(int i, String text) {
+        checkField(i);
+        return fieldEnds[i] - fieldStarts[i] == text.length() && rawFieldStartsWith(i, text);
+    }
+
+    // Parse a trimmed field as an int, with the same rules as Integer.parseInt
+    public int intField(int i) {
+        return intField(i, 0);
+    }
+
+    // Parse a field as an int after skipping the given number of leading bytes
+    public int intField(int i, int skip) {
+        checkField(i);
+        int start = trimStart(Math.min(fieldStarts[i] + skip, fieldEnds[i]), fieldEnds[i]);
+        int end = trimEnd(start, fieldEnds[i]);
+        byte[] bytes = buffer.array();
+        if (start == end) throw new NumberFormatException("For input string: \"\"");
+        boolean negative = bytes[start] == '-';
+        int k = (negative || bytes[start] == '+') ? start + 1 : start;
+        if (k == end) throw numberFormat(start, end);
+        long value = 0;
+        for (; k < end; k++) {
+            int digit = bytes[k] - '0';
+            if (bytes[k] < 0) {
+                // Non-ASCII digits are rare; let the JDK handle them
+                return Integer.parseInt(new String(bytes, start, end - start, charset));
+            }
+            if (digit < 0 || digit > 9) throw numberFormat(start, end);
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) throw numberFormat(start, end);
+        }
+        if (negative) value = -value;
+        if (value > Integer.MAX_VALUE) throw numberFormat(start, end);
+        return (int) value;
+    }
+
+    // Close the current file; the buffer is kept for the next open()
+    @Override
+    public void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing useful to do for a read-only channel
+            }
+            channel = null;
+        }
+    }
+
+    // Move unread bytes to the front, growing the buffer if a line fills it, then read more
+    private void fill() throws IOException {
+        if (buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+            ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+            bigger.put(buffer);
+            buffer = bigger;
+        } else {
+            buffer.compact();
+        }
+        int read = channel.read(buffer);
+        if (read < 0) endOfFile = true;
+        buffer.flip();
+    }
+
+    // Record the line bounds and find the field bounds within it
+    private void setLine(int start, int end) {
+        lineStart = start;
+        lineEnd = end;
+        byte[] bytes = buffer.array();
+        int count = 0;
+        int fieldStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || bytes[i] == ',') {
+                if (count == fieldStarts.length) {
+                    fieldStarts = java.util.Arrays.copyOf(fieldStarts, count * 2);
+                    fieldEnds = java.util.Arrays.copyOf(fieldEnds, count * 2);
+                }
+                fieldStarts[count] = fieldStart;
+                fieldEnds[count] = i;
+                count++;
+                fieldStart = i + 1;
+            }
+        }
+        // split(",") drops trailing empty fields, except when the line has no comma at all
+        if (count > 1) {
+            while (count > 0 && fieldStarts[count - 1] == fieldEnds[count - 1]) {
+                count--;
+            }
+        }
+        fieldCount = count;
+    }
+
+    private void checkField(int i) {
+        if (i < 0 || i >= fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + i + " of " + fieldCount);
+        }
+    }
+
+    // Same whitespace rule as String.trim(): anything up to and including ' '
+    private int trimStart(int start, int end) {
+        byte[] bytes = buffer.array();
+        while (start < end && (bytes[start] & 0xFF) <= ' ') start++;
+        return start;
+    }
+
+    private int trimEnd(int start, int end) {
+        byte[] bytes = buffer.array();
+        while (end > start && (bytes[end - 1] & 0xFF) <= ' ') end--;
+        return end;
+    }
+
+    private NumberFormatException numberFormat(int start, int end) {
+        return new NumberFormatException("For input string: \"" + new String(buffer.array(), start, end - start, charset) + "\"");
+    }
+}
@@ -4,20 +4,40 @@
  * Represents a single song with metadata such as title, artist, album, genre, and rating.
  * Used as a core data type throughout the user's music library and playlists.
  *
+ * Every song carries a compact numeric ID. Catalog songs get non-negative IDs from the
+ * MusicStore, which keeps them across catalog edits (see SongIdTable); songs created
+ * anywhere else get a unique negative ID for the lifetime of the process. Equality and hashing use the ID only.
+ *
  * Author: Haobin Yan
  */
 
 package model;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class Song {
+    private static final AtomicInteger nextLocalId = new AtomicInteger(-1); // IDs for non-catalog songs
+
+    private final int id;     // Compact song ID (catalog IDs are ≥ 0)
     private String title;     // Song title
     private String artist;    // Artist name
     private String album;     // Album the song belongs to
     private String genre;     // Genre of the song
     private int rating;       // User rating (1–5)
 
+    // Catalog constructor: the ID is assigned by the MusicStore
+    public Song(int id, String title, String artist, String album, String genre) {
+        this.id = id;
+        this.title = title;
+        this.artist = artist;
+        this.album = album;
+        this.genre = genre;
+        this.rating = 3;
+    }
+
     // Full constructor with all metadata including rating
     public Song(String title, String artist, String album, String genre, int rating) {
+        this.id = nextLocalId.getAndDecrement();
         this.title = title;
         this.artist = artist;
         this.album = album;
@@ -30,6 +50,15 @@ public class Song {
         this(title, artist, album, genre, 3);
     }
 
+    public int getId() {
+        return id;
+    }
+
+    // True if this song belongs to the shared catalog
+    public boolean isCatalogSong() {
+        return id >= 0;
+    }
+
     public String getTitle() {
         return title;
     }
@@ -55,10 +84,31 @@ public class Song {
         this.rating = rating;
     }
 
+    // Two songs are the same song exactly when their IDs match
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Song && ((Song) other).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(id);
+    }
+
+    // Append the display form of the song to a buffer (used by row renderers)
+    public void appendTo(StringBuilder sb) {
+        sb.append(getTitle()).append(" - ").append(getArtist())
+          .append(" (").append(getAlbum())
+          .append(", Genre: ").append(getGenre())
+          .append(", Rating: ").append(getRating()).append(')');
+    }
+
     // String representation of the song for display
     @Override
     public String toString() {
-        return title + " - " + artist + " (" + album + ", Genre: " + genre + ", Rating: " + rating + ")";
+        StringBuilder sb = new StringBuilder();
+        appendTo(sb);
+        return sb.toString();
     }
 }
 
@@ -0,0 +1,179 @@
+/**
+ * SongIdTable.java
+ *
+ * Remembers which album ordinal and track number every catalog song was given, so song
+ * IDs survive edits to the catalog files. An album keeps its ordinal when the index is
+ * reordered or other albums are added or removed, and a song keeps its track number when
+ * tracks are inserted, removed or reordered in its album file. New albums and songs get
+ * the next unused number; numbers are never handed out twice.
+ *
+ * The table is an append-only log next to the album index (albums.txt → albums.ids),
+ * one tab-separated line per assignment, each ending in a tab:
+ *
+ *     A  ordinal  album file name
+ *     S  ordinal  track  song title
+ *
+ * Backslash, tab, carriage return and line feed in names and titles are written as \\,
+ * \t, \r and \n, so any title fits on its line.
+ *
+ * Appending keeps every assignment cheap. A line cut short by a crash lacks the final
+ * tab and is ignored on load (the next append starts on a fresh line). A song title
+ * that appears several times in one album is matched occurrence by occurrence. The file
+ * is only created once something has been assigned.
+ *
+ * Author: Haobin Yan
+ */
+
+package model;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+final class SongIdTable {
+    private final Path file;                                  // The log, or null to keep it in memory
+    private final Map<String, Integer> ordinalsByFile;        // Album file name → ordinal
+    private final Map<Integer, List<String>> titlesByOrdinal; // Ordinal → song title of each track number
+    private int nextOrdinal;                                  // Lowest ordinal never handed out
+    private boolean cutShort;                                 // The log does not end with a line break
+
+    // Constructor: the table stored in the given file (read now if it exists)
+    SongIdTable(Path file) {
+        this.file = file;
+        this.ordinalsByFile = new HashMap<>();
+        this.titlesByOrdinal = new HashMap<>();
+        if (file != null && Files.exists(file)) {
+            load();
+        }
+    }
+
+    // Table file for an album index: the same name with ".ids" instead of ".txt"
+    static Path forIndex(String indexPath) {
+        Path index = Paths.get(indexPath);
+        String name = index.getFileName().toString();
+        String base = name.endsWith(".txt") ? name.substring(0, name.length() - 4) : name;
+        return index.resolveSibling(base + ".ids");
+    }
+
+    // Ordinal of an album file, giving it the next unused one the first time
+    synchronized int ordinalOf(String fileName) {
+        Integer ordinal = ordinalsByFile.get(fileName);
+        if (ordinal != null) return ordinal;
+        int assigned = nextOrdinal++;
+        ordinalsByFile.put(fileName, assigned);
+        append("A\t" + assigned + "\t" + escape(fileName) + "\t");
+        return assigned;
+    }
+
+    // Track number of each title (in file order) of the album at an ordinal; titles seen
+    // before keep theirs, new ones get the next unused numbers. -1 means no number is left.
+    synchronized int[] tracksOf(int ordinal, List<String> titles, int maxTracks) {
+        List<String> known = titlesByOrdinal.computeIfAbsent(ordinal, k -> new ArrayList<>());
+        Map<String, Deque<Integer>> free = new HashMap<>();  // Title → its track numbers not matched yet
+        for (int track = 0; track < known.size(); track++) {
+            free.computeIfAbsent(known.get(track), k -> new ArrayDeque<>()).add(track);
+        }
+        int[] tracks = new int[titles.size()];
+        StringBuilder added = new StringBuilder();
+        for (int i = 0; i < tracks.length; i++) {
+            String title = titles.get(i);
+            Deque<Integer> numbers = free.get(title);
+            if (numbers != null && !numbers.isEmpty()) {
+                tracks[i] = numbers.poll();
+            } else if (known.size() < maxTracks) {
+                tracks[i] = known.size();
+                known.add(title);
+                added.append(added.length() == 0 ? "" : "\n")
+                        .append("S\t").append(ordinal).append('\t').append(tracks[i]).append('\t').append(escape(title)).append('\t');
+            } else {
+                tracks[i] = -1;
+            }
+        }
+        if (added.length() > 0) {
+            append(added.toString());
+        }
+        return tracks;
+    }
+
+    // Replay the log; malformed or out-of-order lines are skipped
+    private void load() {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                try {
+                    if (fields.length == 4 && fields[3].isEmpty() && fields[0].equals("A")) {
+                        int ordinal = Integer.parseInt(fields[1]);
+                        ordinalsByFile.put(unescape(fields[2]), ordinal);
+                        nextOrdinal = Math.max(nextOrdinal, ordinal + 1);
+                    } else if (fields.length == 5 && fields[4].isEmpty() && fields[0].equals("S")) {
+                        List<String> titles = titlesByOrdinal.computeIfAbsent(Integer.parseInt(fields[1]), k -> new ArrayList<>());
+                        if (Integer.parseInt(fields[2]) == titles.size()) {
+                            titles.add(unescape(fields[3]));
+                        }
+                    }
+                } catch (NumberFormatException e) {
+                    // A line cut short by a crash; the assignment is made again if needed
+                }
+            }
+            try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "r")) {
+                if (raw.length() > 0) {
+                    raw.seek(raw.length() - 1);
+                    cutShort = raw.read() != '\n';
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading song ID table: " + e.getMessage());
+        }
+    }
+
+    // A name or title with the characters that would break its line escaped
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\': escaped.append("\\\\"); break;
+                case '\t': escaped.append("\\t"); break;
+                case '\n': escaped.append("\\n"); break;
+                case '\r': escaped.append("\\r"); break;
+                default: escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    // Undo escape(); a backslash before any other character is kept as it is
+    private static String unescape(String text) {
+        if (text.indexOf('\\') < 0) return text;
+        StringBuilder plain = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            char next = i + 1 < text.length() ? text.charAt(i + 1) : 0;
+            if (c == '\\' && (next == '\\' || next == 't' || next == 'n' || next == 'r')) {
+                plain.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : '\\');
+                i++;
+            } else {
+                plain.append(c);
+            }
+        }
+        return plain.toString();
+    }
+
+    // Add lines to the log, creating it on first use
+    private void append(String lines) {
+        if (file == null) return;
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (cutShort) {
+                writer.write('\n');
+                cutShort = false;
+            }
+            writer.write(lines);
+            writer.write('\n');
+        } catch (IOException e) {
+            System.err.println("Error saving song ID table: " + e.getMessage());
+        }
+    }
+}
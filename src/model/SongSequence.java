@@ -0,0 +1,208 @@
+/**
+ * SongSequence.java
+ *
+ * The song order of a PlayList, kept as an implicit treap: a randomized balanced binary
+ * tree ordered by position, where every node knows the size of its subtree. Positions
+ * are never stored, so inserting, removing or moving a song (or a whole block of songs)
+ * is a few splits and merges in O(log n) expected time instead of shifting an array.
+ * Nodes also point to their parent, so the position of a known node is found by walking
+ * up in O(log n).
+ *
+ * Author: Haobin Yan
+ */
+
+package model;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+final class SongSequence implements Iterable<Song> {
+    // One song in the tree
+    static final class Node {
+        final Song song;
+        final int priority;     // Random heap key that keeps the tree balanced
+        Node left, right, parent;
+        int size = 1;           // Nodes in this subtree
+
+        Node(Song song) {
+            this.song = song;
+            this.priority = ThreadLocalRandom.current().nextInt();
+        }
+    }
+
+    private Node root;
+    private Node splitLeft, splitRight;  // Results of the last split()
+
+    int size() {
+        return size(root);
+    }
+
+    // Song at a position
+    Song get(int index) {
+        checkIndex(index, size());
+        Node node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node.song;
+            }
+        }
+    }
+
+    // Insert a song so that it ends up at the position (0 to size); returns its node
+    Node insert(int index, Song song) {
+        checkIndex(index, size() + 1);
+        Node node = new Node(song);
+        split(root, index);
+        Node right = splitRight;
+        setRoot(merge(merge(splitLeft, node), right));
+        return node;
+    }
+
+    // Remove the song at a position; returns its node
+    Node removeAt(int index) {
+        checkIndex(index, size());
+        return cut(index, 1);
+    }
+
+    // Current position of a node of this sequence
+    int indexOf(Node node) {
+        int index = size(node.left);
+        for (Node child = node, parent = node.parent; parent != null; child = parent, parent = parent.parent) {
+            if (parent.right == child) {
+                index += size(parent.left) + 1;
+            }
+        }
+        return index;
+    }
+
+    // Move `count` songs starting at `from` so that the first of them ends up at `to`
+    void move(int from, int count, int to) {
+        int size = size();
+        if (count < 0 || from < 0 || from + count > size) {
+            throw new IndexOutOfBoundsException("Range " + from + "+" + count + " of " + size);
+        }
+        checkIndex(to, size - count + 1);
+        if (count == 0 || from == to) return;
+        Node block = cut(from, count);
+        split(root, to);
+        Node right = splitRight;
+        setRoot(merge(merge(splitLeft, block), right));
+    }
+
+    // Replace the order with the given songs, in order
+    void setAll(List<Song> songs, Map<Integer, Node> nodes) {
+        root = null;
+        for (Song song : songs) {
+            Node node = new Node(song);
+            nodes.put(song.getId(), node);
+            setRoot(merge(root, node));
+        }
+    }
+
+    // In-order iteration, O(1) amortized per song
+    @Override
+    public Iterator<Song> iterator() {
+        return new Iterator<Song>() {
+            private final Deque<Node> path = new ArrayDeque<>();
+
+            {
+                pushLeft(root);
+            }
+
+            private void pushLeft(Node node) {
+                for (; node != null; node = node.left) {
+                    path.push(node);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !path.isEmpty();
+            }
+
+            @Override
+            public Song next() {
+                if (path.isEmpty()) throw new NoSuchElementException();
+                Node node = path.pop();
+                pushLeft(node.right);
+                return node.song;
+            }
+        };
+    }
+
+    // ----- Tree operations -----
+
+    // Take `count` nodes starting at `from` out of the tree; returns them as one subtree
+    private Node cut(int from, int count) {
+        split(root, from);
+        Node left = splitLeft;
+        split(splitRight, count);
+        Node block = splitLeft;
+        setRoot(merge(left, splitRight));
+        block.parent = null;
+        return block;
+    }
+
+    // Split a subtree into its first k nodes (splitLeft) and the rest (splitRight)
+    private void split(Node node, int k) {
+        if (node == null) {
+            splitLeft = splitRight = null;
+            return;
+        }
+        if (size(node.left) < k) {
+            split(node.right, k - size(node.left) - 1);
+            setRight(node, splitLeft);
+            splitLeft = node;
+        } else {
+            split(node.left, k);
+            setLeft(node, splitRight);
+            splitRight = node;
+        }
+        node.parent = null;
+    }
+
+    // Concatenate two subtrees (every node of a before every node of b)
+    private static Node merge(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            setRight(a, merge(a.right, b));
+            return a;
+        }
+        setLeft(b, merge(a, b.left));
+        return b;
+    }
+
+    private void setRoot(Node node) {
+        root = node;
+        if (node != null) node.parent = null;
+    }
+
+    private static void setLeft(Node node, Node child) {
+        node.left = child;
+        if (child != null) child.parent = node;
+        node.size = size(node.left) + size(node.right) + 1;
+    }
+
+    private static void setRight(Node node, Node child) {
+        node.right = child;
+        if (child != null) child.parent = node;
+        node.size = size(node.left) + size(node.right) + 1;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + bound);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * TrendingScores.java
+ *
+ * Exponentially time-decayed popularity per song: every play is worth 1 when it happens
+ * and half as much after each half-life. Instead of decaying every score as time passes,
+ * each song stores log2 of its plays' weights measured against a fixed epoch:
+ *
+ *     logScore = log2( sum of 2^(playTime / halfLife) )
+ *
+ * A play updates one song in O(1) with a log-add-exp step, and since every song's real
+ * score is 2^(logScore - now / halfLife), comparing stored values ranks songs correctly
+ * at any moment without a global decay pass. Working in the log domain keeps the huge
+ * powers of two from overflowing.
+ *
+ * Author: Haobin Yan
+ */
+
+package model;
+
+import java.util.*;
+
+public class TrendingScores {
+    public static final long DEFAULT_HALF_LIFE = 7L * 24 * 60 * 60 * 1000; // One week
+
+    private final double halfLifeMillis;            // Time for a play's weight to halve
+    private final IntObjectMap<Score> logScores;    // Song ID → log2 of its weight sum at the epoch
+
+    // A song's log score, updated in place so repeat plays allocate nothing
+    private static final class Score {
+        double log;
+
+        Score(double log) {
+            this.log = log;
+        }
+    }
+
+    public TrendingScores() {
+        this(DEFAULT_HALF_LIFE);
+    }
+
+    public TrendingScores(long halfLifeMillis) {
+        if (halfLifeMillis <= 0) throw new IllegalArgumentException("half-life must be positive");
+        this.halfLifeMillis = halfLifeMillis;
+        this.logScores = new IntObjectMap<>();
+    }
+
+    // Add one play of the song at the given time
+    public void recordPlay(int songId, long timeMillis) {
+        double play = timeMillis / halfLifeMillis;
+        Score current = logScores.get(songId);
+        if (current == null) {
+            logScores.put(songId, new Score(play));
+        } else {
+            current.log = logAdd(current.log, play);
+        }
+    }
+
+    // Decayed score of the song at the given time (0 if never played)
+    public double score(int songId, long nowMillis) {
+        Score logScore = logScores.get(songId);
+        return logScore == null ? 0 : Math.pow(2, logScore.log - nowMillis / halfLifeMillis);
+    }
+
+    // IDs of the `limit` songs with the highest decayed score, best first
+    public List<Integer> top(int limit) {
+        if (limit <= 0) return Collections.emptyList();
+        // Min-heap of the best `limit` seen so far: O(n log limit)
+        PriorityQueue<Integer> best = new PriorityQueue<>(limit + 1,
+                Comparator.comparingDouble(id -> logScores.get(id).log));
+        for (int songId : logScores.keys()) {
+            best.add(songId);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        Integer[] ids = new Integer[best.size()];
+        for (int i = ids.length - 1; i >= 0; i--) {
+            ids[i] = best.poll();
+        }
+        return Arrays.asList(ids);
+    }
+
+    // Stored log score of a song, or null if never played (used by LibraryCheckpoint)
+    Double getLogScore(int songId) {
+        Score logScore = logScores.get(songId);
+        return logScore == null ? null : logScore.log;
+    }
+
+    // Put back a stored log score (used by LibraryCheckpoint)
+    void restoreLogScore(int songId, double logScore) {
+        logScores.put(songId, new Score(logScore));
+    }
+
+    public void remove(int songId) {
+        logScores.remove(songId);
+    }
+
+    public long getHalfLifeMillis() {
+        return (long) halfLifeMillis;
+    }
+
+    // log2(2^a + 2^b) without leaving the log domain
+    private static double logAdd(double a, double b) {
+        double high = Math.max(a, b);
+        double low = Math.min(a, b);
+        return high + Math.log1p(Math.pow(2, low - high)) / Math.log(2);
+    }
+}
@@ -16,23 +16,26 @@ import java.util.stream.Collectors;
 public class User {
     private String username;                       // User's username
     private String passwordHash;                   // User's hashed password
-    private List<Song> library;                    // All songs added by the user
+    private Set<Song> library;                     // All songs added by the user, in order added (songs are equal by ID)
     private List<Album> albums;                    // Albums formed from added songs
-    private List<Song> recentPlays;                // Recently played songs (max 10)
-    private Map<Song, Integer> playCountMap;       // Song play counts
-    private List<Song> favoriteSongs;              // Favorite songs (manually marked)
+    private Map<String, Album> albumsByTitle;      // Same albums by lower-case title
+    private Deque<Song> recentPlays;               // Recently played songs, newest first (max 10)
+    private IntIntMap playCountMap;                // Song play counts (song ID → count)
+    private Set<Song> favoriteSongs;               // Favorite songs (manually marked)
     private List<Song> topRatedSongs;              // Top played songs (auto-updated)
+    private boolean markedByHand;                  // topRatedSongs has songs marked by hand since the last play
     private Map<String, List<Song>> genrePlaylists;// Genre-based auto playlists
 
     // Constructor: initializes a new user with empty data structures
     public User(String username, String passwordHash) {
         this.username = username;
         this.passwordHash = passwordHash;
-        this.library = new ArrayList<>();
+        this.library = new LinkedHashSet<>();
         this.albums = new ArrayList<>();
-        this.recentPlays = new LinkedList<>();
-        this.playCountMap = new HashMap<>();
-        this.favoriteSongs = new ArrayList<>();
+        this.albumsByTitle = new HashMap<>();
+        this.recentPlays = new ArrayDeque<>();
+        this.playCountMap = new IntIntMap();
+        this.favoriteSongs = new LinkedHashSet<>();
         this.topRatedSongs = new ArrayList<>();
         this.genrePlaylists = new HashMap<>();
     }
@@ -63,37 +66,26 @@ public class User {
 
     // Add a song to the user's library if it's not already present
     public void addSongToLibrary(Song song) {
-        if (!library.contains(song)) {
-            library.add(song);
-        }
+        library.add(song);
     }
 
     // Add a song and automatically handle album grouping
     public void addSongWithAlbum(Song song) {
         addSongToLibrary(song);
-        boolean albumExists = false;
-        for (Album album : albums) {
-            if (album.getTitle().equalsIgnoreCase(song.getAlbum())) {
-                album.addSong(song);
-                albumExists = true;
-                break;
-            }
-        }
-        if (!albumExists) {
+        Album album = albumsByTitle.get(song.getAlbum().toLowerCase(Locale.ROOT));
+        if (album != null) {
+            album.addSong(song);
+        } else {
             Album newAlbum = new Album(song.getAlbum(), song.getArtist(), song.getGenre());
             newAlbum.addSong(song);
             albums.add(newAlbum);
+            albumsByTitle.put(song.getAlbum().toLowerCase(Locale.ROOT), newAlbum);
         }
     }
 
     // Check if an album is in the user's library
     public boolean isAlbumInLibrary(String albumTitle) {
-        for (Album album : albums) {
-            if (album.getTitle().equalsIgnoreCase(albumTitle)) {
-                return true;
-            }
-        }
-        return false;
+        return albumsByTitle.containsKey(albumTitle.toLowerCase(Locale.ROOT));
     }
 
     // Find all songs in the library that match a genre
@@ -107,36 +99,86 @@ public class User {
     public void playSong(Song song) {
         if (!library.contains(song)) return;
 
-        recentPlays.add(0, song); // Add to top
+        recentPlays.addFirst(song); // Add to top
         if (recentPlays.size() > 10) {
-            recentPlays.remove(10); // Keep most recent 10
+            recentPlays.removeLast(); // Keep most recent 10
         }
 
-        playCountMap.put(song, playCountMap.getOrDefault(song, 0) + 1);
-        updateTopPlayedSongs();
+        int count = playCountMap.increment(song.getId(), 1);
+        updateTopPlayedSongs(song, count);
     }
 
-    // Update topRatedSongs list based on play counts
-    private void updateTopPlayedSongs() {
-        List<Map.Entry<Song, Integer>> sorted = new ArrayList<>(playCountMap.entrySet());
-        sorted.sort((a, b) -> b.getValue().compareTo(a.getValue()));
-        topRatedSongs.clear();
-        for (int i = 0; i < Math.min(10, sorted.size()); i++) {
-            topRatedSongs.add(sorted.get(i).getKey());
+    // Keep topRatedSongs as the 10 most played songs after one song's count went up;
+    // only that song can move, so no full sort is needed
+    private void updateTopPlayedSongs(Song song, int count) {
+        if (markedByHand) {
+            rebuildTopPlayedSongs();
+            return;
         }
+        int index = topRatedSongs.indexOf(song);
+        if (index < 0) {
+            int last = topRatedSongs.size() - 1;
+            if (topRatedSongs.size() < 10) {
+                topRatedSongs.add(song);
+                index = last + 1;
+            } else if (count > playCount(topRatedSongs.get(last))) {
+                topRatedSongs.set(last, song);
+                index = last;
+            } else {
+                return;
+            }
+        }
+        while (index > 0 && playCount(topRatedSongs.get(index - 1)) < count) {
+            topRatedSongs.set(index, topRatedSongs.get(index - 1));
+            index--;
+        }
+        topRatedSongs.set(index, song);
+    }
+
+    // Rebuild topRatedSongs from every play count, which drops the songs marked by hand
+    // (only needed on the first play after a mark)
+    private void rebuildTopPlayedSongs() {
+        List<Song> played = new ArrayList<>();
+        for (Song song : library) {
+            if (playCount(song) > 0) played.add(song);
+        }
+        played.sort(Comparator.comparingInt(this::playCount).reversed());
+        topRatedSongs.clear();
+        topRatedSongs.addAll(played.subList(0, Math.min(10, played.size())));
+        markedByHand = false;
+    }
+
+    // How many times the song was played
+    int playCount(Song song) {
+        return playCountMap.get(song.getId());
+    }
+
+    // Put back a saved play count (used by LibraryExport)
+    void restorePlayCount(Song song, int count) {
+        if (count <= playCount(song) || !library.contains(song)) return; // counts only grow
+        playCountMap.put(song.getId(), count);
+        updateTopPlayedSongs(song, count);
+    }
+
+    // The library's songs, in order added, without copying (read-only)
+    Collection<Song> songs() {
+        return Collections.unmodifiableCollection(library);
+    }
+
+    boolean isFavorite(Song song) {
+        return favoriteSongs.contains(song);
     }
 
     // Mark a song as favorite manually
     public void markSongAsFavorite(Song song) {
-        if (!favoriteSongs.contains(song)) {
-            favoriteSongs.add(song);
-        }
+        favoriteSongs.add(song);
     }
 
     // Mark a song as top rated manually (if needed)
     public void markSongAsTopRated(Song song) {
         if (!topRatedSongs.contains(song)) {
             topRatedSongs.add(song);
+            markedByHand = true;
         }
     }
 
@@ -152,7 +194,10 @@ public class User {
 
     // Shuffle the user's song library
     public void shuffleLibrary() {
-        Collections.shuffle(library);
+        List<Song> songs = new ArrayList<>(library);
+        Collections.shuffle(songs);
+        library.clear();
+        library.addAll(songs);
     }
 
     // Check if the user library contains a specific song
@@ -2,7 +2,21 @@
  * UserManager.java
  *
  * Handles user registration, authentication, and library data storage.
- * Uses SHA-256 password hashing and saves user data in text files under /resources.
+ * Uses SHA-256 password hashing and saves credentials and user libraries under /resources.
+ *
+ * Libraries are saved in the binary LibraryFile format (<name>_library.bin), which keeps
+ * catalog songs by ID along with ratings, play counts, favorites and playlists. Legacy
+ * text libraries (<name>_library.txt) are still read when no binary file exists, and are
+ * converted by the next save.
+ *
+ * Storage layouts:
+ *   single   resources/users.txt holds every credential, libraries live in resources/users/
+ *   sharded  users are hash-partitioned into N shards, resources/users/shard-NN/, each with
+ *            its own users.txt, its users' libraries and its own lock; the shard count is
+ *            kept in resources/users/shards.txt
+ * Registering appends one line to the user's credential file under that file's lock, so
+ * registrations in different shards run in parallel. migrateToShards() converts a single
+ * layout to a sharded one.
  *
  * Author: Haobin Yan
  */
@@ -15,63 +29,209 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class UserManager {
-    private static final String USER_DATA_FILE = "resources/users.txt"; // Stores username,passwordHash
+    private static final String DEFAULT_ROOT = "resources";             // Holds users.txt and users/
+    private static final String USER_DATA_FILE = "users.txt";           // Stores username,passwordHash
+    private static final String USER_LIBRARY_DIRECTORY = "users";       // Saved libraries (and shards)
+    private static final String SHARD_COUNT_FILE = "shards.txt";        // Present only in the sharded layout
+    private static final String BINARY_LIBRARY_SUFFIX = "_library.bin";  // Current format (LibraryFile)
+    private static final String TEXT_LIBRARY_SUFFIX = "_library.txt";    // Legacy format, read only
+    private static final String CHECKPOINT_SUFFIX = "_library.ckpt";     // Full-state checkpoint (LibraryCheckpoint)
+    private static final String[] LIBRARY_SUFFIXES = { BINARY_LIBRARY_SUFFIX, TEXT_LIBRARY_SUFFIX, CHECKPOINT_SUFFIX };
+    private final Path root;           // Directory holding the user data
+    private volatile Shard[] shards;   // One entry in the single layout
     private Map<String, String> users; // Map of usernames to hashed passwords
+    private MusicStore musicStore;     // Catalog used to resolve saved song IDs (may be null)
+    private volatile boolean compressLibraries = true; // Deflate saved library files
 
     // Constructor: loads existing users from file
     public UserManager() {
-        users = new HashMap<>();
+        this(null);
+    }
+
+    // Constructor: loads existing users and resolves saved catalog songs against the store
+    public UserManager(MusicStore musicStore) {
+        this(musicStore, Paths.get(DEFAULT_ROOT));
+    }
+
+    // Constructor: keeps the user data under the given directory instead of resources/
+    public UserManager(MusicStore musicStore, Path root) {
+        this.musicStore = musicStore;
+        this.root = root;
+        users = new ConcurrentHashMap<>();
+        shards = openLayout();
         loadUsers();
     }
 
-    // Load users from file into memory
-    private void loadUsers() {
-        try {
-            File file = new File(USER_DATA_FILE);
-            if (!file.exists()) {
-                file.createNewFile(); // Create if missing
+    // One hash partition of the users: its credential file, its library directory and its lock
+    private static final class Shard {
+        final Path credentials;
+        final Path libraries;
+
+        Shard(Path credentials, Path libraries) {
+            this.credentials = credentials;
+            this.libraries = libraries;
+        }
+
+        // Append one credential line; the lock keeps concurrent lines from interleaving
+        synchronized void append(String username, String hash) throws IOException {
+            Files.write(credentials, (username + "," + hash + System.lineSeparator()).getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+
+    // The shards of the layout found on disk (a single shard if it is not sharded)
+    private Shard[] openLayout() {
+        Path libraries = root.resolve(USER_LIBRARY_DIRECTORY);
+        Path countFile = libraries.resolve(SHARD_COUNT_FILE);
+        if (Files.exists(countFile)) {
+            try {
+                int count = Integer.parseInt(new String(Files.readAllBytes(countFile), StandardCharsets.UTF_8).trim());
+                if (count > 0) return shardLayout(count);
+                System.err.println("Invalid shard count in " + countFile);
+            } catch (IOException | NumberFormatException e) {
+                System.err.println("Error reading " + countFile + ": " + e.getMessage());
             }
-            List<String> lines = Files.readAllLines(Paths.get(USER_DATA_FILE), StandardCharsets.UTF_8);
-            for (String line : lines) {
-                String[] data = line.split(",");
-                if (data.length == 2) {
-                    users.put(data[0], data[1]); // username → password hash
+        }
+        return new Shard[] { new Shard(root.resolve(USER_DATA_FILE), libraries) };
+    }
+
+    private Shard[] shardLayout(int count) {
+        Shard[] layout = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            Path directory = root.resolve(USER_LIBRARY_DIRECTORY).resolve(String.format("shard-%02d", i));
+            layout[i] = new Shard(directory.resolve(USER_DATA_FILE), directory);
+        }
+        return layout;
+    }
+
+    // The shard a user belongs to (String.hashCode is the same in every run)
+    private static Shard shardOf(Shard[] layout, String username) {
+        return layout[Math.floorMod(username.hashCode(), layout.length)];
+    }
+
+    // Load users from every shard's file into memory
+    private void loadUsers() {
+        for (Shard shard : shards) {
+            try {
+                Files.createDirectories(shard.libraries);
+                if (!Files.exists(shard.credentials)) {
+                    Files.createFile(shard.credentials); // Create if missing
                 }
+                List<String> lines = Files.readAllLines(shard.credentials, StandardCharsets.UTF_8);
+                for (String line : lines) {
+                    String[] data = line.split(",");
+                    if (data.length == 2) {
+                        users.putIfAbsent(data[0], data[1]); // username → password hash
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
             }
+        }
+    }
+
+    // Register a new user with hashed password; the name must pass isValidUsername
+    public boolean registerUser(String username, String password) {
+        if (!isValidUsername(username)) {
+            throw new IllegalArgumentException("Invalid username: it must not be empty or contain / \\ .. , or control characters");
+        }
+        String hash = hashPassword(password);
+        if (users.putIfAbsent(username, hash) != null) {
+            return false; // Username already exists
+        }
+        try {
+            shardOf(shards, username).append(username, hash); // Persist change
         } catch (IOException e) {
             e.printStackTrace();
         }
+        return true;
+    }
+
+    // Number of shards the users are partitioned into (1 in the single-file layout)
+    public int getShardCount() {
+        return shards.length;
     }
 
-    // Save current users back to file
-    private void saveUsers() {
+    // Move the single-file layout into `shardCount` shards. Credentials and libraries are
+    // copied first and the shard count is written last, so an interrupted migration leaves
+    // the old layout in use and can simply be run again; the old files are removed after.
+    // Call it before the manager is shared with other threads.
+    public synchronized boolean migrateToShards(int shardCount) {
+        if (shardCount < 1) throw new IllegalArgumentException("shard count must be positive");
+        if (Files.exists(root.resolve(USER_LIBRARY_DIRECTORY).resolve(SHARD_COUNT_FILE))) {
+            System.err.println("User data is already sharded");
+            return false;
+        }
+        Shard legacy = shards[0];
+        Shard[] layout = shardLayout(shardCount);
+        List<Path> copied = new ArrayList<>();
         try {
-            BufferedWriter writer = new BufferedWriter(new FileWriter(USER_DATA_FILE));
+            Map<Shard, StringBuilder> credentials = new HashMap<>();
+            for (Shard shard : layout) {
+                Files.createDirectories(shard.libraries);
+                credentials.put(shard, new StringBuilder());
+            }
             for (Map.Entry<String, String> entry : users.entrySet()) {
-                writer.write(entry.getKey() + "," + entry.getValue());
-                writer.newLine();
+                Shard shard = shardOf(layout, entry.getKey());
+                credentials.get(shard).append(entry.getKey()).append(',').append(entry.getValue())
+                        .append(System.lineSeparator());
+                for (String suffix : LIBRARY_SUFFIXES) {
+                    Path from = legacy.libraries.resolve(entry.getKey() + suffix);
+                    if (Files.exists(from)) {
+                        // Keep modification times: restoreLibrary compares them
+                        Files.copy(from, shard.libraries.resolve(from.getFileName()),
+                                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                        copied.add(from);
+                    }
+                }
+            }
+            for (Shard shard : layout) {
+                writeAtomically(shard.credentials, credentials.get(shard).toString());
             }
-            writer.close();
+            writeAtomically(root.resolve(USER_LIBRARY_DIRECTORY).resolve(SHARD_COUNT_FILE), shardCount + System.lineSeparator());
         } catch (IOException e) {
-            e.printStackTrace();
+            System.err.println("Error migrating user data: " + e.getMessage());
+            return false;
         }
-    }
-
-    // Register a new user with hashed password
-    public boolean registerUser(String username, String password) {
-        if (users.containsKey(username)) {
-            return false; // Username already exists
+        shards = layout;
+        try {
+            for (Path file : copied) {
+                Files.deleteIfExists(file);
+            }
+            Files.move(legacy.credentials, legacy.credentials.resolveSibling(USER_DATA_FILE + ".migrated"),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("Migrated, but could not remove old user files: " + e.getMessage());
         }
-        users.put(username, hashPassword(password));
-        saveUsers(); // Persist change
         return true;
     }
 
+    private static void writeAtomically(Path file, String content) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, content.getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
     // Authenticate login using SHA-256 hashed password
     public boolean authenticateUser(String username, String password) {
-        return users.containsKey(username) && users.get(username).equals(hashPassword(password));
+        if (!isValidUsername(username)) return false;
+        String hash = users.get(username);
+        return hash != null && hash.equals(hashPassword(password));
+    }
+
+    // Whether a name can be stored: it becomes a "username,hash" line of a credential file
+    // and part of library file names, so it must be non-empty and free of path separators,
+    // "..", commas and control characters (line breaks included)
+    public static boolean isValidUsername(String username) {
+        if (username == null || username.isEmpty() || username.contains("..")) return false;
+        for (int i = 0; i < username.length(); i++) {
+            char c = username.charAt(i);
+            if (c == '/' || c == '\\' || c == ',' || Character.isISOControl(c)) return false;
+        }
+        return true;
     }
 
     // Hash password using SHA-256
@@ -89,63 +249,145 @@ public class UserManager {
         }
     }
 
-    // Save the user's library (songs + albums) to a text file
+    // Save the user's library to its binary file; a legacy text file is converted this way.
+    // The file is written next to the old one and renamed over it, so it is never half written.
     public void saveUserLibrary(String username, LibraryModel library) {
+        Path userLibraryFile = libraryFile(username, BINARY_LIBRARY_SUFFIX).toPath();
+        Path temp = userLibraryFile.resolveSibling(userLibraryFile.getFileName() + ".tmp");
         try {
-            File userLibraryFile = new File("resources/users/" + username + "_library.txt");
-            if (!userLibraryFile.exists()) {
-                userLibraryFile.createNewFile();
-            }
-            BufferedWriter writer = new BufferedWriter(new FileWriter(userLibraryFile));
-
-            // Save songs
-            for (Song song : library.getUserSongs().values()) {
-                writer.write(song.getTitle() + "," + song.getArtist() + "," + song.getAlbum() + "," + song.getGenre());
-                writer.newLine();
-            }
-
-            // Save albums (only title and artist for now)
-            for (Album album : library.getUserAlbums().values()) {
-                writer.write("Album: " + album.getTitle() + "," + album.getArtist());
-                writer.newLine();
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                LibraryFile.write(library, out, compressLibraries);
             }
+            Files.move(temp, userLibraryFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
-            writer.close();
+    // Save a console user's songs as a text library ("title,artist,album,genre" lines), atomically
+    public void saveTextLibrary(String username, Collection<Song> songs) {
+        StringBuilder text = new StringBuilder();
+        for (Song song : songs) {
+            text.append(song.getTitle()).append(',').append(song.getArtist()).append(',')
+                    .append(song.getAlbum()).append(',').append(song.getGenre()).append(System.lineSeparator());
+        }
+        try {
+            writeAtomically(libraryFile(username, TEXT_LIBRARY_SUFFIX).toPath(), text.toString());
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    // Load user's saved library into the current session
+    // Choose whether saved libraries are compressed (on by default)
+    public void setCompressLibraries(boolean compress) {
+        this.compressLibraries = compress;
+    }
+
+    // Load user's saved library into the current session, preferring the binary file
     public void loadUserLibrary(String username, LibraryModel library) {
+        File binaryFile = libraryFile(username, BINARY_LIBRARY_SUFFIX);
+        if (!binaryFile.exists()) {
+            loadTextLibrary(username, library);
+            return;
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(binaryFile))) {
+            LibraryFile.read(in, library, musicStore);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error reading library of " + username + ": " + e.getMessage());
+        }
+    }
+
+    // Write a memory-mappable checkpoint of the library's complete state
+    public boolean saveCheckpoint(String username, LibraryModel library) {
         try {
-            File userLibraryFile = new File("resources/users/" + username + "_library.txt");
-            if (userLibraryFile.exists()) {
-                BufferedReader reader = new BufferedReader(new FileReader(userLibraryFile));
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String[] data = line.split(",");
-                    if (data[0].equals("Album")) {
-                        // Reconstruct album (simplified)
-                        String albumTitle = data[1];
-                        String artist = data[2];
-                        Album album = new Album(albumTitle, artist, "", 0, new ArrayList<>());
-                        library.addAlbum(album);
-                    } else {
-                        // Reconstruct song
-                        String title = data[0];
-                        String artist = data[1];
-                        String album = data[2];
-                        String genre = data[3];
-                        Song song = new Song(title, artist, album, genre);
-                        library.addSong(song);
+            LibraryCheckpoint.save(library, libraryFile(username, CHECKPOINT_SUFFIX).toPath());
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // The user's library: mapped from a checkpoint that is at least as new as the saved
+    // library file (loaded lazily on first use), otherwise loaded from the saved file; the
+    // saved file is also used if the checkpoint turns out to be corrupt
+    public LibraryModel restoreLibrary(String username) {
+        File checkpoint = libraryFile(username, CHECKPOINT_SUFFIX);
+        File saved = libraryFile(username, BINARY_LIBRARY_SUFFIX);
+        if (checkpoint.exists() && checkpoint.lastModified() >= saved.lastModified()) {
+            try {
+                return LibraryCheckpoint.restore(checkpoint.toPath(), username, musicStore,
+                        library -> loadUserLibrary(username, library));
+            } catch (IOException e) {
+                System.err.println("Ignoring checkpoint of " + username + ": " + e.getMessage());
+            }
+        }
+        LibraryModel library = new LibraryModel(username);
+        loadUserLibrary(username, library);
+        return library;
+    }
+
+    // Where the user's legacy text library is kept (used by the console flow)
+    public File getTextLibraryFile(String username) {
+        return libraryFile(username, TEXT_LIBRARY_SUFFIX);
+    }
+
+    private File libraryFile(String username, String suffix) {
+        if (!isValidUsername(username)) throw new IllegalArgumentException("Invalid username");
+        return shardOf(shards, username).libraries.resolve(username + suffix).toFile();
+    }
+
+    // Load a legacy text library (one comma-separated line per song or album)
+    private void loadTextLibrary(String username, LibraryModel library) {
+        File userLibraryFile = libraryFile(username, TEXT_LIBRARY_SUFFIX);
+        if (!userLibraryFile.exists()) return;
+        try (RecordReader reader = new RecordReader()) {
+            reader.open(userLibraryFile.toPath());
+            while (reader.nextLine()) {
+                int fields = reader.fieldCount();
+                if (reader.rawFieldEquals(0, "Album") && fields >= 3) {
+                    // Reconstruct album (simplified)
+                    Album album = new Album(reader.rawField(1), reader.rawField(2), "", 0, new ArrayList<>());
+                    library.addAlbum(album);
+                } else if (reader.rawFieldStartsWith(0, "Album: ") && fields >= 2) {
+                    // Album line as written by saveUserLibrary
+                    String albumTitle = reader.rawField(0).substring("Album: ".length());
+                    library.addAlbum(new Album(albumTitle, reader.rawField(1), "", 0, new ArrayList<>()));
+                } else if (reader.rawFieldStartsWith(0, "#") && fields >= 5) {
+                    // Catalog song: look it up by ID, falling back to title and album
+                    int id;
+                    try {
+                        id = reader.intField(0, 1);
+                    } catch (NumberFormatException e) {
+                        id = -1;
                     }
+                    String title = reader.rawField(1);
+                    String album = reader.rawField(3);
+                    Song song = resolveCatalogSong(id, title, album);
+                    library.addSong(song != null ? song : new Song(title, reader.rawField(2), album, reader.rawField(4)));
+                } else if (fields >= 4) {
+                    // Reconstruct song
+                    String title = reader.rawField(0);
+                    String artist = reader.rawField(1);
+                    String album = reader.rawField(2);
+                    String genre = reader.rawField(3);
+                    Song song = new Song(title, artist, album, genre);
+                    library.addSong(song);
                 }
-                reader.close();
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
+
+    // Find the shared catalog song for a saved ID, checking that it is still the same song
+    private Song resolveCatalogSong(int id, String title, String albumTitle) {
+        if (musicStore == null) return null;
+        Song song = musicStore.getSong(id);
+        if (song != null && song.getTitle().equals(title) && song.getAlbum().equals(albumTitle)) {
+            return song;
+        }
+        return musicStore.findSong(title, albumTitle);
+    }
 }
 
@@ -0,0 +1,827 @@
+/**
+ * MusicService.java
+ *
+ * HTTP/JSON service mode for the music library. One JVM holds a shared MusicStore and
+ * serves many concurrent clients through the JDK's built-in HTTP server. Each request runs
+ * on its own virtual thread when the runtime supports them (Java 21+), otherwise on a cached
+ * pool of platform threads. Large listings are streamed as chunked JSON instead of being
+ * built in memory. No external dependencies are needed, so it can be load-tested locally.
+ *
+ * Author: Haobin Yan
+ */
+
+package service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import model.*;
+import view.JsonWriter;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class MusicService {
+    private static final String TOKEN_HEADER = "X-Session-Token";  // Header carrying the session token
+    private static final Path LISTENER_STATS_FILE = Paths.get("resources/listener_stats.bin"); // Survives restarts
+
+    private final MusicStore musicStore;                 // Shared, read-mostly catalog
+    private final UserManager userManager;               // Credentials and library persistence
+    private final LibraryPersister persister;            // Writes saved libraries in the background
+    private final Map<String, String> sessions;          // Session token → username
+    private final Map<String, LoadedLibrary> libraries;  // Username → loaded library (shared by its sessions)
+    private final Map<String, Handler> getRoutes;        // Path → handler for GET requests
+    private final Map<String, Handler> postRoutes;       // Path → handler for POST requests
+    private final SecureRandom random;                   // Source of session tokens
+    private final CoPlayRecommender recommender;         // Learns "more like this" from everyone's plays
+    private final GlobalCharts charts;                   // Most played songs across all users
+    private final ListenerStats listenerStats;           // Distinct listeners per song and artist
+    private HttpServer server;
+    private ExecutorService executor;
+
+    // A library song with the owner's rating and play count, read under the library lock
+    // so the response can be written after releasing it
+    private static final class SongState {
+        final Song song;
+        final int rating;
+        final int plays;
+
+        SongState(Song song, LibraryModel library) {
+            this.song = song;
+            this.rating = library.getEffectiveRating(song.getId());
+            this.plays = library.getPlayCount(song.getId());
+        }
+    }
+
+    // A user's library while at least one of their sessions is open
+    private static final class LoadedLibrary {
+        final LibraryModel library;
+        int sessions;                  // Open sessions; once published, changed only inside libraries.computeIfPresent
+
+        LoadedLibrary(LibraryModel library) {
+            this.library = library;
+        }
+    }
+
+    // Handles one request with its decoded query/form parameters
+    private interface Handler {
+        void handle(HttpExchange exchange, Map<String, String> params) throws IOException;
+    }
+
+    // Constructor: serves the given store and user base
+    public MusicService(MusicStore musicStore, UserManager userManager) {
+        this(musicStore, userManager, new LibraryPersister());
+    }
+
+    // Constructor: library saves go through the given persister
+    public MusicService(MusicStore musicStore, UserManager userManager, LibraryPersister persister) {
+        this.musicStore = musicStore;
+        this.userManager = userManager;
+        this.persister = persister;
+        this.sessions = new ConcurrentHashMap<>();
+        this.libraries = new ConcurrentHashMap<>();
+        this.getRoutes = new HashMap<>();
+        this.postRoutes = new HashMap<>();
+        this.random = new SecureRandom();
+        this.recommender = new CoPlayRecommender();
+        this.charts = new GlobalCharts();
+        this.listenerStats = new ListenerStats();
+        if (Files.exists(LISTENER_STATS_FILE)) {
+            listenerStats.load(LISTENER_STATS_FILE);
+        }
+        if (musicStore.getQueryCache() == null) {
+            musicStore.setQueryCache(new QueryCache()); // Sessions repeat each other's catalog queries
+        }
+        registerRoutes();
+    }
+
+    // Start listening on the given port (0 picks a free port)
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/", this::dispatch);
+        server.start();
+    }
+
+    // Stop the server, save every loaded library (waiting for the writes) and release the request threads
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdown();
+        }
+        for (Map.Entry<String, LoadedLibrary> entry : libraries.entrySet()) {
+            String username = entry.getKey();
+            LibraryModel library = entry.getValue().library;
+            persister.save(username, () -> {
+                synchronized (library) {
+                    userManager.saveUserLibrary(username, library);
+                    userManager.saveCheckpoint(username, library);
+                }
+            });
+        }
+        persister.flush();
+        listenerStats.save(LISTENER_STATS_FILE);
+    }
+
+    // Port the server is bound to
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Virtual-thread-per-request executor when available, otherwise a cached platform pool
+    private static ExecutorService newRequestExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private void registerRoutes() {
+        postRoutes.put("/register", this::register);
+        postRoutes.put("/login", this::login);
+        postRoutes.put("/logout", this::logout);
+        getRoutes.put("/library", this::listLibrary);
+        getRoutes.put("/library/search", this::searchLibrary);
+        getRoutes.put("/library/trending", this::listTrending);
+        getRoutes.put("/library/export", this::exportLibrary);
+        postRoutes.put("/library/add-song", this::addSong);
+        postRoutes.put("/library/add-album", this::addAlbum);
+        getRoutes.put("/store/albums", this::listAlbums);
+        getRoutes.put("/store/album", this::showAlbum);
+        getRoutes.put("/store/artist", this::listArtistSongs);
+        getRoutes.put("/store/search", this::searchStore);
+        postRoutes.put("/play", this::play);
+        postRoutes.put("/rate", this::rate);
+        getRoutes.put("/recommend", this::recommend);
+        getRoutes.put("/charts", this::showChart);
+        getRoutes.put("/stats/listeners", this::showListeners);
+        getRoutes.put("/stats/cache", this::showCacheStats);
+        getRoutes.put("/playlists", this::listPlaylists);
+        postRoutes.put("/playlists/create", this::createPlaylist);
+        postRoutes.put("/playlists/add", this::addToPlaylist);
+        postRoutes.put("/playlists/move", this::moveInPlaylist);
+    }
+
+    // Route a request by method and path, turning failures into JSON errors
+    private void dispatch(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            Map<String, Handler> routes = "POST".equals(method) ? postRoutes
+                    : "GET".equals(method) ? getRoutes : null;
+            Handler handler = routes == null ? null : routes.get(path);
+            if (handler == null) {
+                boolean known = getRoutes.containsKey(path) || postRoutes.containsKey(path);
+                sendError(exchange, known ? 405 : 404, known ? "Method not allowed" : "Not found");
+                return;
+            }
+            handler.handle(exchange, readParams(exchange));
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            if (exchange.getResponseCode() == -1) { // nothing sent yet
+                sendError(exchange, 500, "Internal server error");
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // ----- Accounts and sessions -----
+
+    private void register(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String username = requireUsername(params);
+        if (!userManager.registerUser(username, require(params, "password"))) {
+            sendError(exchange, 409, "Username already exists");
+            return;
+        }
+        try (JsonWriter json = beginJson(exchange, 201)) {
+            json.beginObject().field("user", username).endObject();
+        }
+    }
+
+    private void login(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String username = requireUsername(params);
+        if (!userManager.authenticateUser(username, require(params, "password"))) {
+            sendError(exchange, 401, "Invalid username or password");
+            return;
+        }
+        // Join the loaded library if there is one; otherwise read it outside the map's lock
+        // (after any save queued at the last logout has landed) and publish it, unless
+        // another login published theirs first
+        while (libraries.computeIfPresent(username, (name, loaded) -> {
+            loaded.sessions++;
+            return loaded;
+        }) == null) {
+            persister.awaitSaved(username);
+            LibraryModel library = userManager.restoreLibrary(username);
+            library.addPlayListener(recommender);
+            library.addPlayListener(charts);
+            library.addPlayListener(listenerStats);
+            LoadedLibrary loaded = new LoadedLibrary(library);
+            loaded.sessions = 1;
+            if (libraries.putIfAbsent(username, loaded) == null) break;
+        }
+        String token = newToken();
+        sessions.put(token, username);
+        try (JsonWriter json = beginJson(exchange, 200)) {
+            json.beginObject().field("user", username).field("token", token).endObject();
+        }
+    }
+
+    private void logout(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String token = exchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+        String username = token == null ? null : sessions.remove(token);
+        if (username == null) {
+            sendError(exchange, 401, "Not logged in");
+            return;
+        }
+        LibraryModel library = libraries.get(username).library;
+        persister.save(username, () -> {
+            synchronized (library) {
+                userManager.saveUserLibrary(username, library);
+            }
+        });
+        // Unload the library once its last session is gone, so memory follows active users
+        libraries.computeIfPresent(username, (name, loaded) -> --loaded.sessions > 0 ? loaded : null);
+        try (JsonWriter json = beginJson(exchange, 200)) {
+            json.beginObject().field("user", username).field("status", "logged out").endObject();
+        }
+    }
+
+    // ----- Library browse and search -----
+
+    private void listLibrary(HttpExchange exchange, Map<String, String> params) throws IOException {
+        LibraryModel library = requireLibrary(exchange);
+        if (library == null) return;
+        List<SongState> songs;
+        synchronized (library) {
+            songs = statesOf(library, library);
+        }
+        try (JsonWriter json = beginJson(exchange, 200)) {
+            json.beginArray();
+            for (SongState song : songs) {
+                writeSong(json, song);
+            }
+            json.endArray();
+        }
+    }
+
+    private void searchLibrary(HttpExchange exchange, Map<String, String> params) throws IOException {
+        LibraryModel library = requireLibrary(exchange);
+        if (library == null) return;
+        String title = params.get("title");
+        String genre = title == null ? require(params, "genre") : null;
+        List<SongState> results;
+        synchronized (library) {
+            if (title != null) {
+                Song song = library.searchSongByTitle(title);
+                results = statesOf(song == null ? Collections.emptyList() : Collections.singletonList(song), library);
+            } else {
+                results = statesOf(library.searchSongsByGenre(genre), library);
+            }
+        }
+        try (JsonWriter json = beginJson(exchange, 200)) {
+            json.beginArray();
+            for (SongState song : results) {
+                writeSong(json, song);
+            }
+            json.endArray();
+        }
+    }
+
+    private void addSong(HttpExchange exchange, Map<String, String> params) throws IOException {
+        LibraryModel library = requireLibrary(exchange);
+        if (library == null) return;
+        Album album = musicStore.getAlbum(require(params, "album"));
+        String title = require(params, "title");
+        Song found = null;
+        if (album != null) {
+            for (Song song : album.getSongs()) {
+                if (song.getTitle().equals(title)) {
+                    found = song;
+                    break;
+                }
+            }
+        }
+        if (found == null) {
+            sendError(exchange, 404, "Song not found in store");
+            return;
+        }
+        synchronized (library) {
+            library.addSong(found);
+        }
+        try (JsonWriter json = beginJson(exchange, 200)) {
+            writeSong(json, found);
+        }
+    }
+
+    private void addAlbum(HttpExchange exchange, Map<String, String> params) throws IOException {
+        LibraryModel library = requireLibrary(exchange);
+        if (library == null) return;
+        Album album = musicStore.getAlbum(require(params, "title"));
+        if (album == null) {
+            sendError(exchange, 404, "Album not found in store");
+            return;
+        }
+        synchronized (library) {
+            library.addAlbum(album);
+        }
+        try (JsonWriter json = beginJson(exchange, 200)) {
+            json.beginObject().field("album", album.getTitle()).field("songs", album.getSongs().size()).endObject();
+        }
+    }
+
+    // ----- Store browse -----
+
+    // All albums, or only those matching "genre", "decade" or a "from"/"to" year range
+    private void listAlbums(HttpExchange exchange, Map<String, String> params) throws IOException {
+        Collection<Album> albums;
+        if (params.containsKey("genre")) {
+            albums = musicStore.getAlbumsByGenre(params.get("genre"));
+        } else if (params.containsKey("decade")) {
+            albums = musicStore.getAlbumsByDecade(parseInt(params.get("decade"), "decade"));
+        } else if (params.containsKey("from") || params.containsKey("to")) {
+            int from = params.containsKey("from") ? parseInt(params.get("from"), "from") : Integer.MIN_VALUE;
+            int to = params.containsKey("to") ? parseInt(params.get("to"), "to") : Integer.MAX_VALUE;
+            albums = musicStore.getAlbumsByYearRange(from, to);
+        } else {
+            albums = musicStore.getAllAlbums();
+        }
+        try (JsonWriter json = beginJson(exchange, 200)) {
+            json.beginArray();
+            for (Album album : albums) {
+                writeAlbum(json, album, false);
+            }
+            json.endArray();
+        }
+    }
+
+    private void showAlbum(HttpExchange exchange, Map<String, String> params) throws IOException {
+        Album album = musicStore.getAlbum(require(params, "title"));
+        if (album == null) {
+            sendError(exchange, 404, "Album not found in store");
+            return;
+        }
+        try (JsonWriter json = beginJson(exchange, 200)) {
+            writeAlbum(json, album, true);
+        }
+    }
+
+    private void listArtistSongs(HttpExchange exchange, Map<String, String> params) throws IOException {
+        List<Song> songs = musicStore.getSongsByArtist(require(params, "name"));
+        try (JsonWriter json = beginJson(exchange, 200)) {
+            json.beginArray();
+            for (Song song : songs) {
+                writeSong(json, song);
+            }
+            json.endArray();
+        }
+    }
+
+    // Typo-tolerant search over song titles, album titles and artists
+    private void searchStore(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String query = require(params, "q");
+        int distance = params.containsKey("distance") ? parseInt(params.get("distance"), "distance")
+                : MusicStore.DEFAULT_FUZZY_DISTANCE;
+        int limit = params.containsKey("limit") ? parseInt(params.get("limit"), "limit") : 10;
+        if (distance < 0 || distance > 3) {
+            throw new IllegalArgumentException("distance must be between 0 and 3");
+        }
+        try (JsonWriter json = beginJson(exchange, 200)) {
+            json.beginObject().name("songs").beginArray();
+            for (Song song : musicStore.searchSongsFuzzy(query, distance, limit)) {
+                writeSong(json, song);
+            }
+            json.endArray().name("albums").beginArray();
+            for (Album album : musicStore.searchAlbumsFuzzy(query, distance, limit)) {
+                writeAlbum(json, album, false);
+            }
+            json.endArray().name("artists").beginArray();
+            for (String artist : musicStore.searchArtistsFuzzy(query, distance, limit)) {
+                json.value(artist);
+            }
+            json.endArray().endObject();
+        }
+    }
+
+    // ----- Playback, ratings and playlists -----
+
+    private void play(HttpExchange exchange, Map<String, String> params) throws IOException {
+        LibraryModel library = requireLibrary(exchange);
+        if (library == null) return;
+        String title = require(params, "title");
+        int count;
+        synchronized (library) {
+            if (library.searchSongByTitle(title) == null) {
+                count = -1;
+            } else {
+                library.playSong(title);
+                count = library.getPlayCount(title);
+            }
+        }
+        if (count < 0) {
+            sendError(exchange, 404, "Song not in library");
+            return;
+        }
+        try (JsonWriter json = beginJson(exchange, 200)) {
+            json.beginObject().field("title", title).field("plays", count).endObject();
+        }
+    }
+
+    private void rate(HttpExchange exchange, Map<String, String> params) throws IOException {
+        LibraryModel library = requireLibrary(exchange);
+        if (library == null) return;
+        String title = require(params, "title");
+        int rating = parseInt(require(params, "rating"), "rating");
+        if (rating < 1 || rating > 5) {
+            throw new IllegalArgumentException("Rating must be between 1 and 5");
+        }
+        boolean found;
+        synchronized (library) {
+            found = library.searchSongByTitle(title) != null;
+            if (found) {
+                library.rateSong(title, rating);
+            }
+        }
+        if (!found) {
+            sendError(exchange, 404, "Song not in library");
+            return;
+        }
+        try (JsonWriter json = beginJson(exchange, 200)) {
+            json.beginObject().field("title", title).field("rating", rating).endObject();
+        }
+    }
+
+    // Stream the caller's library as JSON Lines, or as CSV with "format=csv"
+    private void exportLibrary(HttpExchange exchange, Map<String, String> params) throws IOException {
+        LibraryModel library = requireLibrary(exchange);
+        if (library == null) return;
+        boolean csv = "csv".equalsIgnoreCase(params.get("format"));
+        // Copy references and numbers under the lock, then stream the records after
+        // releasing it, so a slow client never holds up the user's plays and ratings
+        LibraryExport.Snapshot snapshot;
+        synchronized (library) {
+            snapshot = LibraryExport.snapshot(library);
+        }
+        exchange.getResponseHeaders().set("Content-Type", csv ? "text/csv; charset=utf-8" : "application/x-ndjson; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+            LibraryExport.export(snapshot, out, csv ? LibraryExport.Format.CSV : LibraryExport.Format.JSONL);
+        }
+    }
+
+    // The caller's most played songs, all time and weighted toward recent plays
+    private void listTrending(HttpExchange exchange, Map<String, String> params) throws IOException {
+        LibraryModel library = requireLibrary(exchange);
+        if (library == null) return;
+        List<String> frequent;
+        List<String> trending;
+        synchronized (library) {
+            frequent = library.getFrequentlyPlayedSongs();
+            trending = library.getTrendingSongs();
+        }
+        try (JsonWriter json = beginJson(exchange, 200)) {
+            json.beginObject().name("mostPlayed").beginArray();
+            for (String title : frequent) {
+                json.value(title);
+            }
+            json.endArray().name("trending").beginArray();
+            for (String title : trending) {
+                json.value(title);
+            }
+            json.endArray().endObject();
+        }
+    }
+
+    // Songs most often played together with a song in the caller's library
+    private void recommend(HttpExchange exchange, Map<String, String> params) throws IOException {
+        LibraryModel library = requireLibrary(exchange);
+        if (library == null) return;
+        String title = require(params, "title");
+        int limit = params.containsKey("limit") ? parseInt(params.get("limit"), "limit") : 10;
+        Song song;
+        synchronized (library) {
+            song = library.searchSongByTitle(title);
+        }
+        if (song == null) {
+            sendError(exchange, 404, "Song not in library");
+            return;
+        }
+        List<Song> similar = recommender.moreLikeThis(song, limit, musicStore);
+        try (JsonWriter json = beginJson(exchange, 200)) {
+            json.beginArray();
+            for (Song other : similar) {
+                writeSong(json, other);
+            }
+            json.endArray();
+        }
+    }
+
+    // Approximate global top songs; window is hour, day, week or all (the default)
+    private void showChart(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String windowName = params.getOrDefault("window", "all").toUpperCase(Locale.ROOT);
+        GlobalCharts.Window window;
+        try {
+            window = windowName.equals("ALL") ? GlobalCharts.Window.ALL_TIME : GlobalCharts.Window.valueOf(windowName);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("window must be hour, day, week or all");
+        }
+        int limit = params.containsKey("limit") ? parseInt(params.get("limit"), "limit") : 10;
+        long now = System.currentTimeMillis();
+        List<HeavyHitters.Entry> top = charts.top(window, limit, now);
+        try (JsonWriter json = beginJson(exchange, 200)) {
+            json.beginObject()
+                .field("window", windowName.toLowerCase(Locale.ROOT))
+                .field("maxError", charts.totalAndMaxError(window, now)[1])
+                .name("songs").beginArray();
+            for (HeavyHitters.Entry entry : top) {
+                Song song = musicStore.getSong(entry.getSongId());
+                if (song == null) continue; // album removed since it was played
+                json.beginObject()
+                    .field("title", song.getTitle())
+                    .field("artist", song.getArtist())
+                    .field("album", song.getAlbum())
+                    .field("plays", entry.getCount())
+                    .field("error", entry.getError())
+                    .endObject();
+            }
+            json.endArray().endObject();
+        }
+    }
+
+    // Approximate distinct listeners of an artist, or of a song given by album and title
+    private void showListeners(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String artist = params.get("artist");
+        if (artist != null) {
+            try (JsonWriter json = beginJson(exchange, 200)) {
+                json.beginObject()
+                    .field("artist", artist)
+                    .field("listeners", listenerStats.getArtistListeners(artist))
+                    .endObject();
+            }
+            return;
+        }
+        Song song = musicStore.findSong(require(params, "title"), require(params, "album"));
+        if (song == null) {
+            sendError(exchange, 404, "Song not found in store");
+            return;
+        }
+        try (JsonWriter json = beginJson(exchange, 200)) {
+            json.beginObject()
+                .field("title", song.getTitle())
+                .field("album", song.getAlbum())
+                .field("listeners", listenerStats.getSongListeners(song.getId()))
+                .endObject();
+        }
+    }
+
+    // Hit, miss and eviction counts of the shared catalog query cache
+    private void showCacheStats(HttpExchange exchange, Map<String, String> params) throws IOException {
+        QueryCache cache = musicStore.getQueryCache();
+        if (cache == null) {
+            sendError(exchange, 404, "No query cache attached");
+            return;
+        }
+        try (JsonWriter json = beginJson(exchange, 200)) {
+            json.beginObject()
+                .field("entries", cache.size())
+                .field("weight", cache.weight())
+                .field("hits", cache.getHits())
+                .field("misses", cache.getMisses())
+                .field("evictions", cache.getEvictions())
+                .field("rejections", cache.getRejections())
+                .field("invalidations", cache.getInvalidations())
+                .endObject();
+        }
+    }
+
+    private void listPlaylists(HttpExchange exchange, Map<String, String> params) throws IOException {
+        LibraryModel library = requireLibrary(exchange);
+        if (library == null) return;
+        Map<String, List<SongState>> playlists = new LinkedHashMap<>();
+        synchronized (library) {
+            for (PlayList playlist : library.getPlaylists().values()) {
+                playlists.put(playlist.getName(), statesOf(playlist, library));
+            }
+        }
+        try (JsonWriter json = beginJson(exchange, 200)) {
+            json.beginArray();
+            for (Map.Entry<String, List<SongState>> playlist : playlists.entrySet()) {
+                json.beginObject().field("name", playlist.getKey()).name("songs").beginArray();
+                for (SongState song : playlist.getValue()) {
+                    writeSong(json, song);
+                }
+                json.endArray().endObject();
+            }
+            json.endArray();
+        }
+    }
+
+    private void createPlaylist(HttpExchange exchange, Map<String, String> params) throws IOException {
+        LibraryModel library = requireLibrary(exchange);
+        if (library == null) return;
+        String name = require(params, "name");
+        synchronized (library) {
+            library.createPlaylist(name);
+        }
+        try (JsonWriter json = beginJson(exchange, 200)) {
+            json.beginObject().field("name", name).endObject();
+        }
+    }
+
+    private void addToPlaylist(HttpExchange exchange, Map<String, String> params) throws IOException {
+        LibraryModel library = requireLibrary(exchange);
+        if (library == null) return;
+        String name = require(params, "name");
+        String title = require(params, "title");
+        String missing = null;
+        synchronized (library) {
+            Song song = library.searchSongByTitle(title);
+            if (song == null) {
+                missing = "Song not in library";
+            } else if (!library.getPlaylists().containsKey(name)) {
+                missing = "No such playlist";
+            } else {
+                library.addSongToPlaylist(name, song);
+            }
+        }
+        if (missing != null) {
+            sendError(exchange, 404, missing);
+            return;
+        }
+        try (JsonWriter json = beginJson(exchange, 200)) {
+            json.beginObject().field("name", name).field("title", title).endObject();
+        }
+    }
+
+    // Move "count" songs (default 1) of a playlist from position "from" to position "to"
+    private void moveInPlaylist(HttpExchange exchange, Map<String, String> params) throws IOException {
+        LibraryModel library = requireLibrary(exchange);
+        if (library == null) return;
+        String name = require(params, "name");
+        int from = parseInt(require(params, "from"), "from");
+        int to = parseInt(require(params, "to"), "to");
+        int count = params.containsKey("count") ? parseInt(params.get("count"), "count") : 1;
+        synchronized (library) {
+            try {
+                if (!library.moveSongsInPlaylist(name, from, count, to)) {
+                    sendError(exchange, 404, "No such playlist");
+                    return;
+                }
+            } catch (IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+        }
+        try (JsonWriter json = beginJson(exchange, 200)) {
+            json.beginObject().field("name", name).field("from", from).field("to", to).field("count", count).endObject();
+        }
+    }
+
+    // ----- Helpers -----
+
+    // Resolve the caller's library from the session header, or answer 401 and return null
+    private LibraryModel requireLibrary(HttpExchange exchange) throws IOException {
+        String token = exchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+        String username = token == null ? null : sessions.get(token);
+        if (username == null) {
+            sendError(exchange, 401, "Not logged in");
+            return null;
+        }
+        LoadedLibrary loaded = libraries.get(username);
+        if (loaded == null) { // the session logged out meanwhile
+            sendError(exchange, 401, "Not logged in");
+            return null;
+        }
+        return loaded.library;
+    }
+
+    // The "user" parameter, rejected (400) unless it is safe to store as a credential and file name
+    private static String requireUsername(Map<String, String> params) {
+        String username = require(params, "user");
+        if (!UserManager.isValidUsername(username)) {
+            throw new IllegalArgumentException("user must not be empty or contain / \\ .. , or control characters");
+        }
+        return username;
+    }
+
+    private String newToken() {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        StringBuilder token = new StringBuilder(32);
+        for (byte b : bytes) {
+            token.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return token.toString();
+    }
+
+    // Rating and play count of each song, in order (call with the library locked)
+    private static List<SongState> statesOf(Iterable<Song> songs, LibraryModel library) {
+        List<SongState> states = new ArrayList<>();
+        for (Song song : songs) {
+            states.add(new SongState(song, library));
+        }
+        return states;
+    }
+
+    private void writeSong(JsonWriter json, Song song) throws IOException {
+        writeSongFields(json, song).endObject();
+    }
+
+    private void writeSong(JsonWriter json, SongState state) throws IOException {
+        writeSongFields(json, state.song)
+            .field("rating", state.rating)
+            .field("plays", state.plays)
+            .endObject();
+    }
+
+    private JsonWriter writeSongFields(JsonWriter json, Song song) throws IOException {
+        return json.beginObject()
+            .field("title", song.getTitle())
+            .field("artist", song.getArtist())
+            .field("album", song.getAlbum())
+            .field("genre", song.getGenre());
+    }
+
+    private void writeAlbum(JsonWriter json, Album album, boolean withSongs) throws IOException {
+        json.beginObject()
+            .field("title", album.getTitle())
+            .field("artist", album.getArtist())
+            .field("genre", album.getGenre())
+            .field("year", album.getYear());
+        if (withSongs) {
+            json.name("songs").beginArray();
+            for (Song song : album.getSongs()) {
+                json.value(song.getTitle());
+            }
+            json.endArray();
+        }
+        json.endObject();
+    }
+
+    // Start a chunked JSON response; the body is streamed as it is written
+    private JsonWriter beginJson(HttpExchange exchange, int status) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, 0);
+        return new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8)));
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        try (JsonWriter json = beginJson(exchange, status)) {
+            json.beginObject().field("error", message).endObject();
+        }
+    }
+
+    // Decode query-string parameters plus a url-encoded form body, if any
+    private static Map<String, String> readParams(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), params);
+        if ("POST".equals(exchange.getRequestMethod())) {
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            if (body.length > 0) {
+                parseForm(new String(body, StandardCharsets.UTF_8), params);
+            }
+        }
+        return params;
+    }
+
+    private static void parseForm(String raw, Map<String, String> params) {
+        if (raw == null || raw.isEmpty()) return;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8),
+                       URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String require(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    private static int parseInt(String value, String name) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+}
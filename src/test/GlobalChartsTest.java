@@ -0,0 +1,37 @@
+package test;
+
+import model.*;
+import org.junit.jupiter.api.*;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GlobalChartsTest {
+	@Test
+	void testGlobalChartsWindows() {
+		GlobalCharts charts = new GlobalCharts(4);
+		long start = 10L * 24 * 60 * 60 * 1000;
+		long twoHours = 2L * 60 * 60 * 1000;
+		for (int i = 0; i < 50; i++) {
+			charts.record(1, start);
+		}
+		for (int id = 100; id < 120; id++) {
+			charts.record(id, start + twoHours); // long tail, more songs than counters
+		}
+		charts.record(2, start + twoHours);
+		charts.record(2, start + twoHours);
+
+		List<HeavyHitters.Entry> allTime = charts.top(GlobalCharts.Window.ALL_TIME, 1, start + twoHours);
+		assertEquals(1, allTime.get(0).getSongId());
+		assertTrue(allTime.get(0).getLowerBound() <= 50 && allTime.get(0).getCount() >= 50);
+
+		List<HeavyHitters.Entry> lastHour = charts.top(GlobalCharts.Window.HOUR, 4, start + twoHours);
+		for (HeavyHitters.Entry entry : lastHour) {
+			assertNotEquals(1, entry.getSongId()); // played two hours ago
+		}
+		HeavyHitters.Entry lastDay = charts.top(GlobalCharts.Window.DAY, 1, start + twoHours).get(0);
+		assertEquals(1, lastDay.getSongId());
+		assertTrue(lastDay.getLowerBound() <= 50 && lastDay.getCount() >= 50);
+	}
+}
@@ -0,0 +1,35 @@
+package test;
+
+import model.*;
+import org.junit.jupiter.api.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntIntMapTest {
+	@Test
+	void testIntIntMapCountsAndIterates() {
+		IntIntMap counts = new IntIntMap();
+		Map<Integer, Integer> expected = new HashMap<>();
+		Random random = new Random(49);
+		for (int i = 0; i < 20000; i++) {
+			int key = random.nextInt(600) - 300;
+			if (random.nextInt(4) == 0) {
+				assertEquals(expected.remove(key) != null, counts.remove(key));
+			} else {
+				assertEquals((int) expected.merge(key, 1, Integer::sum), counts.increment(key, 1));
+			}
+		}
+		assertEquals(expected.size(), counts.size());
+		Map<Integer, Integer> seen = new HashMap<>();
+		for (int slot = counts.firstSlot(); slot >= 0; slot = counts.nextSlot(slot)) {
+			seen.put(counts.keyAt(slot), counts.valueAt(slot));
+		}
+		assertEquals(expected, seen);
+		assertEquals(0, counts.get(1000));
+		assertEquals(-1, counts.getOrDefault(1000, -1));
+	}
+}
@@ -2,7 +2,14 @@ package test;
 
 import model.*;
 import org.junit.jupiter.api.*;
-
+import view.ConsoleRenderer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 
@@ -47,6 +54,23 @@ public class LibraryModelTest {
 		assertEquals(2, library.getUserSongs().size());
 	}
 
+	@Test
+	void testSameTitleOnDifferentAlbumsKeptApart() {
+		Song first = new Song("Intro", "Artist A", "Album A", "Pop");
+		Song second = new Song("Intro", "Artist B", "Album B", "Rock");
+		library.addSong(first);
+		library.addSong(second);
+
+		assertEquals(2, library.getSongsById().size());
+		assertEquals(2, library.searchSongsByTitle("Intro").size());
+		library.rateSong(second.getId(), 4);
+		assertNull(library.getRating(first.getId()));
+		assertEquals(4, library.getRating(second.getId()));
+
+		library.removeSong(first.getId());
+		assertSame(second, library.searchSongByTitle("Intro"));
+	}
+
 	@Test
 	void testCreatePlaylist() {
 		library.createPlaylist("My Playlist");
@@ -125,6 +149,24 @@ public class LibraryModelTest {
 		library.displayPlaylists();
 	}
 
+	@Test
+	void testRenderLibraryInPages() {
+		for (int i = 0; i < 5; i++) {
+			library.addSong(new Song("Paged " + i, "Artist", "Album", "Pop"));
+		}
+		StringWriter buffer = new StringWriter();
+		ConsoleRenderer renderer = new ConsoleRenderer(buffer, 2);
+		ConsoleRenderer.Cursor<Song> cursor = renderer.open(library.iterator(), Song::appendTo);
+
+		assertEquals(2, cursor.nextPage());
+		assertEquals(2, buffer.toString().split("\n").length);
+		assertEquals(2, cursor.nextPage());
+		assertEquals(1, cursor.nextPage());
+		assertFalse(cursor.hasMore());
+		assertEquals(3, cursor.getPagesWritten());
+		assertEquals(5, buffer.toString().split("\n").length);
+	}
+
 	@Test
 	void testPlaySongTracksRecentAndFrequency() {
 		Song song = new Song("Play Me", "Artist", "Album", "Pop");
@@ -165,6 +207,37 @@ public class LibraryModelTest {
 		assertFalse(library.getUserSongs().containsKey("A Song"));
 	}
 
+	@Test
+	void testRemoveSongCascadesToPlaylists() {
+		Song song = new Song("Shared Song", "Artist", "Album", "Pop");
+		Song other = new Song("Other Song", "Artist", "Album", "Pop");
+		library.addSong(song);
+		library.addSong(other);
+		library.createPlaylist("First");
+		library.createPlaylist("Second");
+		library.addSongToPlaylist("First", song);
+		library.addSongToPlaylist("First", other);
+		library.addSongToPlaylist("Second", song);
+
+		library.removeSong("Shared Song");
+
+		assertEquals(1, library.getPlaylists().get("First").getSongs().size());
+		assertEquals("Other Song", library.getPlaylists().get("First").getSongs().get(0).getTitle());
+		assertTrue(library.getPlaylists().get("Second").getSongs().isEmpty());
+	}
+
+	@Test
+	void testRemoveAlbumCascadesToPlaylists() {
+		Song song = new Song("Album Track", "Artist", "Cascade Album", "Rock");
+		library.addAlbum(new Album("Cascade Album", "Artist", "Rock", 2020, Arrays.asList(song)));
+		library.createPlaylist("Mix");
+		library.addSongToPlaylist("Mix", song);
+
+		library.removeAlbum("Cascade Album");
+
+		assertTrue(library.getPlaylists().get("Mix").getSongs().isEmpty());
+	}
+
 	@Test
 	void testGenerateGenreBasedPlaylists() {
 		for (int i = 0; i < 10; i++) {
@@ -231,4 +304,237 @@ public class LibraryModelTest {
 		assertNotNull(found);
 	}
 
+	@Test
+	void testCoPlayRecommendations() {
+		CoPlayRecommender recommender = new CoPlayRecommender(3, 2);
+		Song seed = new Song(1 << MusicStore.TRACK_BITS, "Seed", "Artist", "Album", "Pop");
+		Song often = new Song((1 << MusicStore.TRACK_BITS) + 1, "Often", "Artist", "Album", "Pop");
+		Song once = new Song((1 << MusicStore.TRACK_BITS) + 2, "Once", "Artist", "Album", "Pop");
+		for (String user : Arrays.asList("ann", "bob", "cat")) {
+			LibraryModel userLibrary = new LibraryModel(user);
+			userLibrary.addPlayListener(recommender);
+			userLibrary.addSong(seed);
+			userLibrary.addSong(often);
+			userLibrary.addSong(once);
+			userLibrary.playSong(seed.getId());
+			userLibrary.playSong(often.getId());
+			if (user.equals("ann")) {
+				userLibrary.playSong(once.getId());
+			}
+		}
+
+		int[] similar = recommender.similarSongs(seed.getId(), 5);
+		assertEquals(2, similar.length);
+		assertEquals(often.getId(), similar[0]);
+		assertEquals(once.getId(), similar[1]);
+		assertEquals(0, recommender.similarSongs(seed.getId() + 99, 5).length);
+	}
+
+	@Test
+	void testBinaryLibraryRoundTrip() throws Exception {
+		Song commas = new Song("Hello, Goodbye", "The Beatles", "Magical Mystery Tour", "Rock");
+		Song other = new Song("Yesterday", "The Beatles", "Help!", "Rock");
+		library.addSong(commas);
+		library.addSong(other);
+		library.rateSong(commas.getId(), 5);
+		library.rateSong(commas.getId(), 4); // stays a favorite
+		library.playSong(other.getId());
+		library.playSong(other.getId());
+		library.createPlaylist("Mix");
+		library.addSongToPlaylist("Mix", other);
+		library.addSongToPlaylist("Mix", commas);
+
+		for (boolean compress : new boolean[] { false, true }) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			LibraryFile.write(library, bytes, compress);
+			LibraryModel restored = new LibraryModel();
+			LibraryFile.read(new ByteArrayInputStream(bytes.toByteArray()), restored, null);
+
+			Song restoredCommas = restored.searchSongByTitle("Hello, Goodbye");
+			assertNotNull(restoredCommas);
+			assertEquals("Magical Mystery Tour", restoredCommas.getAlbum());
+			assertEquals(4, restored.getRating(restoredCommas.getId()));
+			assertTrue(restored.getFavoriteSongs().contains("Hello, Goodbye"));
+			assertEquals(2, restored.getPlayCount("Yesterday"));
+			assertEquals(Arrays.asList("Yesterday"), restored.getFrequentlyPlayedSongs());
+			List<Song> mix = restored.getPlaylists().get("Mix").getSongs();
+			assertEquals("Yesterday", mix.get(0).getTitle());
+			assertEquals("Hello, Goodbye", mix.get(1).getTitle());
+		}
+	}
+
+	@Test
+	void testRatingsUseOneSource() {
+		Song plain = new Song("Plain", "Artist", "Album", "Pop", 3);
+		Song loved = new Song("Loved", "Artist", "Album", "Pop", 3);
+		Song preset = new Song("Preset", "Artist", "Album", "Pop", 4);
+		library.addSong(plain);
+		library.addSong(loved);
+		library.addSong(preset);
+		library.rateSong("Loved", 5);
+		library.rateSong("Preset", 1);
+
+		List<Song> sorted = library.sortByRating();
+		assertEquals(Arrays.asList(loved, plain, preset), sorted);
+		assertEquals(3, loved.getRating(), "Shared song objects are not modified");
+		assertEquals(Arrays.asList(loved), library.getSongsRatedAtLeast(4));
+
+		library.generateTopRatedPlaylist();
+		assertEquals(Arrays.asList(loved), library.getPlaylists().get("Top Rated Songs").getSongs());
+
+		library.removeSong("Loved");
+		assertEquals(Arrays.asList(plain, preset), library.sortByRating());
+	}
+
+	@Test
+	void testTrendingFavorsRecentPlays() {
+		long day = 24L * 60 * 60 * 1000;
+		long now = 1000 * day;
+		Song oldHit = new Song("Old Hit", "Artist", "Album", "Pop");
+		Song newHit = new Song("New Hit", "Artist", "Album", "Pop");
+		library.addSong(oldHit);
+		library.addSong(newHit);
+		library.setTrendingHalfLife(day);
+		for (int i = 0; i < 20; i++) {
+			library.playSong(oldHit.getId(), now - 30 * day);
+		}
+		for (int i = 0; i < 3; i++) {
+			library.playSong(newHit.getId(), now);
+		}
+
+		assertEquals("Old Hit", library.getFrequentlyPlayedSongs().get(0));
+		assertEquals(Arrays.asList("New Hit", "Old Hit"), library.getTrendingSongs());
+	}
+
+	@Test
+	void testCheckpointRestoresFullState() throws Exception {
+		Song first = new Song("First", "Artist", "Album", "Pop");
+		Song second = new Song("Second", "Artist", "Album", "Rock");
+		library.addSong(first);
+		library.addSong(second);
+		library.addAlbum(new Album("Album", "Artist", "Pop"));
+		library.rateSong("First", 5);
+		library.rateSong("First", 2);
+		library.playSong(second.getId(), 1000);
+		library.playSong(second.getId(), 2000);
+		library.playSong(first.getId(), 3000);
+		library.createPlaylist("Mix");
+		library.addSongToPlaylist("Mix", second);
+
+		Path file = Files.createTempFile("library", ".ckpt");
+		try {
+			LibraryCheckpoint.save(library, file);
+			LibraryModel restored = LibraryCheckpoint.restore(file, "owner", null);
+			assertEquals("owner", restored.getOwner());
+			assertEquals(library.getSongRatings(), restored.getSongRatings());
+			assertEquals(library.getFavoriteSongs(), restored.getFavoriteSongs());
+			assertEquals(2, restored.getPlayCount("Second"));
+			assertEquals(library.getRecentSongs(), restored.getRecentSongs());
+			assertEquals(library.getTrendingSongs(), restored.getTrendingSongs());
+			assertTrue(restored.getUserAlbums().containsKey("Album"));
+			assertEquals("Second", restored.getPlaylists().get("Mix").getSongs().get(0).getTitle());
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	void testPlaylistPositionalEdits() {
+		Song[] songs = new Song[6];
+		library.createPlaylist("Queue");
+		for (int i = 0; i < songs.length; i++) {
+			songs[i] = new Song("Track " + i, "Artist", "Album", "Pop");
+			library.addSong(songs[i]);
+			library.addSongToPlaylist("Queue", songs[i]);
+		}
+		PlayList queue = library.getPlaylists().get("Queue");
+		queue.moveSong(0, 5);
+		assertEquals(Arrays.asList(songs[1], songs[2], songs[3], songs[4], songs[5], songs[0]), queue.getSongs());
+		assertTrue(library.moveSongsInPlaylist("Queue", 3, 3, 0));
+		assertEquals(Arrays.asList(songs[4], songs[5], songs[0], songs[1], songs[2], songs[3]), queue.getSongs());
+		assertEquals(songs[1], library.removeSongFromPlaylist("Queue", 3));
+		library.insertSongIntoPlaylist("Queue", 1, songs[1]);
+		assertEquals(songs[1], queue.getSong(1));
+		assertEquals(4, queue.indexOf(songs[2]));
+
+		library.removeSong("Track 5");
+		assertEquals(-1, queue.indexOf(songs[5]));
+		assertEquals(5, queue.size());
+		assertThrows(IndexOutOfBoundsException.class, () -> queue.moveSongs(2, 4, 0));
+	}
+
+	@Test
+	void testStreamingExportRoundTrip() throws Exception {
+		Song plain = new Song("Plain", "Artist", "Album", "Pop");
+		Song tricky = new Song("Comma, \"Quote\"\nand line", "Artist", "Album", "Rock");
+		library.addSong(plain);
+		library.addSong(tricky);
+		library.rateSong("Plain", 5);
+		library.playSong(tricky.getId());
+		library.playSong(tricky.getId());
+		library.createPlaylist("Mix, Vol. 1");
+		library.addSongToPlaylist("Mix, Vol. 1", tricky);
+		library.addSongToPlaylist("Mix, Vol. 1", plain);
+		library.createPlaylist("Empty");
+
+		for (LibraryExport.Format format : LibraryExport.Format.values()) {
+			StringWriter out = new StringWriter();
+			assertEquals(6, LibraryExport.export(library, out, format));
+			LibraryModel imported = new LibraryModel();
+			assertEquals(6, LibraryExport.importInto(new StringReader(out.toString()), format, imported, null));
+			assertEquals(library.getSongRatings(), imported.getSongRatings(), format.name());
+			assertEquals(library.getFavoriteSongs(), imported.getFavoriteSongs(), format.name());
+			assertEquals(2, imported.getPlayCount(tricky.getTitle()), format.name());
+			assertEquals(library.getFrequentlyPlayedSongs(), imported.getFrequentlyPlayedSongs(), format.name());
+			List<Song> mix = imported.getPlaylists().get("Mix, Vol. 1").getSongs();
+			assertEquals(tricky.getTitle(), mix.get(0).getTitle(), format.name());
+			assertEquals("Plain", mix.get(1).getTitle(), format.name());
+			assertTrue(imported.getPlaylists().get("Empty").getSongs().isEmpty(), format.name());
+
+			StringWriter fromSnapshot = new StringWriter();
+			assertEquals(6, LibraryExport.export(LibraryExport.snapshot(library), fromSnapshot, format));
+			assertEquals(out.toString(), fromSnapshot.toString(), format.name());
+		}
+
+		User user = new User("user", "hash");
+		user.addSongToLibrary(plain);
+		user.playSong(plain);
+		user.markSongAsFavorite(plain);
+		StringWriter out = new StringWriter();
+		LibraryExport.export(user, out, LibraryExport.Format.CSV);
+		User copy = new User("copy", "hash");
+		LibraryExport.importInto(new StringReader(out.toString()), LibraryExport.Format.CSV, copy, null);
+		assertEquals("Plain", copy.getLibrary().get(0).getTitle());
+		assertEquals("Plain", copy.getTopRatedSongs().get(0).getTitle());
+		assertEquals(1, copy.getFavoriteSongs().size());
+	}
+
+	@Test
+	void testRatingSurvivesDefaultRatingChange() {
+		Song song = new Song("Changing", "Artist", "Album", "Pop");
+		library.addSong(song);
+		song.setRating(1); // after it was added, so its bucket no longer matches
+		library.rateSong("Changing", 5);
+		assertEquals(5, library.getEffectiveRating(song.getId()));
+		assertEquals(Arrays.asList(song), library.getSongsRatedAtLeast(5));
+		assertEquals(1, library.sortByRating().size(), "The song is in exactly one bucket");
+	}
+
+	@Test
+	void testPlayReplacesSongsMarkedTopRated() {
+		User user = new User("user", "hash");
+		Song played = new Song("Played", "Artist", "Album", "Pop");
+		Song marked = new Song("Marked", "Artist", "Album", "Pop");
+		user.addSongToLibrary(played);
+		user.addSongToLibrary(marked);
+		user.playSong(played);
+		user.markSongAsTopRated(marked);
+		assertEquals(Arrays.asList(played, marked), user.getTopRatedSongs());
+
+		user.playSong(played); // the list is the most played songs again
+		assertEquals(Arrays.asList(played), user.getTopRatedSongs());
+		user.playSong(marked);
+		assertEquals(Arrays.asList(played, marked), user.getTopRatedSongs());
+	}
+
 }
@@ -0,0 +1,66 @@
+package test;
+
+import model.*;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LibraryPersisterTest {
+	@Test
+	void testPersisterCoalescesSaves() throws Exception {
+		LibraryPersister persister = new LibraryPersister();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger written = new AtomicInteger();
+		persister.save("first", () -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		started.await();
+		for (int i = 0; i < 3; i++) {
+			persister.save("second", written::incrementAndGet); // writer is busy, so these queue up
+		}
+		persister.awaitSaved("third"); // nothing of theirs is queued, so this returns while the writer is busy
+		release.countDown();
+		persister.awaitSaved("second");
+		assertEquals(1, written.get());
+		persister.flush();
+		assertEquals(2, persister.getCoalesced());
+		assertEquals(2, persister.getWrites());
+
+		persister.close();
+		persister.save("second", written::incrementAndGet);
+		assertEquals(2, written.get());
+	}
+
+	@Test
+	void testReplacedSaveKeepsItsTurn() throws Exception {
+		LibraryPersister persister = new LibraryPersister();
+		CountDownLatch release = new CountDownLatch(1);
+		List<String> order = Collections.synchronizedList(new ArrayList<>());
+		persister.save("busy", () -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		persister.save("often", () -> order.add("often (old)"));
+		persister.save("rarely", () -> order.add("rarely"));
+		persister.save("often", () -> order.add("often"));
+		release.countDown();
+		persister.close();
+		assertEquals(Arrays.asList("often", "rarely"), order);
+	}
+}
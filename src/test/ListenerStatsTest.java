@@ -0,0 +1,37 @@
+package test;
+
+import model.*;
+import org.junit.jupiter.api.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ListenerStatsTest {
+	@Test
+	void testListenerStatsMergeAndReload() throws Exception {
+		ListenerStats shardA = new ListenerStats();
+		ListenerStats shardB = new ListenerStats();
+		for (int i = 0; i < 3000; i++) {
+			shardA.record("user" + i, 7, "Adele");
+			shardB.record("user" + (i + 1000), 7, "Adele"); // 2000 shared users
+			shardA.record("user" + i, 7, "Adele");        // repeats are not new listeners
+		}
+		shardA.merge(shardB);
+		long listeners = shardA.getSongListeners(7);
+		assertTrue(Math.abs(listeners - 4000) < 400, "estimate " + listeners);
+		assertEquals(listeners, shardA.getArtistListeners("Adele"));
+		assertEquals(0, shardA.getSongListeners(8));
+
+		Path file = Files.createTempFile("listeners", ".bin");
+		try {
+			assertTrue(shardA.save(file));
+			ListenerStats restored = new ListenerStats();
+			assertTrue(restored.load(file));
+			assertEquals(listeners, restored.getSongListeners(7));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+}
@@ -4,7 +4,10 @@ import model.*;
 import org.junit.jupiter.api.*;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -44,6 +47,160 @@ public class MusicStoreTest {
         assertTrue(songs.isEmpty(), "Songs list should be empty");
     }
 
+    @Test
+    void testSongIdsAreStableAndResolvable() {
+        Album album = musicStore.getAlbum("Old Ideas");
+        Song first = album.getSongs().get(0);
+        assertTrue(first.isCatalogSong(), "Catalog songs should have catalog IDs");
+        assertSame(first, musicStore.getSong(first.getId()));
+        assertSame(first, musicStore.findSong(first.getTitle(), "Old Ideas"));
+
+        MusicStore reloaded = new MusicStore(TEST_ALBUMS_FILE);
+        assertEquals(first.getId(), reloaded.getAlbum("Old Ideas").getSongs().get(0).getId(),
+                "The same index should give the same IDs");
+        assertNull(musicStore.getSong(-1), "Negative IDs are never catalog songs");
+    }
+
+    @Test
+    void testReloadOnlyTouchesChangedAlbums() throws IOException {
+        String indexFile = "resources/reload_albums.txt";
+        String albumFile = "resources/albums/Reload Test_Tester.txt";
+        try {
+            createFileWithContent(indexFile, "Old Ideas,Leonard Cohen\n");
+            MusicStore store = new MusicStore(indexFile);
+            Album untouched = store.getAlbum("Old Ideas");
+
+            createFileWithContent(albumFile, "Reload Test,Tester,Pop,2024\nFirst\n");
+            createFileWithContent(indexFile, "Old Ideas,Leonard Cohen\nReload Test,Tester\n");
+            store.reloadIndex();
+            assertEquals(1, store.getAlbum("Reload Test").getSongs().size());
+            assertSame(untouched, store.getAlbum("Old Ideas"), "Unchanged albums should not be re-parsed");
+
+            CatalogSnapshot before = store.snapshot();
+            createFileWithContent(albumFile, "Reload Test,Tester,Pop,2024\nFirst\nSecond\n");
+            store.reloadAlbumFile("Reload Test_Tester.txt");
+            assertEquals(2, store.getAlbum("Reload Test").getSongs().size());
+            assertEquals(2, store.getSongsByArtist("Tester").size());
+            assertEquals(1, before.getAlbum("Reload Test").getSongs().size(), "Old snapshots never change");
+            assertTrue(store.snapshot().getVersion() > before.getVersion());
+
+            createFileWithContent(indexFile, "Old Ideas,Leonard Cohen\n");
+            store.reloadIndex();
+            assertNull(store.getAlbum("Reload Test"));
+            assertTrue(store.getSongsByArtist("Tester").isEmpty());
+        } finally {
+            new File(indexFile).delete();
+            new File(albumFile).delete();
+            new File(indexFile.replace(".txt", ".ids")).delete();
+        }
+    }
+
+    @Test
+    void testSongIdsSurviveCatalogEdits() throws IOException {
+        String indexFile = "resources/ids_albums.txt";
+        String albumFile = "resources/albums/Id Test_Tester.txt";
+        try {
+            createFileWithContent(albumFile, "Id Test,Tester,Pop,2024\nFirst\nSecond\n");
+            createFileWithContent(indexFile, "Id Test,Tester\nOld Ideas,Leonard Cohen\n");
+            MusicStore store = new MusicStore(indexFile);
+            int second = store.findSong("Second", "Id Test").getId();
+            int cohen = store.getAlbum("Old Ideas").getSongs().get(0).getId();
+
+            // Reorder the index and insert a track before "Second", then start over
+            createFileWithContent(indexFile, "Old Ideas,Leonard Cohen\nId Test,Tester\n");
+            createFileWithContent(albumFile, "Id Test,Tester,Pop,2024\nFirst\nInserted\nSecond\n");
+            MusicStore reordered = new MusicStore(indexFile);
+            assertEquals(second, reordered.findSong("Second", "Id Test").getId());
+            assertEquals(cohen, reordered.getAlbum("Old Ideas").getSongs().get(0).getId());
+            assertEquals("Second", reordered.getSong(second).getTitle());
+            Song inserted = reordered.findSong("Inserted", "Id Test");
+            assertNotEquals(second, inserted.getId(), "New songs get new IDs");
+            assertSame(inserted, reordered.getSong(inserted.getId()));
+
+            MusicStore offHeap = new MusicStore(indexFile, MusicStore.Mode.OFF_HEAP);
+            assertEquals("Second", offHeap.getSong(second).getTitle());
+            assertEquals(inserted.getId(), offHeap.findSong("Inserted", "Id Test").getId());
+        } finally {
+            new File(indexFile).delete();
+            new File(albumFile).delete();
+            new File(indexFile.replace(".txt", ".ids")).delete();
+        }
+    }
+
+    @Test
+    void testSongIdsSurviveTabsInTitles() throws IOException {
+        String indexFile = "resources/tab_albums.txt";
+        String albumFile = "resources/albums/Tab Test_Tester.txt";
+        try {
+            createFileWithContent(albumFile, "Tab Test,Tester,Pop,2024\nTab\tTitle\nBack\\slash\\t\n");
+            createFileWithContent(indexFile, "Tab Test,Tester\n");
+            MusicStore store = new MusicStore(indexFile);
+            int tabbed = store.findSong("Tab\tTitle", "Tab Test").getId();
+            int slashed = store.findSong("Back\\slash\\t", "Tab Test").getId();
+
+            // Insert a track before both, then start over from the saved table
+            createFileWithContent(albumFile, "Tab Test,Tester,Pop,2024\nInserted\nTab\tTitle\nBack\\slash\\t\n");
+            MusicStore reloaded = new MusicStore(indexFile);
+            assertEquals(tabbed, reloaded.findSong("Tab\tTitle", "Tab Test").getId());
+            assertEquals(slashed, reloaded.findSong("Back\\slash\\t", "Tab Test").getId());
+        } finally {
+            new File(indexFile).delete();
+            new File(albumFile).delete();
+            new File(indexFile.replace(".txt", ".ids")).delete();
+        }
+    }
+
+    @Test
+    void testIndexesFollowReloads() throws IOException {
+        String indexFile = "resources/indexes_albums.txt";
+        String albumFile = "resources/albums/Index Test_Tester.txt";
+        try {
+            createFileWithContent(albumFile, "Index Test,Tester,Pop,2024\nFirst Light\nSecond Wind\n");
+            createFileWithContent(indexFile, "Old Ideas,Leonard Cohen\nIndex Test,Tester\n");
+            MusicStore store = new MusicStore(indexFile);
+            // Build every index, then change the album and drop the other one
+            assertEquals(2, store.getSongsByGenre("pop").size());
+            assertEquals("Second Wind", store.searchSongsFuzzy("Secnd Wind", 2, 5).get(0).getTitle());
+            assertEquals("Tester", store.searchArtistsFuzzy("Testr", 1, 5).get(0));
+            createFileWithContent(albumFile, "Index Test,Tester,Rock,1999\nFirst Light\nThird Eye\n");
+            store.reloadAlbumFile("Index Test_Tester.txt");
+            createFileWithContent(indexFile, "Index Test,Tester\n");
+            store.reloadIndex();
+
+            MusicStore fresh = new MusicStore(indexFile);
+            assertTrue(store.getSongsByGenre("pop").isEmpty());
+            assertEquals(fresh.getSongsByGenre("rock"), store.getSongsByGenre("rock"));
+            List<Album> years = store.getAlbumsByYearRange(1990, 2030);
+            assertEquals(1, years.size());
+            assertEquals(1999, years.get(0).getYear());
+            assertEquals(1, store.findAlbumsByTitle("index test").size());
+            assertTrue(store.findSongsByArtist("leonard cohen").isEmpty());
+            assertTrue(store.searchSongsFuzzy("Secnd Wind", 2, 5).isEmpty());
+            assertEquals("Third Eye", store.searchSongsFuzzy("Thrid Eye", 2, 5).get(0).getTitle());
+            assertTrue(store.searchAlbumsFuzzy("Old Idaes", 2, 5).isEmpty());
+            assertTrue(store.searchArtistsFuzzy("Leonard Cohn", 1, 5).isEmpty());
+            assertEquals(fresh.searchArtistsFuzzy("Testr", 1, 5), store.searchArtistsFuzzy("Testr", 1, 5));
+        } finally {
+            new File(indexFile).delete();
+            new File(albumFile).delete();
+            new File(indexFile.replace(".txt", ".ids")).delete();
+        }
+    }
+
+    @Test
+    void testFuzzySearchToleratesTypos() {
+        List<Album> albums = musicStore.searchAlbumsFuzzy("Old Idaes", MusicStore.DEFAULT_FUZZY_DISTANCE, 5);
+        assertFalse(albums.isEmpty(), "Two edits away should still match");
+        assertEquals("Old Ideas", albums.get(0).getTitle());
+
+        List<String> artists = musicStore.searchArtistsFuzzy("leonard cohn", 1, 5);
+        assertEquals("Leonard Cohen", artists.get(0), "Matching ignores case");
+
+        Song song = musicStore.getAlbum("Old Ideas").getSongs().get(0);
+        assertTrue(musicStore.searchSongsFuzzy(song.getTitle(), 0, 10).contains(song));
+        assertTrue(musicStore.searchAlbumsFuzzy("Completely Different", 2, 5).isEmpty());
+    }
+
     @Test
     void testDisplayAllAlbums() {
         musicStore.displayAllAlbums();
@@ -80,6 +237,180 @@ public class MusicStoreTest {
         assertTrue(storeWithInvalidYear.getAllAlbums().isEmpty(), "Albums should not be loaded if year is invalid");
     }
 
+    @Test
+    void testLazyStoreLoadsAlbumsOnDemand() throws InterruptedException {
+        MusicStore lazy = new MusicStore(TEST_ALBUMS_FILE, true);
+        int albums = musicStore.getAllAlbums().size();
+        assertEquals(albums, lazy.getUnloadedAlbumCount(), "Only the index should be read");
+
+        Album album = lazy.getAlbum("Old Ideas");
+        assertEquals(albums - 1, lazy.getUnloadedAlbumCount(), "Only the requested album should be parsed");
+        Song first = album.getSongs().get(0);
+        assertEquals(musicStore.getAlbum("Old Ideas").getSongs().get(0).getId(), first.getId(),
+                "Lazy loading should give the same IDs");
+        assertSame(first, lazy.getSong(first.getId()));
+        assertEquals(musicStore.getSongsByArtist("Adele").size(), lazy.getSongsByArtist("Adele").size());
+
+        lazy.startWarmUp().join();
+        assertEquals(0, lazy.getUnloadedAlbumCount());
+        assertEquals(albums, lazy.getAllAlbums().size());
+    }
+
+    @Test
+    void testLazyStoreNeverMissesAlbumsUnderConcurrency() throws Exception {
+        int threads = 8;
+        for (int round = 0; round < 200; round++) {
+            MusicStore lazy = new MusicStore(TEST_ALBUMS_FILE, true);
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicInteger missing = new AtomicInteger();
+            List<Thread> readers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                Thread reader = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (lazy.getAlbum("Begin Again") == null) missing.incrementAndGet();
+                });
+                reader.start();
+                readers.add(reader);
+            }
+            start.countDown();
+            for (Thread reader : readers) {
+                reader.join();
+            }
+            assertEquals(0, missing.get(), "A concurrent first access must never miss the album");
+        }
+    }
+
+    @Test
+    void testNormalizedAndYearIndexes() {
+        Album album = musicStore.getAlbum("Old Ideas");
+        assertTrue(musicStore.findAlbumsByTitle("  old   IDEAS ").contains(album));
+        assertEquals(musicStore.getSongsByArtist("Leonard Cohen"), musicStore.findSongsByArtist("leonard  cohen"));
+        assertTrue(musicStore.getAlbumsByGenre(album.getGenre().toUpperCase()).contains(album));
+        assertTrue(musicStore.getSongsByGenre(album.getGenre()).containsAll(album.getSongs()));
+
+        int year = album.getYear();
+        List<Album> sameYear = musicStore.getAlbumsByYearRange(year, year);
+        assertTrue(sameYear.contains(album));
+        assertTrue(musicStore.getAlbumsByDecade(year).containsAll(sameYear));
+        int count = 0;
+        for (Album any : musicStore.getAllAlbums()) {
+            if (any.getYear() >= 2000 && any.getYear() <= 2009) count++;
+        }
+        assertEquals(count, musicStore.getAlbumsByDecade(2005).size());
+        assertSame(musicStore.getAlbumsByGenre("No Such Genre"), musicStore.getAlbumsByYearRange(3000, 2000),
+                "Misses should share one empty list");
+    }
+
+    @Test
+    void testOffHeapStoreMatchesHeapStore() {
+        MusicStore offHeap = new MusicStore(TEST_ALBUMS_FILE, MusicStore.Mode.OFF_HEAP);
+        assertEquals(musicStore.getAllAlbums().size(), offHeap.getAllAlbums().size());
+        for (Album album : musicStore.getAllAlbums()) {
+            Album view = offHeap.getAlbum(album.getTitle());
+            assertNotNull(view, album.getTitle());
+            assertEquals(album.getArtist(), view.getArtist());
+            assertEquals(album.getYear(), view.getYear());
+            assertEquals(album.getSongs(), view.getSongs(), "Views should carry the same song IDs");
+            for (Song song : album.getSongs()) {
+                Song found = offHeap.getSong(song.getId());
+                assertEquals(song.getTitle(), found.getTitle());
+                assertEquals(song.getGenre(), found.getGenre());
+            }
+        }
+        assertEquals(musicStore.getSongsByArtist("Adele"), offHeap.getSongsByArtist("Adele"));
+        assertTrue(offHeap.getSongsByArtist("Unknown Artist").isEmpty());
+        assertNull(offHeap.getAlbum("Nonexistent Album"));
+        assertEquals(musicStore.getAlbumsByDecade(2000).size(), offHeap.getAlbumsByDecade(2000).size());
+        assertEquals("Old Ideas", offHeap.searchAlbumsFuzzy("Old Idaes", 2, 1).get(0).getTitle());
+    }
+
+    @Test
+    void testQueryCacheServesRepeatsAndFollowsReloads() throws IOException {
+        String indexFile = "resources/cache_albums.txt";
+        String albumFile = "resources/albums/Cache Test_Tester.txt";
+        try {
+            createFileWithContent(albumFile, "Cache Test,Tester,Pop,2024\nFirst\n");
+            createFileWithContent(indexFile, "Old Ideas,Leonard Cohen\nCache Test,Tester\n");
+            MusicStore store = new MusicStore(indexFile);
+            QueryCache cache = new QueryCache();
+            store.setQueryCache(cache);
+
+            List<Song> songs = store.getSongsByArtist("Tester");
+            assertSame(songs, store.getSongsByArtist("Tester"), "A repeat should be served from the cache");
+            assertEquals(store.findSongsByArtist("tester"), store.findSongsByArtist("  TESTER "));
+            assertEquals(2, cache.getHits());
+            assertEquals(2, cache.getMisses());
+            assertThrows(UnsupportedOperationException.class, () -> songs.add(songs.get(0)));
+
+            createFileWithContent(albumFile, "Cache Test,Tester,Pop,2024\nFirst\nSecond\n");
+            store.reloadAlbumFile("Cache Test_Tester.txt");
+            assertEquals(2, store.getSongsByArtist("Tester").size(), "A reload should invalidate cached results");
+            assertEquals(1, cache.getInvalidations());
+        } finally {
+            new File(indexFile).delete();
+            new File(albumFile).delete();
+            new File(indexFile.replace(".txt", ".ids")).delete();
+        }
+    }
+
+    @Test
+    void testQueryCacheEvictsByWeightAndKeepsHotKeys() {
+        QueryCache cache = new QueryCache(16, 16 * 4); // one entry and weight 4 per segment
+        cache.get("hot", 1, () -> List.of(1, 2));
+        for (int i = 0; i < 5; i++) {
+            cache.get("hot", 1, () -> List.of(1, 2));
+        }
+        assertEquals(5, cache.getHits());
+        assertEquals(1, cache.get("heavy", 1, () -> List.of(1, 2, 3, 4, 5)).get(0));
+        assertNull(cache.get("heavy", 1, () -> null), "Results heavier than a segment are never kept");
+
+        // Keys landing in the hot key's segment must not push it out
+        for (int i = 0; i < 1000; i++) {
+            cache.get("cold " + i, 1, () -> List.of(0));
+        }
+        assertEquals(List.of(1, 2), cache.get("hot", 1, () -> List.of(0)));
+        assertTrue(cache.getRejections() > 0);
+        assertTrue(cache.getEvictions() > 0);
+        assertTrue(cache.size() <= 16);
+        assertTrue(cache.weight() <= 16 * 4);
+
+        assertEquals(List.of(0), cache.get("hot", 2, () -> List.of(0)), "A newer version is a miss");
+    }
+
+    @Test
+    void testQueryCacheRejectsBeforeEvicting() {
+        QueryCache cache = new QueryCache(32, 16 * 4); // two entries and weight 4 per segment
+        // Integer keys that differ only above bit 20 share a segment
+        Integer cold = 1;
+        Integer hot = 1 + (1 << 20);
+        Integer heavy = 1 + (2 << 20);
+        cache.get(cold, 1, () -> List.of(1));
+        for (int i = 0; i < 6; i++) {
+            cache.get(hot, 1, () -> List.of(2));
+        }
+        // Making room takes both entries, and the hot one outranks the new key
+        cache.get(heavy, 1, () -> List.of(3, 3));
+        assertEquals(1, cache.getRejections());
+        assertEquals(0, cache.getEvictions(), "A rejected result must not evict anything");
+        assertEquals(List.of(1), cache.get(cold, 1, () -> List.of(0)));
+        assertEquals(List.of(2), cache.get(hot, 1, () -> List.of(0)));
+    }
+
+    @Test
+    void testQueryCacheSurvivesLazyLoads() {
+        MusicStore store = new MusicStore(TEST_ALBUMS_FILE, true);
+        QueryCache cache = new QueryCache();
+        store.setQueryCache(cache);
+        List<Song> songs = store.getSongsByArtist("Leonard Cohen");
+        assertNotNull(store.getAlbum("Begin Again"), "Loads another album");
+        assertSame(songs, store.getSongsByArtist("Leonard Cohen"), "Lazy loads should not invalidate cached results");
+        assertEquals(1, cache.getHits());
+    }
+
     /**
      *Make a empty file
      */
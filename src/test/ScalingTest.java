@@ -0,0 +1,174 @@
+package test;
+
+import model.*;
+import org.junit.jupiter.api.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs key operations at doubling input sizes and checks that their cost grows linearly.
+// Allocation (per-thread ThreadMXBean counters) gets the tight bound; CPU time, which
+// depends on machine load, only has to stay far from quadratic over the whole range.
+public class ScalingTest {
+    private static final int[] SIZES = { 1000, 2000, 4000, 8000 };
+    private static final double MAX_DOUBLING_ALLOCATION = 2.5; // Linear would be 2.0
+    private static final double MAX_RANGE_CPU = 16;            // 8x the input; quadratic would be 64x
+    private static final int RUNS = 3;                         // Best of, to smooth out noise
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    // One workload of size n, built from scratch each time
+    private interface Workload {
+        void run(int n);
+    }
+
+    @Test
+    void testLibraryPlaySongScalesLinearly() {
+        assertScales("LibraryModel.playSong", n -> {
+            LibraryModel library = new LibraryModel();
+            int[] ids = new int[n];
+            for (int i = 0; i < n; i++) {
+                Song song = new Song("Song " + i, "Artist", "Album", "Pop");
+                library.addSong(song);
+                ids[i] = song.getId();
+            }
+            for (int i = 0; i < 2 * n; i++) {
+                library.playSong(ids[(i * 7) % n], i);
+            }
+        });
+    }
+
+    @Test
+    void testUserPlaySongScalesLinearly() {
+        assertScales("User.playSong", n -> {
+            User user = new User("user", "hash");
+            Song[] songs = new Song[n];
+            for (int i = 0; i < n; i++) {
+                songs[i] = new Song("Song " + i, "Artist", "Album", "Pop");
+                user.addSongToLibrary(songs[i]);
+            }
+            for (int i = 0; i < 2 * n; i++) {
+                user.playSong(songs[(i * 7) % n]);
+            }
+        });
+    }
+
+    @Test
+    void testPlayListAddSongScalesLinearly() {
+        assertScales("PlayList.addSong", n -> {
+            PlayList playlist = new PlayList("Mix");
+            Song[] songs = new Song[n];
+            for (int i = 0; i < n; i++) {
+                songs[i] = new Song("Song " + i, "Artist", "Album", "Pop");
+                playlist.addSong(songs[i]);
+            }
+            for (Song song : songs) {
+                playlist.addSong(song); // duplicates are ignored
+            }
+            assertEquals(n, playlist.getSongs().size());
+        });
+    }
+
+    @Test
+    void testUserAddSongWithAlbumScalesLinearly() {
+        assertScales("User.addSongWithAlbum", n -> {
+            User user = new User("user", "hash");
+            for (int i = 0; i < n; i++) {
+                user.addSongWithAlbum(new Song("Song " + i, "Artist", "Album " + i, "Pop"));
+            }
+            assertTrue(user.isAlbumInLibrary("album " + (n - 1)));
+        });
+    }
+
+    @Test
+    void testRatingQueriesScaleLinearly() {
+        assertScales("LibraryModel ratings", n -> {
+            LibraryModel library = new LibraryModel();
+            int[] ids = new int[n];
+            for (int i = 0; i < n; i++) {
+                Song song = new Song("Song " + i, "Artist", "Album", "Pop");
+                library.addSong(song);
+                ids[i] = song.getId();
+            }
+            for (int i = 0; i < n; i++) {
+                library.rateSong(ids[i], 1 + i % 5);
+            }
+            assertEquals(n, library.sortByRating().size());
+            library.generateTopRatedPlaylist();
+        });
+    }
+
+    @Test
+    void testSteadyStatePlaybackAllocatesNothing() {
+        Assumptions.assumeTrue(threads instanceof com.sun.management.ThreadMXBean, "per-thread counters unavailable");
+        LibraryModel library = new LibraryModel();
+        User user = new User("user", "hash");
+        int n = 1000;
+        int[] ids = new int[n];
+        Song[] songs = new Song[n];
+        for (int i = 0; i < n; i++) {
+            songs[i] = new Song("Song " + i, "Artist", "Album", "Pop");
+            library.addSong(songs[i]);
+            user.addSongToLibrary(songs[i]);
+            ids[i] = songs[i].getId();
+        }
+        Workload plays = count -> {
+            for (int i = 0; i < count; i++) {
+                library.playSong(ids[(i * 7) % n], i);
+                user.playSong(songs[(i * 7) % n]);
+            }
+        };
+        for (int i = 0; i < 20; i++) {
+            plays.run(10 * n); // every song played at least once, and the JIT warmed up
+        }
+        long allocated = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            allocated = Math.min(allocated, measure(plays, 100 * n)[0]);
+        }
+        // Per-thread counters are exact, but leave room for a stray JVM-internal allocation
+        assertTrue(allocated < 1024, "100000 plays allocated " + allocated + " bytes");
+    }
+
+    // Run the workload at every size and check how allocation and CPU time grow
+    private void assertScales(String name, Workload workload) {
+        Assumptions.assumeTrue(threads instanceof com.sun.management.ThreadMXBean
+                && threads.isCurrentThreadCpuTimeSupported(), "per-thread counters unavailable");
+        workload.run(SIZES[0]); // warm up
+        workload.run(SIZES[0]);
+
+        long[] allocated = new long[SIZES.length];
+        long[] cpu = new long[SIZES.length];
+        for (int i = 0; i < SIZES.length; i++) {
+            allocated[i] = Long.MAX_VALUE;
+            cpu[i] = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+                long[] cost = measure(workload, SIZES[i]);
+                allocated[i] = Math.min(allocated[i], cost[0]);
+                cpu[i] = Math.min(cpu[i], cost[1]);
+            }
+        }
+
+        for (int i = 1; i < SIZES.length; i++) {
+            double ratio = (double) allocated[i] / allocated[i - 1];
+            assertTrue(ratio <= MAX_DOUBLING_ALLOCATION, name + ": allocation grew " + ratio
+                    + "x from n=" + SIZES[i - 1] + " to n=" + SIZES[i]);
+        }
+        double cpuRatio = (double) cpu[SIZES.length - 1] / Math.max(1, cpu[0]);
+        assertTrue(cpuRatio <= MAX_RANGE_CPU, name + ": CPU time grew " + cpuRatio
+                + "x from n=" + SIZES[0] + " to n=" + SIZES[SIZES.length - 1]);
+    }
+
+    // Bytes allocated and CPU nanoseconds used by this thread while running the workload
+    private long[] measure(Workload workload, int n) {
+        com.sun.management.ThreadMXBean counters = (com.sun.management.ThreadMXBean) threads;
+        long thread = Thread.currentThread().getId();
+        long bytesBefore = counters.getThreadAllocatedBytes(thread);
+        long cpuBefore = threads.getCurrentThreadCpuTime();
+        workload.run(n);
+        long cpuAfter = threads.getCurrentThreadCpuTime();
+        long bytesAfter = counters.getThreadAllocatedBytes(thread);
+        return new long[] { bytesAfter - bytesBefore, cpuAfter - cpuBefore };
+    }
+}
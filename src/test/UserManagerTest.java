@@ -0,0 +1,99 @@
+package test;
+
+import model.*;
+import org.junit.jupiter.api.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserManagerTest {
+	@Test
+	void testUsersMigrateToShards() throws Exception {
+		Path root = Files.createTempDirectory("users");
+		try {
+			UserManager single = new UserManager(null, root);
+			Thread[] threads = new Thread[4];
+			for (int t = 0; t < threads.length; t++) {
+				int from = t * 25;
+				threads[t] = new Thread(() -> {
+					for (int i = from; i < from + 25; i++) {
+						single.registerUser("user" + i, "pw" + i);
+					}
+				});
+				threads[t].start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			LibraryModel library = new LibraryModel();
+			library.addSong(new Song("Kept", "Artist", "Album", "Pop"));
+			single.saveUserLibrary("user7", library);
+
+			assertTrue(single.migrateToShards(4));
+			assertFalse(single.migrateToShards(4));
+			UserManager sharded = new UserManager(null, root);
+			assertEquals(4, sharded.getShardCount());
+			for (int i = 0; i < 100; i++) {
+				assertTrue(sharded.authenticateUser("user" + i, "pw" + i));
+			}
+			assertTrue(sharded.registerUser("late", "pw"));
+			assertTrue(new UserManager(null, root).authenticateUser("late", "pw"));
+			assertTrue(sharded.restoreLibrary("user7").getUserSongs().containsKey("Kept"));
+			assertFalse(Files.exists(root.resolve("users.txt")));
+		} finally {
+			try (Stream<Path> files = Files.walk(root)) {
+				files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+
+	@Test
+	void testCorruptCheckpointFallsBackToSavedLibrary() throws Exception {
+		Path root = Files.createTempDirectory("users");
+		try {
+			UserManager manager = new UserManager(null, root);
+			manager.registerUser("owner", "pw");
+			LibraryModel library = new LibraryModel("owner");
+			library.addSong(new Song("Kept", "Artist", "Album", "Pop"));
+			manager.saveUserLibrary("owner", library);
+			assertTrue(manager.saveCheckpoint("owner", library));
+			Path checkpoint;
+			try (Stream<Path> files = Files.walk(root)) {
+				checkpoint = files.filter(path -> path.toString().endsWith(".ckpt")).findFirst().get();
+			}
+			byte[] bytes = Files.readAllBytes(checkpoint);
+			bytes[56 + 4] = 0x7f; // title offset of the first song, far past the end of the file
+			Files.write(checkpoint, bytes);
+
+			LibraryModel restored = manager.restoreLibrary("owner");
+			assertTrue(restored.getUserSongs().containsKey("Kept"));
+			assertEquals("owner", restored.getOwner());
+		} finally {
+			try (Stream<Path> files = Files.walk(root)) {
+				files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+
+	@Test
+	void testUnsafeUsernamesAreRejected() throws Exception {
+		Path root = Files.createTempDirectory("users");
+		try {
+			UserManager manager = new UserManager(null, root);
+			for (String name : new String[] { "", "../../x", "a/b", "a\\b", "a,b", "a\nevil,hash", ".." }) {
+				assertThrows(IllegalArgumentException.class, () -> manager.registerUser(name, "pw"));
+				assertFalse(manager.authenticateUser(name, "pw"));
+			}
+			assertTrue(manager.registerUser("plain.name", "pw"));
+			assertTrue(new UserManager(null, root).authenticateUser("plain.name", "pw"));
+		} finally {
+			try (Stream<Path> files = Files.walk(root)) {
+				files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ * ConsoleRenderer.java
+ *
+ * Buffered, paginated console output shared by the views and the model's display methods.
+ * Rows are formatted into one reusable StringBuilder and written through a single
+ * BufferedWriter, so a listing costs one stream write per page instead of one
+ * synchronized println per item. Items are pulled lazily from an Iterator, so the
+ * work done per page is bounded by the page size, not by the size of the library.
+ *
+ * Author: Haobin Yan
+ */
+
+package view;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+
+public class ConsoleRenderer {
+    public static final int DEFAULT_PAGE_SIZE = 20;   // Rows per page when none is given
+    private static final int BUFFER_SIZE = 8192;      // Writer buffer size in chars
+
+    private final Writer out;                         // Destination of all rendered text
+    private final int pageSize;                       // Maximum rows written per page
+    private final StringBuilder row;                  // Reused buffer for formatting one row
+
+    // Formats a single item into the (already cleared) row buffer
+    public interface RowFormatter<T> {
+        void format(T item, StringBuilder row);
+    }
+
+    // Constructor: renders to the given writer with the given page size
+    public ConsoleRenderer(Writer out, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out, BUFFER_SIZE);
+        this.pageSize = pageSize;
+        this.row = new StringBuilder(128);
+    }
+
+    // Renderer over the current System.out with the default page size
+    public static ConsoleRenderer console() {
+        return console(DEFAULT_PAGE_SIZE);
+    }
+
+    // Renderer over the current System.out with a custom page size
+    public static ConsoleRenderer console(int pageSize) {
+        return new ConsoleRenderer(new OutputStreamWriter(System.out, Charset.defaultCharset()), pageSize);
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    // Write a single line of text (buffered until the next flush)
+    public void line(CharSequence text) {
+        try {
+            out.append(text).append('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Write every remaining item, flushing once per page so the buffer stays bounded
+    public <T> void renderAll(Iterator<? extends T> items, RowFormatter<? super T> formatter) {
+        Cursor<T> cursor = open(items, formatter);
+        while (cursor.hasMore()) {
+            cursor.nextPage();
+        }
+        flush();
+    }
+
+    // Open a cursor that writes the items one page at a time
+    public <T> Cursor<T> open(Iterator<? extends T> items, RowFormatter<? super T> formatter) {
+        return new Cursor<>(items, formatter);
+    }
+
+    // Push buffered output to the underlying stream
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Format one item into the shared row buffer and write it
+    private <T> void writeRow(T item, RowFormatter<? super T> formatter) throws IOException {
+        row.setLength(0);
+        formatter.format(item, row);
+        row.append('\n');
+        out.append(row);
+    }
+
+    /**
+     * A position in a lazily rendered listing. Each call to nextPage() pulls at most
+     * pageSize items from the iterator, writes them and flushes.
+     */
+    public class Cursor<T> {
+        private final Iterator<? extends T> items;
+        private final RowFormatter<? super T> formatter;
+        private int pagesWritten;
+        private int rowsWritten;
+
+        private Cursor(Iterator<? extends T> items, RowFormatter<? super T> formatter) {
+            this.items = items;
+            this.formatter = formatter;
+        }
+
+        // True if at least one more item remains to be rendered
+        public boolean hasMore() {
+            return items.hasNext();
+        }
+
+        // Render the next page and return how many rows it contained
+        public int nextPage() {
+            int count = 0;
+            try {
+                while (count < pageSize && items.hasNext()) {
+                    writeRow(items.next(), formatter);
+                    count++;
+                }
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (count > 0) {
+                pagesWritten++;
+                rowsWritten += count;
+            }
+            return count;
+        }
+
+        // Number of pages rendered so far
+        public int getPagesWritten() {
+            return pagesWritten;
+        }
+
+        // Number of rows rendered so far
+        public int getRowsWritten() {
+            return rowsWritten;
+        }
+    }
+}
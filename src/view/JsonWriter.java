@@ -0,0 +1,177 @@
+/**
+ * JsonWriter.java
+ *
+ * Minimal streaming JSON writer. Values are written straight to the underlying Writer
+ * as they are produced, so large listings never have to be built up in memory first.
+ * The writer only tracks nesting depth and whether a separator is needed.
+ *
+ * Author: Haobin Yan
+ */
+
+package view;
+
+import java.io.*;
+
+public class JsonWriter implements Flushable, Closeable {
+    private static final int MAX_DEPTH = 64;     // Deepest nesting supported
+
+    private final Writer out;                    // Destination of the JSON text
+    private final boolean[] needsComma;          // Per nesting level: has a value been written yet
+    private int depth;                           // Current nesting level
+    private boolean afterName;                   // True right after an object member name
+
+    // Constructor: writes JSON text to the given writer
+    public JsonWriter(Writer out) {
+        this.out = out;
+        this.needsComma = new boolean[MAX_DEPTH];
+        this.depth = 0;
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    public JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    public JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    // Write an object member name; the next call must write its value
+    public JsonWriter name(String name) throws IOException {
+        separator();
+        writeString(name);
+        out.write(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        separator();
+        if (value == null) {
+            out.write("null");
+        } else {
+            writeString(value);
+        }
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        separator();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(double value) throws IOException {
+        separator();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.write("null");
+        } else {
+            out.write(Double.toString(value));
+        }
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        separator();
+        out.write(value ? "true" : "false");
+        return this;
+    }
+
+    // Convenience for writing a "name": "value" member
+    public JsonWriter field(String name, String value) throws IOException {
+        return name(name).value(value);
+    }
+
+    // Convenience for writing a "name": number member
+    public JsonWriter field(String name, long value) throws IOException {
+        return name(name).value(value);
+    }
+
+    // End a top-level value with a newline so the next one starts a new JSON Lines record
+    public JsonWriter lineBreak() throws IOException {
+        if (depth != 0) {
+            throw new IllegalStateException("Record not finished");
+        }
+        out.write('\n');
+        needsComma[0] = false;
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private JsonWriter open(char bracket) throws IOException {
+        separator();
+        if (depth + 1 >= MAX_DEPTH) {
+            throw new IllegalStateException("JSON nested too deeply");
+        }
+        out.write(bracket);
+        needsComma[++depth] = false;
+        return this;
+    }
+
+    private JsonWriter close(char bracket) throws IOException {
+        if (depth == 0) {
+            throw new IllegalStateException("Nothing to close");
+        }
+        depth--;
+        out.write(bracket);
+        return this;
+    }
+
+    // Write a comma if this value follows another one at the same level
+    private void separator() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (needsComma[depth]) {
+            out.write(',');
+        }
+        needsComma[depth] = true;
+    }
+
+    // Write a quoted string, escaping characters JSON does not allow raw
+    private void writeString(String s) throws IOException {
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            String escape = null;
+            if (c == '"') {
+                escape = "\\\"";
+            } else if (c == '\\') {
+                escape = "\\\\";
+            } else if (c == '\n') {
+                escape = "\\n";
+            } else if (c == '\r') {
+                escape = "\\r";
+            } else if (c == '\t') {
+                escape = "\\t";
+            } else if (c < 0x20) {
+                escape = String.format("\\u%04x", (int) c);
+            }
+            if (escape != null) {
+                out.write(s, start, i - start);
+                out.write(escape);
+                start = i + 1;
+            }
+        }
+        out.write(s, start, s.length() - start);
+        out.write('"');
+    }
+}
@@ -10,10 +10,12 @@ import java.util.Scanner;
 public class LibraryView {
     private LibraryModel library;        // Reference to the user's personal library
     private MusicStore musicStore;       // Reference to the shared music store
+    private ConsoleRenderer renderer;    // Buffered, paginated output for listings
 
     public LibraryView(LibraryModel library, MusicStore musicStore) {
         this.library = library;
         this.musicStore = musicStore;
+        this.renderer = ConsoleRenderer.console();
     }
 
     public void start() {
@@ -35,7 +37,7 @@ public class LibraryView {
             // Handle user choice
             switch (choice) {
                 case 1:
-                    displayUserLibrary();         // Show user's library
+                    displayUserLibrary(scanner);  // Show user's library, one page at a time
                     break;
                 case 2:
                     addSongToLibrary(scanner);    // Let user add a new song
@@ -58,11 +60,17 @@ public class LibraryView {
         }
     }
 
-    // Print all songs currently in the user's library
-    private void displayUserLibrary() {
-        System.out.println("\nYour Library:");
-        for (Song song : library.getUserSongs().values()) {
-            System.out.println(song);
+    // Print the songs in the user's library a page at a time
+    private void displayUserLibrary(Scanner scanner) {
+        renderer.line("\nYour Library:");
+        ConsoleRenderer.Cursor<Song> cursor = renderer.open(library.iterator(), Song::appendTo);
+        cursor.nextPage();
+        while (cursor.hasMore()) {
+            System.out.print("-- Page " + cursor.getPagesWritten() + " (Enter for more, q to stop) -- ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                break;
+            }
+            cursor.nextPage();
         }
     }
 
@@ -84,10 +92,8 @@ public class LibraryView {
 
     // Print most frequently played songs (by title)
     private void displayMostPlayedSongs() {
-        System.out.println("\nMost Played Songs:");
-        for (String songTitle : library.getFrequentlyPlayedSongs()) {
-            System.out.println(songTitle);
-        }
+        renderer.line("\nMost Played Songs:");
+        renderer.renderAll(library.getFrequentlyPlayedSongs().iterator(), (songTitle, row) -> row.append(songTitle));
     }
 
     // Prompt for a genre and create a genre-based playlist
@@ -100,10 +106,8 @@ public class LibraryView {
 
     // Print songs that are rated 5 (favorite songs)
     private void displayTopRatedSongs() {
-        System.out.println("\nTop-Rated Songs:");
-        for (String songTitle : library.getFavoriteSongs()) {
-            System.out.println(songTitle);
-        }
+        renderer.line("\nTop-Rated Songs:");
+        renderer.renderAll(library.getFavoriteSongs().iterator(), (songTitle, row) -> row.append(songTitle));
     }
 }
 